@@ -0,0 +1,207 @@
+package game;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import game.data.CompiledMapFile;
+import game.data.MapData;
+import game.logic.ChannelOutput;
+import game.logic.GameInput;
+import game.logic.GameOutput;
+import game.logic.GameThreads;
+import game.logic.SessionInput;
+import game.logic.StreamOutput;
+
+/**
+ * Plays games over TCP. Every connection gets its own GameSession, played with the usual
+ * command loop on a thread of its own, which GameThreads starts as a virtual thread on Java 21
+ * and later. A player who is thinking costs two parked virtual threads and a few kilobytes of
+ * buffers rather than two platform threads, so one server can keep tens of thousands of games open.
+ *
+ * Sockets are read and written as blocking channels, never through streams, whose locks would pin
+ * a blocked virtual thread to its carrier. The map is loaded once and shared by all sessions.
+ * With the MapData.SHARED_WORLD_PROPERTY system property set to true, the items are shared too,
+ * so all players contend for the same currency and weapons. Only connections from this machine are accepted.
+ *
+ * Usage: GameServer [port] [mapFile]
+ */
+public class GameServer
+{
+	public static final int DEFAULT_PORT = 4321;
+	private static final String DEFAULT_MAP_FILE = "input/customMap.txt";
+	private static final int BACKLOG = 4096;
+	private static final int INPUT_BUFFER_SIZE = 512;
+	private static final int OUTPUT_BUFFER_SIZE = 2048;
+	private static final int READ_AHEAD = 2;
+
+	private final MapData mapData;
+	private final ServerSocketChannel serverChannel;
+	private final AtomicInteger numberOfActiveSessions = new AtomicInteger();
+	private final AtomicLong numberOfSessionsStarted = new AtomicLong();
+
+	/**
+	 * Opens the server socket. No connection is accepted until serve is called.
+	 *
+	 * @param mapData The map that every session plays on
+	 * @param port The port to listen on, or 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public GameServer(MapData mapData, int port) throws IOException
+	{
+		this.mapData = mapData;
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+	}
+
+	/**
+	 * Starts the server on the port given as the first argument and serves until the process is stopped
+	 *
+	 * @param args The optional port and map file
+	 * @throws IOException if the map cannot be loaded or the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		String mapFilePath = (args.length > 1) ? args[1] : DEFAULT_MAP_FILE;
+
+		GameOutput console = new StreamOutput(new FileOutputStream(FileDescriptor.out));
+		MapData mapData;
+		try
+		{
+			mapData = AdventureGame.loadMap(mapFilePath, CompiledMapFile.getDefaultPath(mapFilePath), console);
+		}
+		finally
+		{
+			console.flush();
+		}
+		if (Boolean.getBoolean(MapData.SHARED_WORLD_PROPERTY) == true)
+		{
+			mapData = mapData.copyForSharedWorld();
+		}
+
+		GameServer server = new GameServer(mapData, port);
+		System.out.println("Serving games on " + server.getAddress() + " with "
+				+ (GameThreads.isVirtual() ? "virtual" : "platform") + " threads");
+		server.serve();
+	}
+
+	/**
+	 * Accepts connections and starts a session for each, until the server is closed
+	 *
+	 * @throws IOException if accepting fails for another reason than the server being closed
+	 */
+	public void serve() throws IOException
+	{
+		while (true)
+		{
+			SocketChannel channel;
+			try
+			{
+				channel = serverChannel.accept();
+			}
+			catch (ClosedChannelException ex)
+			{
+				return;
+			}
+			startSession(channel);
+		}
+	}
+
+	/**
+	 * Stops accepting connections. Sessions that have started play on until their players leave.
+	 */
+	public void close()
+	{
+		try
+		{
+			serverChannel.close();
+		}
+		catch (IOException ex)
+		{
+			//The server is closed either way
+		}
+	}
+
+	/**
+	 * @return The address the server listens on
+	 * @throws IOException if the server is closed
+	 */
+	public InetSocketAddress getAddress() throws IOException
+	{
+		return (InetSocketAddress)serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * @return The number of sessions whose connection is still open
+	 */
+	public int getNumberOfActiveSessions()
+	{
+		return numberOfActiveSessions.get();
+	}
+
+	/**
+	 * @return The number of sessions started since the server was created
+	 */
+	public long getNumberOfSessionsStarted()
+	{
+		return numberOfSessionsStarted.get();
+	}
+
+	/**
+	 * Plays a game with the client of a connection on a new thread
+	 *
+	 * @param channel The connection, in blocking mode
+	 */
+	private void startSession(final SocketChannel channel)
+	{
+		long sessionNumber = numberOfSessionsStarted.incrementAndGet();
+		numberOfActiveSessions.incrementAndGet();
+		GameThreads.start(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+					SessionInput input = new SessionInput(new GameInput(channel, INPUT_BUFFER_SIZE), READ_AHEAD);
+					new GameSession(mapData, input, new ChannelOutput(channel, OUTPUT_BUFFER_SIZE)).play();
+				}
+				catch (IOException ex)
+				{
+					//The client has gone before the game started
+				}
+				finally
+				{
+					numberOfActiveSessions.decrementAndGet();
+					closeQuietly(channel);
+				}
+			}
+		}, "game-session-" + sessionNumber);
+	}
+
+	/**
+	 * Closes a connection, ignoring errors
+	 */
+	private static void closeQuietly(SocketChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch (IOException ex)
+		{
+			//The connection is gone either way
+		}
+	}
+}
@@ -0,0 +1,658 @@
+package game;
+
+import game.data.*;
+import game.logic.*;
+import game.models.Player;
+import game.models.Monster;
+
+/**
+ * One game of one player: the player, the monster, the game mode and the items of the map,
+ * together with the input the commands come from and the output the game prints to.
+ * Commands are performed against a session, so one program can host any number of games.
+ *
+ * The descriptions and doors of the map are shared with the other sessions that play on it;
+ * each session has its own items (see MapData.copyForGame), unless the map is a shared world,
+ * in which all sessions take items from the same rooms. A session is played by one
+ * thread at a time.
+ *
+ * The flow of a game is a state machine driven by lines of input: first the player chooses a class,
+ * then commands are performed, in explore or battle mode, and searching the exit room opens
+ * the menu of the exit guardians. Each line moves the session on by one step without waiting
+ * for the next, so a session can be played by a blocking loop (play) as well as by an event loop
+ * that pushes lines in with CommandUtilities.handleLine after calling start.
+ */
+public class GameSession
+{
+	private static final int MINIMUM_CURRENCY_TO_PASS = 1000;
+	private static final int STATE_CHOOSING_CLASS = 0;
+	private static final int STATE_PLAYING = 1;
+	private static final int STATE_AT_EXIT = 2;
+	private static final int NUMBER_OF_CLASSES = 2;
+	private static final int NUMBER_OF_EXIT_ACTIONS = 3;
+	
+	private final GameOutput output;
+	private final SessionInput input;
+	private final RoomInfoCache roomInfoCache = new RoomInfoCache();
+	private MapData mapData;
+	private RouteFinder routeFinder;
+	private MapFileWatcher mapFileWatcher;
+	private String gameMode = AdventureGame.EXPLORE_MODE;
+	private Player player;
+	private Monster monster;
+	private boolean endOfGame;
+	private int state = STATE_CHOOSING_CLASS;
+	
+	/**
+	 * Creates a game that has not started yet
+	 * 
+	 * @param sharedMapData The map to play on, which may be shared with other sessions
+	 * @param input The source of the commands and choices of the player
+	 * @param output The output to print to. It is flushed whenever the game waits for input.
+	 */
+	public GameSession(MapData sharedMapData, GameInput input, GameOutput output)
+	{
+		this(sharedMapData, new SessionInput(input), output);
+	}
+	
+	/**
+	 * Creates a game that has not started yet, with input that is set up by the caller
+	 * 
+	 * @param sharedMapData The map to play on, which may be shared with other sessions
+	 * @param input The input of the session, which is closed when the game ends
+	 * @param output The output to print to. It is flushed whenever the game waits for input.
+	 */
+	public GameSession(MapData sharedMapData, SessionInput input, GameOutput output)
+	{
+		this.mapData = sharedMapData.copyForGame();
+		this.input = input;
+		this.output = output;
+	}
+	
+	/**
+	 * Lets the player choose a class, then handles commands until the game ends.
+	 * The output is flushed and the input closed afterwards.
+	 */
+	public void play()
+	{
+		try
+		{
+			start();
+			while (endOfGame == false)
+			{
+				CommandUtilities.getCommandFromUser(this);
+			}
+		}
+		finally
+		{
+			output.flush();
+			input.close();
+		}
+	}
+	
+	/**
+	 * Starts the game by asking the player to choose a class
+	 */
+	public void start()
+	{
+		Printing.printSeparator(output);
+		output.println("Select a class:\n1. "  + Player.CLASS_PROGRAMMER + "\n2. " + Player.CLASS_WARRIOR);
+		state = STATE_CHOOSING_CLASS;
+		printPrompt();
+	}
+	
+	/**
+	 * Applies the changes of a map file to this session between commands
+	 * 
+	 * @param watcher The watcher of the file the map was loaded from, which must not be shared with other sessions
+	 */
+	public void watchMapFile(MapFileWatcher watcher)
+	{
+		mapFileWatcher = watcher;
+	}
+	
+	/**
+	 * @return The number of options of the menu the player has to answer, or 0 if the game waits for a command
+	 */
+	public int getNumberOfOptions()
+	{
+		if (state == STATE_CHOOSING_CLASS)
+		{
+			return NUMBER_OF_CLASSES;
+		}
+		else if (state == STATE_AT_EXIT)
+		{
+			return NUMBER_OF_EXIT_ACTIONS;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Answers the open menu
+	 * 
+	 * @param option A valid option, from 1 to getNumberOfOptions()
+	 */
+	public void selectOption(int option)
+	{
+		if (state == STATE_CHOOSING_CLASS)
+		{
+			chooseClass(option);
+		}
+		else if (state == STATE_AT_EXIT)
+		{
+			chooseExitAction(option);
+		}
+	}
+	
+	/**
+	 * Prints the prompt for the next line: the question of the open menu, or the command prompt.
+	 * The changes of the map file are applied before a command is asked for.
+	 */
+	public void printPrompt()
+	{
+		if (state == STATE_CHOOSING_CLASS)
+		{
+			output.print("Your choice? ");
+		}
+		else if (state == STATE_AT_EXIT)
+		{
+			output.print("Your action? ");
+		}
+		else
+		{
+			applyMapUpdates();
+			output.print("Command? ");
+		}
+	}
+	
+	/**
+	 * Creates the player of the chosen class at the entrance and shows the starting room
+	 * 
+	 * @param userChoice 1 for a programmer, 2 for a warrior
+	 */
+	private void chooseClass(int userChoice)
+	{
+		switch (userChoice)
+		{
+			case 1:
+				player = new Player(Player.CLASS_PROGRAMMER, mapData.entranceRoomNumber, output);
+				output.println("Now you are a " + Player.CLASS_PROGRAMMER + "!");
+				if (mapData.isSharedWorld() == true)
+				{
+					//A keyboard left at the entrance would be one for every player, so each programmer gets one of their own
+					player.setHasPrimaryWeapon(true);
+				}
+				else
+				{
+					mapData.setPrimaryWeapon(mapData.entranceRoomNumber - 1, true);
+					mapData.getRoomItems().incrementVersion(mapData.entranceRoomNumber - 1);
+				}
+				break;
+			case 2:
+				player = new Player(Player.CLASS_WARRIOR, mapData.entranceRoomNumber, output);
+				output.println("Now you are a " + Player.CLASS_WARRIOR + "!");
+				break;
+			default:
+				player = new Player(Player.CLASS_PROGRAMMER, mapData.entranceRoomNumber, output);
+				break;
+		}
+		
+		state = STATE_PLAYING;
+		Printing.printSeparator(output);
+		Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+	}
+	
+	/**
+	 * Applies the changes of the map file made since the last command.
+	 * This runs between commands, so no command ever sees a room that is half updated.
+	 * Items and currency stay where they are in rooms that still exist.
+	 */
+	private void applyMapUpdates()
+	{
+		if (mapFileWatcher == null)
+		{
+			return;
+		}
+		
+		MapUpdate update = mapFileWatcher.pollUpdate();
+		while (update != null)
+		{
+			int exitRoomNumber = mapData.exitRoomNumber;
+			MapData updatedMapData = update.applyTo(mapData);
+			if (updatedMapData != mapData || update.changesLayout() == true || updatedMapData.exitRoomNumber != exitRoomNumber)
+			{
+				mapData = updatedMapData;
+				routeFinder = null;
+			}
+			else
+			{
+				invalidateRoutesToItems();
+			}
+			
+			if (player.getRoomNumber() > mapData.numberOfRooms)
+			{
+				player.setRoomNumber(mapData.entranceRoomNumber);
+			}
+			roomInfoCache.clear();
+			output.println("The map has changed: " + update.getNumberOfChangedRooms() + " room(s) updated.");
+			update = mapFileWatcher.pollUpdate();
+		}
+	}
+	
+	/**
+	 * Sets or rejects a new room position for the player, giving appropriate notifications
+	 * about entering a new room or staying in the current location. 
+	 * A monster with random attributes may or may not be generated when the player enters a new room.
+	 * 
+	 * @param newRoomNumber The room number to move the player to
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void setPlayerPosition(int newRoomNumber)
+	{
+		if (player.getRoomNumber() == newRoomNumber)
+		{
+			output.println("No need. You are already in room " + newRoomNumber + "!");
+		}
+		else
+		{
+			if (mapData.getRoomLayout().hasDoor(player.getRoomNumber() - 1, newRoomNumber))
+			{
+				Printing.printSeparator(output);
+				output.println("Opening door " + newRoomNumber);
+				player.setRoomNumber(newRoomNumber);
+				
+				monster = Monster.generateRandomly(50);
+				if (monster != null)
+				{
+					gameMode = AdventureGame.BATTLE_MODE;
+				}
+				
+				Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+			}
+			else
+			{
+				output.println("You can't find the door with number " + newRoomNumber + ".");
+			}
+		}
+	}
+	
+	/**
+	 * Try to pick up the specified item. Since item is passed as a string,
+	 * any noncence may appear as an argument. The method handles any type of input
+	 * and accepts only valid items. It gives appropriate notifications
+	 * and adds the valid item to player's possessions
+	 * 
+	 * @param item The name for a particular item
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void pickupItem(String item)
+	{
+		RoomItems roomItems = mapData.getRoomItems();
+		int roomIndex = player.getRoomNumber() - 1;
+		
+		if (Player.doesItemExist(item) == false)
+		{
+			output.println("\'" + item + "\' is not a valid in-game item!");
+		}
+		else if (player.isItemAvailable(item) == false)
+		{
+			output.println("This item is not available for your class.");
+		}
+		else if (item.equalsIgnoreCase(Player.IN_GAME_CURRENCY))
+		{
+			//Taking is one step, so in a shared world only one of the players who try gets the currency
+			int amountTaken = roomItems.takeCurrency(roomIndex);
+			if (amountTaken == 0)
+			{
+				output.println("There is no " + item + " in the room.");
+				return;
+			}
+			player.setCurrencyInPossession(player.getCurrencyInPossession() + amountTaken);
+			roomItems.incrementVersion(roomIndex);
+			invalidateRoutesToItems();
+			Printing.printSeparator(output);
+			output.println("You pick up the " + Player.IN_GAME_CURRENCY + ", increasing your " + Player.IN_GAME_CURRENCY + " to " + Formatting.formatCurrency(player.getCurrencyInPossession()));
+			Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+		}
+		else if ((item.equalsIgnoreCase(Player.GLASSES) || item.equalsIgnoreCase(Player.SHIELD)) && roomItems.takeSecondaryWeapon(roomIndex) == true)
+		{
+			roomItems.incrementVersion(roomIndex);
+			invalidateRoutesToItems();
+			Printing.printSeparator(output);
+			player.setHasSecondaryWeapon(true);
+			Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+		}
+		else if ((item.equalsIgnoreCase(Player.KEYBOARD) || item.equalsIgnoreCase(Player.SWORD)) && roomItems.takePrimaryWeapon(roomIndex) == true)
+		{
+			roomItems.incrementVersion(roomIndex);
+			invalidateRoutesToItems();
+			Printing.printSeparator(output);
+			player.setHasPrimaryWeapon(true);
+			Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+		}
+		else
+		{
+			output.println("There is no " + item + " in the room.");
+		}
+	}
+
+	/**
+	 * Search for exit in the current room where player is located.
+	 * Only one room has exit. If exit is found, a particular sequence
+	 * of events happens, which may or may not result in ending of game.
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void searchForExit()
+	{
+		int playerRoomNumber = player.getRoomNumber();
+		int exitRoomNumber = mapData.exitRoomNumber;
+
+		if (playerRoomNumber != exitRoomNumber)
+		{
+			output.println("You found nothing.");
+		}
+		else
+		{
+			Printing.printSeparator(output);
+			String exitEvents = "You see the exit and try to approach it. " +
+			"You notice two guardians standing side by side and blocking the passage. " +
+			"The guardians demand " + Formatting.formatCurrency(MINIMUM_CURRENCY_TO_PASS) + " " + Player.IN_GAME_CURRENCY + " from you. "+
+			"If you pay, they will let you out.";
+			String exitOptions = "1. Pay\n2. Fight\n3. Return back";
+
+			output.println(exitEvents);
+			output.println(exitOptions);
+			state = STATE_AT_EXIT;
+		}
+	}
+	
+	/**
+	 * Carries out the action chosen in front of the exit guardians
+	 * 
+	 * @param actionChosen 1 to pay, 2 to fight, 3 to return back
+	 */
+	private void chooseExitAction(int actionChosen)
+	{
+		int playerCurrencyInPossession = player.getCurrencyInPossession();
+		int playerRoomNumber = player.getRoomNumber();
+
+		if (actionChosen == 1)
+		{
+			if (playerCurrencyInPossession >= MINIMUM_CURRENCY_TO_PASS)
+			{
+				Printing.printSeparator(output);
+				output.println("The guardians are impressed with your generosity and refuse to take " + 
+						Player.IN_GAME_CURRENCY +".\nYou are accompanied to the exit. Your quest has ended!");
+				output.println("You have " + Formatting.formatCurrency(playerCurrencyInPossession) + " " + Player.IN_GAME_CURRENCY + " in total.");
+				state = STATE_PLAYING;
+				endOfGame = true;
+			}
+			else
+			{
+				output.println("You don't have that much " + Player.IN_GAME_CURRENCY + ".");
+			}
+		}
+		else if (actionChosen == 2)
+		{
+			Printing.printSeparator(output);
+			String fightEvents = "You make your first hit. " +
+			"Since the guardians are twice as big as you and are made from stone, your action has no effect. " +
+			"You are thrown back to room " + playerRoomNumber + ".";
+			output.println(fightEvents);
+			state = STATE_PLAYING;
+		}
+		else if (actionChosen == 3)
+		{
+			Printing.printSeparator(output);
+			output.println("You are back to room " + playerRoomNumber + ".");
+			state = STATE_PLAYING;
+		}
+	}
+	
+	/**
+	 * Shows the shortest sequence of doors from the player's room to the exit,
+	 * the nearest currency or the nearest weapon. Like pickupItem, any string
+	 * may appear as an argument and only valid targets are accepted.
+	 * 
+	 * @param target The name of the target: exit, weapon or the in-game currency
+	 */
+	public void showRoute(String target)
+	{
+		int routeTarget;
+		String targetName;
+		if (target.equals(AdventureGame.ROUTE_TO_EXIT))
+		{
+			routeTarget = RouteFinder.TARGET_EXIT;
+			targetName = "the exit";
+		}
+		else if (target.equals(Player.IN_GAME_CURRENCY))
+		{
+			routeTarget = RouteFinder.TARGET_CURRENCY;
+			targetName = "the nearest " + Player.IN_GAME_CURRENCY;
+		}
+		else if (target.equals(AdventureGame.ROUTE_TO_WEAPON))
+		{
+			routeTarget = RouteFinder.TARGET_WEAPON;
+			targetName = "the nearest weapon";
+		}
+		else
+		{
+			output.println("\'" + target + "\' is not a valid destination! Try " + AdventureGame.ROUTE_TO_EXIT + ", " + Player.IN_GAME_CURRENCY + " or " + AdventureGame.ROUTE_TO_WEAPON + ".");
+			return;
+		}
+		
+		if (routeFinder == null)
+		{
+			routeFinder = new RouteFinder(mapData);
+		}
+		Printing.printRoute(output, targetName, routeFinder.findRoute(player.getRoomNumber(), routeTarget));
+	}
+	
+	/**
+	 * Makes the next route to an item be computed again, because an item has been taken or dropped.
+	 * Until the first route is asked for, a session has no RouteFinder, whose arrays grow with the map.
+	 */
+	private void invalidateRoutesToItems()
+	{
+		if (routeFinder != null)
+		{
+			routeFinder.invalidateItems();
+		}
+	}
+	
+	/**
+	 * Displays information about the room where player is positioned.
+	 * The main usage is access from outside of the class
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void displayRoomInfo()
+	{
+		Printing.printSeparator(output);
+		Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+	}
+	
+	/**
+	 * Displays information about the player.
+	 * The main usage is access from outside of the class
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void displaySelfInfo()
+	{
+		Printing.printPlayerInfo(output, player);
+	}
+
+	/**
+	 * Attack the monster in the room.
+	 * If the monster stays alive, it responds with its own attack. 
+	 * Otherwise, it drops a random amount of in-game currency.
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void attackMonster()
+	{
+		if (monster == null)
+		{
+			return;
+		}
+		
+		Printing.printSeparator(output);
+		player.performAttack(monster);
+		if (monster.getHealth() <= 0)
+		{
+			Printing.printSeparator(output);
+			output.println("The monster has been defeated!");
+			output.println("The monster drops " + Formatting.formatCurrency(monster.getCurrencyInPossession()) + " in " + Player.IN_GAME_CURRENCY);
+			mapData.getRoomItems().addCurrency(player.getRoomNumber() - 1, monster.getCurrencyInPossession());
+			mapData.getRoomItems().incrementVersion(player.getRoomNumber() - 1);
+			invalidateRoutesToItems();
+			monster = null;
+			gameMode = AdventureGame.EXPLORE_MODE;
+		}
+		else
+		{
+			monster.performAttack(player);
+			checkPlayerSurvived();
+		}
+	}
+	
+	/**
+	 * Run away to a randomly selected door in the room.
+	 * A new monster may be encountered then.
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void runAway()
+	{
+		gameMode = AdventureGame.EXPLORE_MODE;
+		monster = null;
+		
+		int numOfRooms = mapData.getRoomLayout().getNumberOfDoors(player.getRoomNumber() - 1);
+		int randomRoomIndex = (int)(Math.random() * numOfRooms);
+		player.setRoomNumber(mapData.getRoomLayout().getDoor(player.getRoomNumber() - 1, randomRoomIndex));
+		
+		Printing.printSeparator(output);
+		output.println("You run away through a randomly selected door!");
+		
+		monster = Monster.generateRandomly(30);
+		if (monster != null)
+		{
+			gameMode = AdventureGame.BATTLE_MODE;
+		}
+		
+		Printing.printRoomInformation(output, roomInfoCache, player.getRoomNumber() - 1, mapData, player, gameMode);
+	}
+	
+	/**
+	 * Lets the player have a rest and restore some health.
+	 * There is a certain chance that a monster appears during rest.
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void haveRest()
+	{
+		Printing.printSeparator(output);
+		output.println("You decide to stop and have a rest...");
+		double healthChange = player.setHealth(player.getHealth() + Player.PLAYER_MAX_HEALTH * 0.1);
+		StringBuilder healthIncrease = new StringBuilder("Your health increases by ");
+		output.print(Formatting.appendPercent(healthIncrease, healthChange / Player.PLAYER_MAX_HEALTH).append(". "));
+		Printing.printPlayerHealth(output, player);
+		
+		monster = Monster.generateRandomly(30);
+		if (monster != null)
+		{
+			gameMode = AdventureGame.BATTLE_MODE;
+			Printing.printMonsterAction(output);
+		}
+	}
+	
+	/**
+	 * Do nothing and wait. There is a certain chance
+	 * that the monster will leave the player in peace.
+	 * Otherwise, it will perform the next attack on the player.
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void ignoreMonster()
+	{
+		if (monster == null)
+		{
+			return;
+		}
+		
+		Printing.printSeparator(output);
+		output.println("You stand still and do nothing...");
+		
+		double avoidanceChance = Math.random() * 100;
+		if (avoidanceChance <= 30)
+		{
+			output.println("The monster runs away! You are lucky!\n");
+			gameMode = AdventureGame.EXPLORE_MODE;
+			monster = null;
+		}
+		else
+		{
+			monster.performAttack(player);
+			checkPlayerSurvived();
+		}
+	}
+	
+	/**
+	 * Ends the game if the last attack of the monster has left the player without health
+	 */
+	private void checkPlayerSurvived()
+	{
+		if (player.getHealth() <= 0.0)
+		{
+			Printing.printSeparator(output);
+			output.println("You did not survive.\nEnd of game :)");
+			endGame();
+		}
+	}
+	
+	/**
+	 * Ends the game
+	 * The main usage is from outside of the class
+	 * 
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	public void endGame()
+	{
+		endOfGame = true;
+	}
+	
+	/**
+	 * @return True if the game has ended
+	 */
+	public boolean isGameOver()
+	{
+		return endOfGame;
+	}
+	
+	/**
+	 * Returns the explore mode or the battle mode corresponding string
+	 * 
+	 * @return AdventureGame.EXPLORE_MODE or AdventureGame.BATTLE_MODE
+	 * @author Nikolai Kolbenev
+	 */
+	public String getGameMode()
+	{
+		return gameMode;
+	}
+	
+	/**
+	 * @return The output that the game prints to
+	 */
+	public GameOutput getOutput()
+	{
+		return output;
+	}
+	
+	/**
+	 * @return The input that the commands of the game come from
+	 */
+	public SessionInput getInput()
+	{
+		return input;
+	}
+}
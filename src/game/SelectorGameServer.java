@@ -0,0 +1,589 @@
+package game;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import game.data.CompiledMapFile;
+import game.data.MapData;
+import game.logic.ByteBufferOutput;
+import game.logic.CommandUtilities;
+import game.logic.GameOutput;
+import game.logic.SessionInput;
+import game.logic.StreamOutput;
+
+/**
+ * Plays games over TCP without a thread per connection. A small, fixed number of event loops,
+ * each a platform thread with a Selector of its own, serve all connections; the thread that
+ * calls serve accepts connections and hands them to the loops in turn.
+ *
+ * A session is never waited on: its input has no source, and every complete line that arrives
+ * is pushed into it with CommandUtilities.handleLine, which moves the state machine of the game
+ * one step and prints the next prompt. Between lines, a connection holds only its GameSession,
+ * its output buffer and, if a line arrived in pieces, the bytes received so far. The read buffer
+ * and the decoder are shared by all connections of a loop.
+ *
+ * Output is written without blocking. If a client does not take it all, the connection waits
+ * to be writable and is not read from in the meantime, so a slow client holds back its own
+ * commands rather than filling the memory of the server. The map is loaded once and shared
+ * by all sessions, and so are its items when the MapData.SHARED_WORLD_PROPERTY system property
+ * is set to true. Only connections from this machine are accepted.
+ *
+ * Usage: SelectorGameServer [port] [mapFile] [eventLoops]
+ */
+public class SelectorGameServer
+{
+	private static final String DEFAULT_MAP_FILE = "input/customMap.txt";
+	private static final int BACKLOG = 4096;
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+	private static final int OUTPUT_BUFFER_SIZE = 512;
+	private static final int OUTPUT_LIMIT = 64 * 1024;
+	private static final int MAX_LINE_LENGTH = 4096;
+	private static final Charset INPUT_CHARSET = Charset.forName("UTF-8");
+
+	private final MapData mapData;
+	private final ServerSocketChannel serverChannel;
+	private final EventLoop[] eventLoops;
+	private final AtomicInteger numberOfActiveSessions = new AtomicInteger();
+	private final AtomicLong numberOfSessionsStarted = new AtomicLong();
+	private int nextEventLoop;
+
+	/**
+	 * Opens the server socket and starts the event loops. No connection is accepted until serve is called.
+	 *
+	 * @param mapData The map that every session plays on
+	 * @param port The port to listen on, or 0 for any free port
+	 * @param numberOfEventLoops The number of threads that serve the connections
+	 * @throws IOException if the port cannot be bound or a selector cannot be opened
+	 */
+	public SelectorGameServer(MapData mapData, int port, int numberOfEventLoops) throws IOException
+	{
+		this.mapData = mapData;
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+
+		eventLoops = new EventLoop[Math.max(1, numberOfEventLoops)];
+		try
+		{
+			for (int i = 0; i < eventLoops.length; i++)
+			{
+				eventLoops[i] = new EventLoop();
+				Thread thread = new Thread(eventLoops[i], "game-event-loop-" + (i + 1));
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+		catch (IOException ex)
+		{
+			close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Starts the server on the port given as the first argument and serves until the process is stopped
+	 *
+	 * @param args The optional port, map file and number of event loops, which is the number of processors by default
+	 * @throws IOException if the map cannot be loaded or the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+		String mapFilePath = (args.length > 1) ? args[1] : DEFAULT_MAP_FILE;
+		int numberOfEventLoops = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		GameOutput console = new StreamOutput(new FileOutputStream(FileDescriptor.out));
+		MapData mapData;
+		try
+		{
+			mapData = AdventureGame.loadMap(mapFilePath, CompiledMapFile.getDefaultPath(mapFilePath), console);
+		}
+		finally
+		{
+			console.flush();
+		}
+		if (Boolean.getBoolean(MapData.SHARED_WORLD_PROPERTY) == true)
+		{
+			mapData = mapData.copyForSharedWorld();
+		}
+
+		SelectorGameServer server = new SelectorGameServer(mapData, port, numberOfEventLoops);
+		System.out.println("Serving games on " + server.getAddress() + " with " + numberOfEventLoops + " event loop(s)");
+		server.serve();
+	}
+
+	/**
+	 * Accepts connections and hands each to an event loop, until the server is closed
+	 *
+	 * @throws IOException if accepting fails for another reason than the server being closed
+	 */
+	public void serve() throws IOException
+	{
+		while (true)
+		{
+			SocketChannel channel;
+			try
+			{
+				channel = serverChannel.accept();
+			}
+			catch (ClosedChannelException ex)
+			{
+				return;
+			}
+
+			try
+			{
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			}
+			catch (IOException ex)
+			{
+				//The client has gone before the game started
+				closeQuietly(channel);
+				continue;
+			}
+			eventLoops[nextEventLoop].add(channel);
+			nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+		}
+	}
+
+	/**
+	 * Stops accepting connections and stops the event loops, which close the connections of their sessions
+	 */
+	public void close()
+	{
+		try
+		{
+			serverChannel.close();
+		}
+		catch (IOException ex)
+		{
+			//The server is closed either way
+		}
+		for (EventLoop eventLoop : eventLoops)
+		{
+			if (eventLoop != null)
+			{
+				eventLoop.close();
+			}
+		}
+	}
+
+	/**
+	 * @return The address the server listens on
+	 * @throws IOException if the server is closed
+	 */
+	public InetSocketAddress getAddress() throws IOException
+	{
+		return (InetSocketAddress)serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * @return The number of sessions whose connection is still open
+	 */
+	public int getNumberOfActiveSessions()
+	{
+		return numberOfActiveSessions.get();
+	}
+
+	/**
+	 * @return The number of sessions started since the server was created
+	 */
+	public long getNumberOfSessionsStarted()
+	{
+		return numberOfSessionsStarted.get();
+	}
+
+	/**
+	 * Closes a connection, ignoring errors
+	 */
+	private static void closeQuietly(SocketChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch (IOException ex)
+		{
+			//The connection is gone either way
+		}
+	}
+
+	/**
+	 * The state of one connection between events
+	 */
+	private static final class Connection
+	{
+		private final SocketChannel channel;
+		private final GameSession session;
+		private final ByteBufferOutput output;
+		private ByteBuffer unhandledInput;
+		private boolean skipLineFeed;
+
+		/**
+		 * @param channel The connection, in non-blocking mode
+		 * @param session The game played on the connection
+		 * @param output The output of the game
+		 */
+		private Connection(SocketChannel channel, GameSession session, ByteBufferOutput output)
+		{
+			this.channel = channel;
+			this.session = session;
+			this.output = output;
+		}
+	}
+
+	/**
+	 * Serves the connections registered with one selector
+	 */
+	private final class EventLoop implements Runnable
+	{
+		private final Selector selector;
+		private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final CharBuffer lineChars = CharBuffer.allocate(MAX_LINE_LENGTH);
+		private final CharsetDecoder decoder = INPUT_CHARSET.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private volatile boolean closed;
+
+		/**
+		 * @throws IOException if the selector cannot be opened
+		 */
+		private EventLoop() throws IOException
+		{
+			selector = Selector.open();
+		}
+
+		/**
+		 * Hands a new connection to this loop, which starts its session
+		 *
+		 * @param channel The connection, in non-blocking mode
+		 */
+		private void add(SocketChannel channel)
+		{
+			newChannels.add(channel);
+			selector.wakeup();
+		}
+
+		/**
+		 * Stops the loop, which then closes its connections
+		 */
+		private void close()
+		{
+			closed = true;
+			selector.wakeup();
+		}
+
+		/**
+		 * Waits for events and handles them until the loop is closed
+		 */
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (closed == false)
+				{
+					selector.select();
+					startNewSessions();
+					for (SelectionKey key : selector.selectedKeys())
+					{
+						handleEvent(key);
+					}
+					selector.selectedKeys().clear();
+				}
+			}
+			catch (IOException ex)
+			{
+				//The selector has failed; the connections of this loop are closed below
+			}
+			finally
+			{
+				for (SelectionKey key : selector.keys())
+				{
+					closeConnection(key);
+				}
+				try
+				{
+					selector.close();
+				}
+				catch (IOException ex)
+				{
+					//The loop has ended either way
+				}
+			}
+		}
+
+		/**
+		 * Registers the connections handed to this loop and starts their sessions
+		 */
+		private void startNewSessions()
+		{
+			SocketChannel channel;
+			while ((channel = newChannels.poll()) != null)
+			{
+				SelectionKey key;
+				try
+				{
+					key = channel.register(selector, SelectionKey.OP_READ);
+				}
+				catch (IOException ex)
+				{
+					closeQuietly(channel);
+					continue;
+				}
+
+				numberOfSessionsStarted.incrementAndGet();
+				numberOfActiveSessions.incrementAndGet();
+				ByteBufferOutput output = new ByteBufferOutput(OUTPUT_BUFFER_SIZE);
+				Connection connection = new Connection(channel, new GameSession(mapData, new SessionInput(null), output), output);
+				key.attach(connection);
+				connection.session.start();
+				writeOutput(key);
+			}
+		}
+
+		/**
+		 * Handles a connection that is ready. A session that fails closes its own connection only.
+		 */
+		private void handleEvent(SelectionKey key)
+		{
+			try
+			{
+				if (key.isReadable() == true)
+				{
+					readInput(key);
+				}
+				else if (key.isWritable() == true)
+				{
+					writeOutput(key);
+				}
+			}
+			catch (RuntimeException ex)
+			{
+				closeConnection(key);
+			}
+		}
+
+		/**
+		 * Reads what the client has sent and handles every complete line
+		 */
+		private void readInput(SelectionKey key)
+		{
+			Connection connection = (Connection)key.attachment();
+			readBuffer.clear();
+			int read;
+			try
+			{
+				read = connection.channel.read(readBuffer);
+			}
+			catch (IOException ex)
+			{
+				read = -1;
+			}
+			readBuffer.flip();
+
+			if (read < 0)
+			{
+				//Like GameInput, the end of the input ends the last line
+				if (connection.unhandledInput != null && connection.unhandledInput.position() > 0)
+				{
+					ByteBuffer unhandled = connection.unhandledInput;
+					unhandled.flip();
+					handleLine(connection, unhandled, unhandled.limit());
+					try
+					{
+						connection.output.writeTo(connection.channel);
+					}
+					catch (IOException ex)
+					{
+						//The client cannot read the answer anymore
+					}
+				}
+				connection.session.endGame();
+				closeConnection(key);
+				return;
+			}
+
+			if (connection.unhandledInput != null)
+			{
+				keepInput(connection, readBuffer);
+				handleUnhandledInput(connection);
+			}
+			else
+			{
+				handleLines(connection, readBuffer);
+				if (readBuffer.hasRemaining() == true)
+				{
+					keepInput(connection, readBuffer);
+				}
+			}
+
+			if (connection.unhandledInput != null && connection.unhandledInput.position() > MAX_LINE_LENGTH
+					&& connection.output.size() < OUTPUT_LIMIT && connection.session.isGameOver() == false)
+			{
+				//Only an unfinished line is left, and it is too long to be a command
+				closeConnection(key);
+				return;
+			}
+			writeOutput(key);
+		}
+
+		/**
+		 * Writes the output of a session without blocking. The connection is read from again once
+		 * its output has been taken; then the lines that were held back are handled.
+		 * The connection is closed once the game has ended and its output has been taken.
+		 */
+		private void writeOutput(SelectionKey key)
+		{
+			Connection connection = (Connection)key.attachment();
+			try
+			{
+				while (connection.output.writeTo(connection.channel) == true)
+				{
+					if (connection.session.isGameOver() == true)
+					{
+						closeConnection(key);
+						return;
+					}
+					if (connection.unhandledInput == null || handleUnhandledInput(connection) == false)
+					{
+						key.interestOps(SelectionKey.OP_READ);
+						return;
+					}
+				}
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+			catch (IOException ex)
+			{
+				closeConnection(key);
+			}
+		}
+
+		/**
+		 * Handles the complete lines among the bytes a connection has kept
+		 *
+		 * @return True if any line was handled
+		 */
+		private boolean handleUnhandledInput(Connection connection)
+		{
+			ByteBuffer unhandled = connection.unhandledInput;
+			unhandled.flip();
+			int start = unhandled.position();
+			handleLines(connection, unhandled);
+			boolean handled = unhandled.position() > start;
+			if (unhandled.hasRemaining() == true)
+			{
+				unhandled.compact();
+			}
+			else
+			{
+				connection.unhandledInput = null;
+			}
+			return handled;
+		}
+
+		/**
+		 * Handles complete lines, until the bytes hold no more of them, the game ends or the output
+		 * has grown so large that the client has to take it first. The bytes after the handled lines remain.
+		 */
+		private void handleLines(Connection connection, ByteBuffer bytes)
+		{
+			while (bytes.hasRemaining() == true && connection.session.isGameOver() == false && connection.output.size() < OUTPUT_LIMIT)
+			{
+				if (connection.skipLineFeed == true)
+				{
+					connection.skipLineFeed = false;
+					if (bytes.get(bytes.position()) == '\n')
+					{
+						bytes.get();
+						continue;
+					}
+				}
+
+				int end = bytes.position();
+				while (end < bytes.limit() && bytes.get(end) != '\n' && bytes.get(end) != '\r')
+				{
+					end++;
+				}
+				if (end == bytes.limit())
+				{
+					return;
+				}
+
+				connection.skipLineFeed = bytes.get(end) == '\r';
+				handleLine(connection, bytes, end);
+				bytes.position(end + 1);
+			}
+		}
+
+		/**
+		 * Decodes the line from the position of the bytes to the end and passes it to the session
+		 */
+		private void handleLine(Connection connection, ByteBuffer bytes, int end)
+		{
+			ByteBuffer lineBytes = bytes.duplicate();
+			lineBytes.limit(Math.min(end, lineBytes.position() + MAX_LINE_LENGTH));
+			lineChars.clear();
+			decoder.reset();
+			decoder.decode(lineBytes, lineChars, true);
+			decoder.flush(lineChars);
+			lineChars.flip();
+			CommandUtilities.handleLine(connection.session, lineChars);
+		}
+
+		/**
+		 * Keeps the remaining bytes for later, because they do not make up a line yet or
+		 * because the output has to be taken first
+		 */
+		private void keepInput(Connection connection, ByteBuffer bytes)
+		{
+			ByteBuffer unhandled = connection.unhandledInput;
+			if (unhandled == null || unhandled.remaining() < bytes.remaining())
+			{
+				int needed = ((unhandled != null) ? unhandled.position() : 0) + bytes.remaining();
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, (unhandled != null) ? unhandled.capacity() * 2 : 0));
+				if (unhandled != null)
+				{
+					unhandled.flip();
+					larger.put(unhandled);
+				}
+				connection.unhandledInput = larger;
+			}
+			connection.unhandledInput.put(bytes);
+		}
+
+		/**
+		 * Closes a connection and forgets its session
+		 */
+		private void closeConnection(SelectionKey key)
+		{
+			Connection connection = (Connection)key.attachment();
+			key.cancel();
+			closeQuietly((SocketChannel)key.channel());
+			if (connection != null)
+			{
+				key.attach(null);
+				numberOfActiveSessions.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package game.data;
+
+/**
+ * Implements the operations of RoomItems that can be expressed with the others.
+ * The scans look at one room after another; implementations that can skip empty rooms should override them.
+ */
+abstract class AbstractRoomItems implements RoomItems
+{
+	private final int numberOfRooms;
+
+	/**
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	AbstractRoomItems(int numberOfRooms)
+	{
+		this.numberOfRooms = numberOfRooms;
+	}
+
+	/**
+	 * @return The number of rooms in the map
+	 */
+	final int getNumberOfRooms()
+	{
+		return numberOfRooms;
+	}
+
+	@Override
+	public boolean takePrimaryWeapon(int roomIndex)
+	{
+		if (hasPrimaryWeapon(roomIndex) == false)
+		{
+			return false;
+		}
+		setPrimaryWeapon(roomIndex, false);
+		return true;
+	}
+
+	@Override
+	public boolean takeSecondaryWeapon(int roomIndex)
+	{
+		if (hasSecondaryWeapon(roomIndex) == false)
+		{
+			return false;
+		}
+		setSecondaryWeapon(roomIndex, false);
+		return true;
+	}
+
+	@Override
+	public int takeCurrency(int roomIndex)
+	{
+		int amount = getCurrency(roomIndex);
+		if (amount != 0)
+		{
+			setCurrency(roomIndex, 0);
+		}
+		return amount;
+	}
+
+	@Override
+	public int addCurrency(int roomIndex, int amount)
+	{
+		int newAmount = (int)Math.min((long)getCurrency(roomIndex) + amount, Integer.MAX_VALUE);
+		setCurrency(roomIndex, newAmount);
+		return newAmount;
+	}
+
+	@Override
+	public int nextRoomWithCurrency(int fromIndex)
+	{
+		for (int i = Math.max(fromIndex, 0); i < numberOfRooms; i++)
+		{
+			if (getCurrency(i) > 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int nextRoomWithWeapon(int fromIndex)
+	{
+		for (int i = Math.max(fromIndex, 0); i < numberOfRooms; i++)
+		{
+			if (hasPrimaryWeapon(i) || hasSecondaryWeapon(i))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,380 @@
+package game.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class writes and reads the compiled (binary) form of a game map.
+ * The text format stays the authoring format; a compiled map is produced
+ * from it once and then loaded without any parsing.
+ *
+ * The file starts with a fixed size header followed by the sections below,
+ * all values are big-endian:
+ * <pre>
+ * header (64 bytes)    magic, version, number of rooms, entrance, exit, number of doors,
+ *                      size of the string table, CRC32 of the whole file except this field
+ * primary weapons      long[(rooms + 63) / 64] bitmap
+ * secondary weapons    long[(rooms + 63) / 64] bitmap
+ * descriptions present long[(rooms + 63) / 64] bitmap
+ * door offsets         int[rooms + 1], doors of room i are targets[offsets[i]..offsets[i + 1])
+ * door targets         int[number of doors]
+ * currency             int[rooms]
+ * string offsets       int[rooms + 1], same scheme as door offsets
+ * string table         UTF-8 bytes of all room descriptions
+ * </pre>
+ *
+ * Currency values are rolled when the map is compiled and stored as they are.
+ *
+ * A loaded map reads its descriptions, and with the off-heap backend its doors, straight from
+ * the mapped file instead of copying them. A compiled map is therefore never rewritten in place:
+ * write replaces the file as a whole, and games that still have the old file mapped keep reading it.
+ */
+public final class CompiledMapFile
+{
+	public static final int MAGIC = 0x41474D50; //"AGMP"
+	public static final int VERSION = 2;
+	public static final String EXTENSION = ".map";
+
+	private static final int HEADER_SIZE = 64;
+	private static final int CHECKSUM_POSITION = 32;
+	private static final int CHECKSUM_SIZE = 8;
+	private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * @param textFilePath The path to a text map file
+	 * @return The same path with the extension replaced by EXTENSION
+	 */
+	public static String getDefaultPath(String textFilePath)
+	{
+		int extensionStart = textFilePath.lastIndexOf('.');
+		if (extensionStart <= Math.max(textFilePath.lastIndexOf('/'), textFilePath.lastIndexOf('\\')))
+		{
+			return textFilePath + EXTENSION;
+		}
+		return textFilePath.substring(0, extensionStart) + EXTENSION;
+	}
+
+	/**
+	 * Writes the specified map to a compiled map file. The map is written to a temporary file
+	 * in the same directory, which then takes the place of the old file in one step,
+	 * so a write that fails halfway leaves the old file as it was.
+	 *
+	 * @param mapData The MapData object to compile
+	 * @param filePath The path to the compiled file, which is replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(MapData mapData, String filePath) throws IOException
+	{
+		int numberOfRooms = mapData.numberOfRooms;
+		int bitmapWords = (numberOfRooms + 63) / 64;
+
+		byte[][] descriptions = new byte[numberOfRooms][];
+		long[] descriptionsPresent = new long[bitmapWords];
+		long[] primaryWeapons = new long[bitmapWords];
+		long[] secondaryWeapons = new long[bitmapWords];
+		int numberOfDoors = mapData.getRoomLayout().getTotalNumberOfDoors();
+		int stringTableSize = 0;
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			String description = mapData.getRoomDescription(i);
+			if (description != null)
+			{
+				descriptions[i] = description.getBytes(MappedMapReader.MAP_CHARSET);
+				descriptionsPresent[i >>> 6] |= 1L << i;
+				stringTableSize += descriptions[i].length;
+			}
+			if (mapData.hasPrimaryWeapon(i) == true)
+			{
+				primaryWeapons[i >>> 6] |= 1L << i;
+			}
+			if (mapData.hasSecondaryWeapon(i) == true)
+			{
+				secondaryWeapons[i >>> 6] |= 1L << i;
+			}
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(numberOfRooms);
+		header.putInt(mapData.entranceRoomNumber);
+		header.putInt(mapData.exitRoomNumber);
+		header.putInt(numberOfDoors);
+		header.putInt(stringTableSize);
+
+		//The checksum covers the header without its own field, then the sections in file order
+		CRC32 checksum = new CRC32();
+		checksum.update(header.array(), 0, CHECKSUM_POSITION);
+		checksum.update(header.array(), CHECKSUM_POSITION + CHECKSUM_SIZE, HEADER_SIZE - CHECKSUM_POSITION - CHECKSUM_SIZE);
+
+		//Games that have the old file mapped keep reading it, so the new one is written
+		//next to it and moved over it only once it is complete
+		Path target = Paths.get(filePath).toAbsolutePath();
+		Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		boolean written = false;
+		try
+		{
+			RandomAccessFile file = new RandomAccessFile(temporary.toFile(), "rw");
+			try
+			{
+				file.seek(HEADER_SIZE);
+
+				DataOutputStream payload = new DataOutputStream(new CheckedOutputStream(
+						new BufferedOutputStream(new FileOutputStream(file.getFD()), 1 << 16), checksum));
+
+				writeLongs(payload, primaryWeapons);
+				writeLongs(payload, secondaryWeapons);
+				writeLongs(payload, descriptionsPresent);
+
+				int[] doorOffsets = new int[numberOfRooms + 1];
+				int[] doorTargets = new int[numberOfDoors];
+				mapData.getRoomLayout().copyOffsets(doorOffsets);
+				mapData.getRoomLayout().copyTargets(doorTargets);
+				writeInts(payload, doorOffsets);
+				writeInts(payload, doorTargets);
+
+				for (int i = 0; i < numberOfRooms; i++)
+				{
+					payload.writeInt(mapData.getCurrency(i));
+				}
+
+				int offset = 0;
+				payload.writeInt(offset);
+				for (int i = 0; i < numberOfRooms; i++)
+				{
+					offset += (descriptions[i] == null) ? 0 : descriptions[i].length;
+					payload.writeInt(offset);
+				}
+				for (int i = 0; i < numberOfRooms; i++)
+				{
+					if (descriptions[i] != null)
+					{
+						payload.write(descriptions[i]);
+					}
+				}
+				payload.flush();
+
+				header.putLong(CHECKSUM_POSITION, checksum.getValue());
+				file.seek(0);
+				file.write(header.array());
+				file.getFD().sync();
+			}
+			finally
+			{
+				file.close();
+			}
+
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+		}
+		finally
+		{
+			if (written == false)
+			{
+				Files.deleteIfExists(temporary);
+			}
+		}
+	}
+
+	/**
+	 * Memory-maps a compiled map file and instantiates a MapData object from it.
+	 * The header, checksum and offsets are verified before any data is used.
+	 * Descriptions are read from the file when they are asked for; with the off-heap backend,
+	 * so are the doors. Only the items, which change during a game, are copied.
+	 *
+	 * @param filePath The path to a compiled map file
+	 * @return The MapData object with all fields, containing game data, initialized
+	 * @throws IOException if the file does not exist, cannot be read, is of an unsupported
+	 * version or is corrupted
+	 */
+	public static MapData readMapData(String filePath) throws IOException
+	{
+		ByteBuffer mapBytes = MappedMapReader.mapFile(filePath);
+
+		if (mapBytes.limit() < HEADER_SIZE || mapBytes.getInt(0) != MAGIC)
+		{
+			throw new IOException("\'" + filePath + "\' is not a compiled map file");
+		}
+		if (mapBytes.getInt(4) != VERSION)
+		{
+			throw new IOException("\'" + filePath + "\' has unsupported version " + mapBytes.getInt(4));
+		}
+
+		int numberOfRooms = mapBytes.getInt(8);
+		int entranceRoomNumber = mapBytes.getInt(12);
+		int exitRoomNumber = mapBytes.getInt(16);
+		int numberOfDoors = mapBytes.getInt(20);
+		int stringTableSize = mapBytes.getInt(24);
+		int bitmapWords = (numberOfRooms + 63) / 64;
+
+		long expectedSize = HEADER_SIZE + 3L * bitmapWords * 8 + 4L * (numberOfRooms + 1) + 4L * numberOfDoors
+				+ 4L * numberOfRooms + 4L * (numberOfRooms + 1) + stringTableSize;
+		if (numberOfRooms < 0 || numberOfDoors < 0 || stringTableSize < 0 || expectedSize != mapBytes.limit())
+		{
+			throw new IOException("\'" + filePath + "\' is truncated or corrupted");
+		}
+		if (computeChecksum(mapBytes) != mapBytes.getLong(CHECKSUM_POSITION))
+		{
+			throw new IOException("\'" + filePath + "\' failed the checksum test");
+		}
+		if (entranceRoomNumber < 1 || entranceRoomNumber > numberOfRooms || exitRoomNumber < 1 || exitRoomNumber > numberOfRooms)
+		{
+			throw new IOException("\'" + filePath + "\' has an entrance or exit outside the map");
+		}
+
+		int primaryWeaponsPosition = HEADER_SIZE;
+		int secondaryWeaponsPosition = primaryWeaponsPosition + bitmapWords * 8;
+		int descriptionsPresentPosition = secondaryWeaponsPosition + bitmapWords * 8;
+		int doorOffsetsPosition = descriptionsPresentPosition + bitmapWords * 8;
+		int doorTargetsPosition = doorOffsetsPosition + (numberOfRooms + 1) * 4;
+		int currencyPosition = doorTargetsPosition + numberOfDoors * 4;
+		int stringOffsetsPosition = currencyPosition + numberOfRooms * 4;
+		int stringTablePosition = stringOffsetsPosition + (numberOfRooms + 1) * 4;
+
+		if (areOffsetsValid(mapBytes, doorOffsetsPosition, numberOfRooms, numberOfDoors) == false
+				|| areOffsetsValid(mapBytes, stringOffsetsPosition, numberOfRooms, stringTableSize) == false)
+		{
+			throw new IOException("\'" + filePath + "\' has offsets outside their sections");
+		}
+
+		MapData gameData = new MapData(numberOfRooms, System.getProperty(MapData.BACKEND_PROPERTY, MapData.BACKEND_HEAP),
+				new MappedRoomDescriptions(mapBytes, numberOfRooms, descriptionsPresentPosition, stringOffsetsPosition, stringTablePosition));
+		gameData.entranceRoomNumber = entranceRoomNumber;
+		gameData.exitRoomNumber = exitRoomNumber;
+		System.out.println("Initialising game map -- number of rooms: " + gameData.numberOfRooms);
+
+		IntBuffer doorOffsets = getIntSection(mapBytes, doorOffsetsPosition, numberOfRooms + 1);
+		IntBuffer doorTargets = getIntSection(mapBytes, doorTargetsPosition, numberOfDoors);
+		if (gameData.getBackend().equals(MapData.BACKEND_OFF_HEAP))
+		{
+			gameData.setRoomLayout(new OffHeapRoomLayout(doorOffsets, doorTargets));
+		}
+		else
+		{
+			//Heap layouts are read from Java arrays, so that every door lookup is a plain array read
+			int[] offsets = new int[numberOfRooms + 1];
+			int[] targets = new int[numberOfDoors];
+			doorOffsets.get(offsets);
+			doorTargets.get(targets);
+			gameData.setRoomLayout(new HeapRoomLayout(offsets, targets));
+		}
+
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			int bitmapOffset = (i >>> 6) * 8;
+			gameData.setPrimaryWeapon(i, (mapBytes.getLong(primaryWeaponsPosition + bitmapOffset) & (1L << i)) != 0);
+			gameData.setSecondaryWeapon(i, (mapBytes.getLong(secondaryWeaponsPosition + bitmapOffset) & (1L << i)) != 0);
+			gameData.setCurrency(i, mapBytes.getInt(currencyPosition + i * 4));
+		}
+
+		return gameData;
+	}
+
+	/**
+	 * @param mapBytes The contents of a compiled map file
+	 * @param position The position of the section
+	 * @param length The number of ints in the section
+	 * @return A view of the section, which reads the file without copying it
+	 */
+	private static IntBuffer getIntSection(ByteBuffer mapBytes, int position, int length)
+	{
+		ByteBuffer section = mapBytes.duplicate();
+		section.position(position);
+		section.limit(position + length * 4);
+		return section.slice().asIntBuffer();
+	}
+
+	/**
+	 * Checks that a section of offsets starts at zero, never decreases and ends at the size of the section it points into
+	 *
+	 * @param mapBytes The contents of a compiled map file
+	 * @param position The position of the offsets
+	 * @param numberOfRooms The number of rooms, which is one less than the number of offsets
+	 * @param size The size of the section the offsets point into
+	 * @return True if the offsets are valid
+	 */
+	private static boolean areOffsetsValid(ByteBuffer mapBytes, int position, int numberOfRooms, int size)
+	{
+		int previous = 0;
+		for (int i = 0; i <= numberOfRooms; i++)
+		{
+			int offset = mapBytes.getInt(position + i * 4);
+			if (offset < previous || (i == 0 && offset != 0))
+			{
+				return false;
+			}
+			previous = offset;
+		}
+		return previous == size;
+	}
+
+	/**
+	 * Computes the CRC32 checksum of the header without its checksum field, followed by everything after the header
+	 *
+	 * @param mapBytes The contents of a compiled map file
+	 * @return The checksum value
+	 */
+	private static long computeChecksum(ByteBuffer mapBytes)
+	{
+		CRC32 checksum = new CRC32();
+		byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+
+		updateChecksum(checksum, mapBytes, 0, CHECKSUM_POSITION, chunk);
+		updateChecksum(checksum, mapBytes, CHECKSUM_POSITION + CHECKSUM_SIZE, mapBytes.limit(), chunk);
+
+		return checksum.getValue();
+	}
+
+	/**
+	 * Adds a range of bytes to a checksum
+	 *
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @param chunk A buffer to copy the bytes through
+	 */
+	private static void updateChecksum(CRC32 checksum, ByteBuffer mapBytes, int start, int end, byte[] chunk)
+	{
+		ByteBuffer range = mapBytes.duplicate();
+		range.position(start);
+		range.limit(end);
+		while (range.hasRemaining())
+		{
+			int length = Math.min(chunk.length, range.remaining());
+			range.get(chunk, 0, length);
+			checksum.update(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Writes each value of the specified array
+	 */
+	private static void writeLongs(DataOutputStream out, long[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			out.writeLong(values[i]);
+		}
+	}
+
+	/**
+	 * Writes each value of the specified array
+	 */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			out.writeInt(values[i]);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package game.data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Room items that many games change at the same time, for a shared world in which players
+ * contend for the same currency and weapons. Each room is one word of an AtomicLongArray:
+ * <pre>
+ * bits 0-31   currency
+ * bit  32     PRIMARY_WEAPON
+ * bit  33     SECONDARY_WEAPON
+ * bits 34-63  version
+ * </pre>
+ * Every change is a compare-and-set of the whole word, so no locks are taken, changes to different
+ * rooms never wait for each other, and of two players taking the same item only one gets it.
+ * The version is part of the word too, so it can be read together with the items.
+ * Reads of several rooms, such as the scans and copy, see each room at some moment but not all rooms at once.
+ *
+ * Every change of the items also counts up the item epoch, so that games can tell whether they need to
+ * look at the items again. The epoch is the sum of a few counters on different cache lines, each counted up
+ * by the changes to every so many rooms, so that changes to different rooms seldom count up the same counter.
+ */
+final class ConcurrentRoomItems extends AbstractRoomItems
+{
+	private static final long CURRENCY_MASK = 0xFFFFFFFFL;
+	private static final long PRIMARY_WEAPON = 1L << 32;
+	private static final long SECONDARY_WEAPON = 1L << 33;
+	private static final int VERSION_SHIFT = 34;
+	private static final int MAX_EPOCH_COUNTERS = 64;
+	private static final int EPOCH_COUNTER_SPACING = 16;
+
+	private final AtomicLongArray rooms;
+	private final AtomicLongArray epochCounters;
+	private final int epochCounterMask;
+
+	/**
+	 * Creates items that start out like other items, versions included
+	 *
+	 * @param items The items to start from
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	ConcurrentRoomItems(RoomItems items, int numberOfRooms)
+	{
+		super(numberOfRooms);
+		rooms = new AtomicLongArray(numberOfRooms);
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			long word = ((long)items.getVersion(i) << VERSION_SHIFT) | (Math.max(items.getCurrency(i), 0) & CURRENCY_MASK);
+			if (items.hasPrimaryWeapon(i) == true)
+			{
+				word |= PRIMARY_WEAPON;
+			}
+			if (items.hasSecondaryWeapon(i) == true)
+			{
+				word |= SECONDARY_WEAPON;
+			}
+			rooms.set(i, word);
+		}
+
+		int numberOfCounters = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1), MAX_EPOCH_COUNTERS);
+		epochCounters = new AtomicLongArray(numberOfCounters * EPOCH_COUNTER_SPACING);
+		epochCounterMask = numberOfCounters - 1;
+	}
+
+	@Override
+	public RoomItems copy()
+	{
+		return new ConcurrentRoomItems(this, getNumberOfRooms());
+	}
+
+	@Override
+	public boolean hasPrimaryWeapon(int roomIndex)
+	{
+		return (rooms.get(roomIndex) & PRIMARY_WEAPON) != 0;
+	}
+
+	@Override
+	public void setPrimaryWeapon(int roomIndex, boolean present)
+	{
+		setFlag(roomIndex, PRIMARY_WEAPON, present);
+	}
+
+	@Override
+	public boolean hasSecondaryWeapon(int roomIndex)
+	{
+		return (rooms.get(roomIndex) & SECONDARY_WEAPON) != 0;
+	}
+
+	@Override
+	public void setSecondaryWeapon(int roomIndex, boolean present)
+	{
+		setFlag(roomIndex, SECONDARY_WEAPON, present);
+	}
+
+	@Override
+	public int getCurrency(int roomIndex)
+	{
+		return (int)(rooms.get(roomIndex) & CURRENCY_MASK);
+	}
+
+	@Override
+	public void setCurrency(int roomIndex, int amount)
+	{
+		long word;
+		do
+		{
+			word = rooms.get(roomIndex);
+		}
+		while (rooms.compareAndSet(roomIndex, word, (word & ~CURRENCY_MASK) | Math.max(amount, 0)) == false);
+		countChange(roomIndex);
+	}
+
+	@Override
+	public boolean takePrimaryWeapon(int roomIndex)
+	{
+		return takeFlag(roomIndex, PRIMARY_WEAPON);
+	}
+
+	@Override
+	public boolean takeSecondaryWeapon(int roomIndex)
+	{
+		return takeFlag(roomIndex, SECONDARY_WEAPON);
+	}
+
+	@Override
+	public int takeCurrency(int roomIndex)
+	{
+		while (true)
+		{
+			long word = rooms.get(roomIndex);
+			int amount = (int)(word & CURRENCY_MASK);
+			if (amount == 0)
+			{
+				return 0;
+			}
+			if (rooms.compareAndSet(roomIndex, word, word & ~CURRENCY_MASK) == true)
+			{
+				countChange(roomIndex);
+				return amount;
+			}
+		}
+	}
+
+	/**
+	 * Adds currency in one step, so that currency dropped by different players at once is all kept.
+	 * The amount in a room stops growing at Integer.MAX_VALUE.
+	 */
+	@Override
+	public int addCurrency(int roomIndex, int amount)
+	{
+		while (true)
+		{
+			long word = rooms.get(roomIndex);
+			int newAmount = (int)Math.min((word & CURRENCY_MASK) + Math.max(amount, 0), Integer.MAX_VALUE);
+			if (rooms.compareAndSet(roomIndex, word, (word & ~CURRENCY_MASK) | newAmount) == true)
+			{
+				countChange(roomIndex);
+				return newAmount;
+			}
+		}
+	}
+
+	@Override
+	public int getVersion(int roomIndex)
+	{
+		return (int)(rooms.get(roomIndex) >>> VERSION_SHIFT);
+	}
+
+	@Override
+	public void incrementVersion(int roomIndex)
+	{
+		rooms.getAndAdd(roomIndex, 1L << VERSION_SHIFT);
+	}
+
+	@Override
+	public int nextRoomWithCurrency(int fromIndex)
+	{
+		for (int i = Math.max(fromIndex, 0); i < getNumberOfRooms(); i++)
+		{
+			if ((rooms.get(i) & CURRENCY_MASK) != 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int nextRoomWithWeapon(int fromIndex)
+	{
+		for (int i = Math.max(fromIndex, 0); i < getNumberOfRooms(); i++)
+		{
+			if ((rooms.get(i) & (PRIMARY_WEAPON | SECONDARY_WEAPON)) != 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the item epoch. A change made before this call is always counted in the result,
+	 * so if two calls return the same number, no item changed between them.
+	 *
+	 * @return The number of changes made to the items so far
+	 */
+	long getEpoch()
+	{
+		long epoch = 0;
+		for (int i = 0; i < epochCounters.length(); i += EPOCH_COUNTER_SPACING)
+		{
+			epoch += epochCounters.get(i);
+		}
+		return epoch;
+	}
+
+	/**
+	 * Counts up the item epoch after a change to a room
+	 */
+	private void countChange(int roomIndex)
+	{
+		epochCounters.getAndIncrement((roomIndex & epochCounterMask) * EPOCH_COUNTER_SPACING);
+	}
+
+	/**
+	 * Sets or clears one of the flags of a room
+	 */
+	private void setFlag(int roomIndex, long flag, boolean present)
+	{
+		long word;
+		do
+		{
+			word = rooms.get(roomIndex);
+		}
+		while (rooms.compareAndSet(roomIndex, word, (present == true) ? word | flag : word & ~flag) == false);
+		countChange(roomIndex);
+	}
+
+	/**
+	 * Clears a flag of a room if it is set
+	 *
+	 * @return True if this call cleared the flag
+	 */
+	private boolean takeFlag(int roomIndex, long flag)
+	{
+		while (true)
+		{
+			long word = rooms.get(roomIndex);
+			if ((word & flag) == 0)
+			{
+				return false;
+			}
+			if (rooms.compareAndSet(roomIndex, word, word & ~flag) == true)
+			{
+				countChange(roomIndex);
+				return true;
+			}
+		}
+	}
+}
@@ -2,6 +2,7 @@ package game.data;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Scanner;
 
 /**
@@ -13,14 +14,14 @@ import java.util.Scanner;
 public final class DataTransfer 
 {
 	//======Recognised tokens======
-	private static final String ITEMS_TAG = "@items";
-	private static final String CONNECT_TAG = "@connect";
-	private static final String DESCRIPTION_TAG = "@description";
+	static final String ITEMS_TAG = "@items";
+	static final String CONNECT_TAG = "@connect";
+	static final String DESCRIPTION_TAG = "@description";
 	
-	private static final String TOKEN_DELIMITER = ",";
-	private static final String CURRENCY = "currency";
-	private static final String PRIMARY_WEAPON = "primary weapon";
-	private static final String SECONDARY_WEAPON = "secondary weapon";
+	static final String TOKEN_DELIMITER = ",";
+	static final String CURRENCY = "currency";
+	static final String PRIMARY_WEAPON = "primary weapon";
+	static final String SECONDARY_WEAPON = "secondary weapon";
 	//=============================
 	
 	/**
@@ -34,17 +35,12 @@ public final class DataTransfer
 	 */
 	public static MapData readMapData(String filePath) throws FileNotFoundException
 	{
-		MapData gameData = new MapData();
 		Scanner fileScan = new Scanner(new File(filePath));
 
-		gameData.numberOfRooms = Integer.parseInt(fileScan.nextLine());
+		MapData gameData = new MapData(Integer.parseInt(fileScan.nextLine()));
 		System.out.println("Initialising game map -- number of rooms: " + gameData.numberOfRooms);
 		
-		gameData.roomLayout = new int[gameData.numberOfRooms][];
-		gameData.roomDescriptions = new String[gameData.numberOfRooms];
-		gameData.roomsWithPrimaryWeapon = new boolean[gameData.numberOfRooms];
-		gameData.roomsWithSecondaryWeapon = new boolean[gameData.numberOfRooms];
-		gameData.currencyInRooms = new int[gameData.numberOfRooms];
+		RoomLayout.Builder roomLayout = gameData.newRoomLayoutBuilder();
 
 		int roomIndex = -1; //The number of the existing room from file minus one
 		
@@ -59,17 +55,17 @@ public final class DataTransfer
 			if (data.equalsIgnoreCase(ITEMS_TAG))
 			{
 				String scannedItems = fileScan.nextLine();
-				gameData.roomsWithPrimaryWeapon[roomIndex] = isItemPresent(scannedItems, PRIMARY_WEAPON);
-				gameData.roomsWithSecondaryWeapon[roomIndex] = isItemPresent(scannedItems, SECONDARY_WEAPON);
-				gameData.currencyInRooms[roomIndex] = (isItemPresent(scannedItems, CURRENCY) == true) ? (int)(Math.random() * 300 + 150) : 0;
+				gameData.setPrimaryWeapon(roomIndex, isItemPresent(scannedItems, PRIMARY_WEAPON));
+				gameData.setSecondaryWeapon(roomIndex, isItemPresent(scannedItems, SECONDARY_WEAPON));
+				gameData.setCurrency(roomIndex, (isItemPresent(scannedItems, CURRENCY) == true) ? generateRoomCurrency() : 0);
 			}
 			else if (data.equalsIgnoreCase(CONNECT_TAG))
 			{
-				addRoomConnections(gameData.roomLayout, roomIndex, fileScan.nextLine());
+				addRoomConnections(roomLayout, roomIndex, fileScan.nextLine());
 			}
 			else if (data.equalsIgnoreCase(DESCRIPTION_TAG))
 			{
-				gameData.roomDescriptions[roomIndex] = fileScan.nextLine();
+				gameData.setRoomDescription(roomIndex, fileScan.nextLine());
 			}
 			else
 			{
@@ -81,30 +77,71 @@ public final class DataTransfer
 			}
 		}
 		gameData.exitRoomNumber = roomIndex + 1;
+		gameData.setRoomLayout(roomLayout.build());
 		
 		fileScan.close();
 		
 		return gameData;
 	}
 
+	/**
+	 * Instantiates a MapData object from the compiled form of a map if it exists
+	 * and is up to date, or from the text form otherwise. A compiled file that
+	 * cannot be loaded (for example, because it failed the checksum test) is ignored.
+	 * 
+	 * @param filePath The path to a text file with game data
+	 * @param compiledFilePath The path to the compiled version of the same file
+	 * @return The MapData object with all fields, containing game data, initialized
+	 * @throws FileNotFoundException if neither file can be loaded
+	 */
+	public static MapData readMapData(String filePath, String compiledFilePath) throws FileNotFoundException
+	{
+		File textFile = new File(filePath);
+		File compiledFile = new File(compiledFilePath);
+		
+		if (compiledFile.isFile() && (textFile.exists() == false || compiledFile.lastModified() >= textFile.lastModified()))
+		{
+			try
+			{
+				return CompiledMapFile.readMapData(compiledFilePath);
+			}
+			catch (IOException ex)
+			{
+				System.out.println("Ignoring compiled map: " + ex.getMessage());
+			}
+		}
+		
+		return readMapData(filePath);
+	}
+
+	/**
+	 * Generates a random amount of currency for a room whose item list
+	 * contains the currency token
+	 * 
+	 * @return An integer between 150 and 449 inclusive
+	 */
+	static int generateRoomCurrency()
+	{
+		return (int)(Math.random() * 300 + 150);
+	}
+
 	/**
 	 * Add connections to the room specified by its index in the
-	 * specified array of rooms. Connections are paresed from adjacentRooms
+	 * layout being built. Connections are paresed from adjacentRooms
 	 * string value
 	 * 
-	 * @param roomLayout An array of intgeres, where each integer is the room index,
-	 * that will be changed to add new connections
+	 * @param roomLayout The builder of the room layout that will be changed to add new connections
 	 * @param roomIndex The room index to add connections to
 	 * @param adjacentRooms A string containing room numbers, separated by a delimiter (a comma)
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	private static void addRoomConnections(int[][] roomLayout, int roomIndex, String adjacentRooms)
+	private static void addRoomConnections(RoomLayout.Builder roomLayout, int roomIndex, String adjacentRooms)
 	{
 		String[] roomConnections = adjacentRooms.split(TOKEN_DELIMITER);
-		roomLayout[roomIndex] = new int[roomConnections.length];
+		roomLayout.beginRoom(roomIndex);
 		for(int i = 0; i < roomConnections.length; i++)
 		{
-			roomLayout[roomIndex][i] = Integer.parseInt(roomConnections[i]);
+			roomLayout.addDoor(Integer.parseInt(roomConnections[i]));
 		}
 	}
 
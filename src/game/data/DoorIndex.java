@@ -0,0 +1,139 @@
+package game.data;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sorted copies of the doors of hub rooms, the rooms with more doors than RoomLayout.LINEAR_SCAN_LIMIT,
+ * so that looking for a door in one of them takes logarithmic time. Only hub rooms take space:
+ * their sorted doors are packed one after the other, and a map from room to position finds them.
+ *
+ * The sorted doors are kept in a Java array, or in a direct buffer for layouts kept outside the Java heap.
+ * The room map stays on the heap either way; it has one entry per hub room.
+ */
+final class DoorIndex
+{
+	private final IntIntMap starts;
+	private final int[] doors;
+	private final IntBuffer directDoors;
+	private int numberOfDoors;
+
+	/**
+	 * Creates an empty index with room for a known number of doors
+	 *
+	 * @param capacity The total number of doors of all hub rooms to be added
+	 * @param offHeap True to keep the sorted doors outside the Java heap
+	 */
+	DoorIndex(int capacity, boolean offHeap)
+	{
+		starts = new IntIntMap();
+		if (offHeap == true)
+		{
+			doors = null;
+			directDoors = RoomLayout.allocate(capacity, true);
+		}
+		else
+		{
+			doors = new int[capacity];
+			directDoors = null;
+		}
+	}
+
+	/**
+	 * Indexes the hub rooms of a layout that was built without an index
+	 *
+	 * @param offsets The door offsets of the layout
+	 * @param targets The door numbers of the layout
+	 * @param offHeap True to keep the sorted doors outside the Java heap
+	 * @return The index, or null if no room has more doors than RoomLayout.LINEAR_SCAN_LIMIT
+	 */
+	static DoorIndex build(IntBuffer offsets, IntBuffer targets, boolean offHeap)
+	{
+		int numberOfRooms = offsets.capacity() - 1;
+		int capacity = 0;
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			int length = offsets.get(i + 1) - offsets.get(i);
+			capacity += (length > RoomLayout.LINEAR_SCAN_LIMIT) ? length : 0;
+		}
+		if (capacity == 0)
+		{
+			return null;
+		}
+
+		DoorIndex index = new DoorIndex(capacity, offHeap);
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			int length = offsets.get(i + 1) - offsets.get(i);
+			if (length > RoomLayout.LINEAR_SCAN_LIMIT)
+			{
+				index.add(i, targets, offsets.get(i), length);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a sorted copy of the doors of a hub room
+	 *
+	 * @param roomIndex The room number minus one
+	 * @param source A buffer that holds the doors of the room
+	 * @param from The position of the first door in the buffer
+	 * @param length The number of doors of the room
+	 */
+	void add(int roomIndex, IntBuffer source, int from, int length)
+	{
+		starts.put(roomIndex, numberOfDoors);
+		if (doors != null)
+		{
+			RoomLayout.copy(source, from, IntBuffer.wrap(doors), numberOfDoors, length);
+			Arrays.sort(doors, numberOfDoors, numberOfDoors + length);
+		}
+		else
+		{
+			int[] sorted = new int[length];
+			RoomLayout.copy(source, from, IntBuffer.wrap(sorted), 0, length);
+			Arrays.sort(sorted);
+			RoomLayout.copy(IntBuffer.wrap(sorted), 0, directDoors, numberOfDoors, length);
+		}
+		numberOfDoors += length;
+	}
+
+	/**
+	 * Checks whether a hub room has a door to another room
+	 *
+	 * @param roomIndex The room number minus one, of a room that was added to the index
+	 * @param length The number of doors of the room
+	 * @param roomNumber The number of the room behind the door
+	 * @return True if there is such a door
+	 */
+	boolean contains(int roomIndex, int length, int roomNumber)
+	{
+		int first = starts.get(roomIndex, 0);
+		if (doors != null)
+		{
+			return Arrays.binarySearch(doors, first, first + length, roomNumber) >= 0;
+		}
+
+		int low = first;
+		int high = first + length - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int middleValue = directDoors.get(middle);
+			if (middleValue < roomNumber)
+			{
+				low = middle + 1;
+			}
+			else if (middleValue > roomNumber)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
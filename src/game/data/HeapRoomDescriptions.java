@@ -0,0 +1,38 @@
+package game.data;
+
+/**
+ * Room descriptions kept as Java strings
+ */
+final class HeapRoomDescriptions implements RoomDescriptions
+{
+	private final String[] roomDescriptions;
+
+	/**
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	HeapRoomDescriptions(int numberOfRooms)
+	{
+		roomDescriptions = new String[numberOfRooms];
+	}
+
+	@Override
+	public String getDescription(int roomIndex)
+	{
+		return roomDescriptions[roomIndex];
+	}
+
+	@Override
+	public void setDescription(int roomIndex, String description)
+	{
+		roomDescriptions[roomIndex] = description;
+	}
+
+	@Override
+	public void setDescriptions(int[] roomIndexes, String[] descriptions, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			setDescription(roomIndexes[i], descriptions[i]);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package game.data;
+
+/**
+ * Room items kept on the Java heap in a compact form. Weapons are kept in
+ * bitsets with one bit per room; currency is kept in a bitset of the rooms that have any
+ * and a sparse map from those rooms to their amounts. Rooms with nothing in them cost three bits.
+ * Versions are kept in another sparse map, which only holds the rooms that have changed during play.
+ * The scans skip 64 empty rooms at a time.
+ *
+ * Rooms share words of the bitsets, so writes to different rooms must not run concurrently.
+ */
+final class HeapRoomItems extends AbstractRoomItems
+{
+	private final long[] primaryWeapons;
+	private final long[] secondaryWeapons;
+	private final long[] roomsWithCurrency;
+	private final IntIntMap currencyInRooms;
+	private final IntIntMap versions;
+
+	/**
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	HeapRoomItems(int numberOfRooms)
+	{
+		super(numberOfRooms);
+		int words = (numberOfRooms + 63) / 64;
+		primaryWeapons = new long[words];
+		secondaryWeapons = new long[words];
+		roomsWithCurrency = new long[words];
+		currencyInRooms = new IntIntMap();
+		versions = new IntIntMap();
+	}
+
+	/**
+	 * Creates a copy of other items
+	 */
+	private HeapRoomItems(HeapRoomItems other)
+	{
+		super(other.getNumberOfRooms());
+		primaryWeapons = other.primaryWeapons.clone();
+		secondaryWeapons = other.secondaryWeapons.clone();
+		roomsWithCurrency = other.roomsWithCurrency.clone();
+		currencyInRooms = new IntIntMap(other.currencyInRooms);
+		versions = new IntIntMap(other.versions);
+	}
+
+	@Override
+	public RoomItems copy()
+	{
+		return new HeapRoomItems(this);
+	}
+
+	@Override
+	public boolean hasPrimaryWeapon(int roomIndex)
+	{
+		return isSet(primaryWeapons, roomIndex);
+	}
+
+	@Override
+	public void setPrimaryWeapon(int roomIndex, boolean present)
+	{
+		set(primaryWeapons, roomIndex, present);
+	}
+
+	@Override
+	public boolean hasSecondaryWeapon(int roomIndex)
+	{
+		return isSet(secondaryWeapons, roomIndex);
+	}
+
+	@Override
+	public void setSecondaryWeapon(int roomIndex, boolean present)
+	{
+		set(secondaryWeapons, roomIndex, present);
+	}
+
+	@Override
+	public int getCurrency(int roomIndex)
+	{
+		return (isSet(roomsWithCurrency, roomIndex) == true) ? currencyInRooms.get(roomIndex, 0) : 0;
+	}
+
+	@Override
+	public void setCurrency(int roomIndex, int amount)
+	{
+		set(roomsWithCurrency, roomIndex, amount > 0);
+		if (amount > 0)
+		{
+			currencyInRooms.put(roomIndex, amount);
+		}
+		else
+		{
+			currencyInRooms.remove(roomIndex);
+		}
+	}
+
+	@Override
+	public int getVersion(int roomIndex)
+	{
+		checkRoomIndex(roomIndex);
+		return versions.get(roomIndex, 0);
+	}
+
+	@Override
+	public void incrementVersion(int roomIndex)
+	{
+		checkRoomIndex(roomIndex);
+		versions.put(roomIndex, versions.get(roomIndex, 0) + 1);
+	}
+
+	@Override
+	public int nextRoomWithCurrency(int fromIndex)
+	{
+		return nextSetBit(roomsWithCurrency, null, fromIndex);
+	}
+
+	@Override
+	public int nextRoomWithWeapon(int fromIndex)
+	{
+		return nextSetBit(primaryWeapons, secondaryWeapons, fromIndex);
+	}
+
+	/**
+	 * Finds the first bit at or after fromIndex that is set in either bitset
+	 *
+	 * @param bits A bitset
+	 * @param moreBits Another bitset of the same size, or null
+	 * @param fromIndex The index of the first room to look at
+	 * @return The index of the bit, or -1 if there is none
+	 */
+	private int nextSetBit(long[] bits, long[] moreBits, int fromIndex)
+	{
+		if (fromIndex >= getNumberOfRooms())
+		{
+			return -1;
+		}
+		int from = Math.max(fromIndex, 0);
+		int w = from >>> 6;
+		long word = (bits[w] | ((moreBits != null) ? moreBits[w] : 0)) & (-1L << from);
+		while (word == 0)
+		{
+			if (++w == bits.length)
+			{
+				return -1;
+			}
+			word = bits[w] | ((moreBits != null) ? moreBits[w] : 0);
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * @return True if the bit of the room is set
+	 */
+	private boolean isSet(long[] bits, int roomIndex)
+	{
+		checkRoomIndex(roomIndex);
+		return (bits[roomIndex >>> 6] & (1L << roomIndex)) != 0;
+	}
+
+	/**
+	 * Sets or clears the bit of the room
+	 */
+	private void set(long[] bits, int roomIndex, boolean value)
+	{
+		checkRoomIndex(roomIndex);
+		if (value == true)
+		{
+			bits[roomIndex >>> 6] |= 1L << roomIndex;
+		}
+		else
+		{
+			bits[roomIndex >>> 6] &= ~(1L << roomIndex);
+		}
+	}
+
+	/**
+	 * @throws ArrayIndexOutOfBoundsException if the room does not exist
+	 */
+	private void checkRoomIndex(int roomIndex)
+	{
+		if (roomIndex < 0 || roomIndex >= getNumberOfRooms())
+		{
+			throw new ArrayIndexOutOfBoundsException(roomIndex);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package game.data;
+
+import java.nio.IntBuffer;
+
+/**
+ * A room layout kept in two Java arrays, so that every door lookup is a plain array read
+ */
+final class HeapRoomLayout extends RoomLayout
+{
+	private final int[] offsets;
+	private final int[] targets;
+	private final DoorIndex doorIndex;
+
+	/**
+	 * Creates a layout from the arrays of a compressed sparse row structure and indexes its hub rooms.
+	 * The arrays are used as they are and must not be modified afterwards.
+	 *
+	 * @param offsets An array of numberOfRooms + 1 non-decreasing positions in targets
+	 * @param targets The door numbers of all rooms, grouped by room
+	 */
+	HeapRoomLayout(int[] offsets, int[] targets)
+	{
+		checkOffsets(IntBuffer.wrap(offsets), IntBuffer.wrap(targets));
+		this.offsets = offsets;
+		this.targets = targets;
+		this.doorIndex = DoorIndex.build(IntBuffer.wrap(offsets), IntBuffer.wrap(targets), false);
+	}
+
+	/**
+	 * Creates a layout from arrays that are already checked and indexed
+	 *
+	 * @param doorIndex The sorted doors of the hub rooms, or null if there are none
+	 */
+	HeapRoomLayout(int[] offsets, int[] targets, DoorIndex doorIndex)
+	{
+		this.offsets = offsets;
+		this.targets = targets;
+		this.doorIndex = doorIndex;
+	}
+
+	@Override
+	public RoomLayout toOffHeap()
+	{
+		IntBuffer offHeapOffsets = allocate(offsets.length, true);
+		IntBuffer offHeapTargets = allocate(targets.length, true);
+		offHeapOffsets.put(offsets).clear();
+		offHeapTargets.put(targets).clear();
+		return new OffHeapRoomLayout(offHeapOffsets, offHeapTargets, DoorIndex.build(offHeapOffsets, offHeapTargets, true));
+	}
+
+	@Override
+	public boolean isOffHeap()
+	{
+		return false;
+	}
+
+	@Override
+	public int getNumberOfRooms()
+	{
+		return offsets.length - 1;
+	}
+
+	@Override
+	public int getTotalNumberOfDoors()
+	{
+		return targets.length;
+	}
+
+	@Override
+	public int getNumberOfDoors(int roomIndex)
+	{
+		return offsets[roomIndex + 1] - offsets[roomIndex];
+	}
+
+	@Override
+	public int getDoor(int roomIndex, int doorIndex)
+	{
+		return targets[offsets[roomIndex] + doorIndex];
+	}
+
+	@Override
+	public int getFirstDoorPosition(int roomIndex)
+	{
+		return offsets[roomIndex];
+	}
+
+	@Override
+	public int getEndDoorPosition(int roomIndex)
+	{
+		return offsets[roomIndex + 1];
+	}
+
+	@Override
+	public int getDoorAt(int doorPosition)
+	{
+		return targets[doorPosition];
+	}
+
+	@Override
+	public boolean hasDoor(int roomIndex, int roomNumber)
+	{
+		int first = offsets[roomIndex];
+		int end = offsets[roomIndex + 1];
+
+		if (end - first > LINEAR_SCAN_LIMIT)
+		{
+			return doorIndex.contains(roomIndex, end - first, roomNumber);
+		}
+
+		for (int d = first; d < end; d++)
+		{
+			if (targets[d] == roomNumber)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void copyOffsets(int[] destination)
+	{
+		System.arraycopy(offsets, 0, destination, 0, offsets.length);
+	}
+
+	@Override
+	public void copyTargets(int[] destination)
+	{
+		System.arraycopy(targets, 0, destination, 0, targets.length);
+	}
+}
@@ -0,0 +1,165 @@
+package game.data;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from non-negative int keys to int values without boxing.
+ * Keys are kept in one array and values in another, with linear probing;
+ * removal shifts later entries back, so no tombstones are left behind.
+ */
+final class IntIntMap
+{
+	private static final int FREE = -1;
+	private static final int MINIMUM_CAPACITY = 16;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Creates an empty map
+	 */
+	IntIntMap()
+	{
+		keys = new int[MINIMUM_CAPACITY];
+		values = new int[MINIMUM_CAPACITY];
+		Arrays.fill(keys, FREE);
+	}
+
+	/**
+	 * Creates a map with the same keys and values as another
+	 *
+	 * @param other The map to copy
+	 */
+	IntIntMap(IntIntMap other)
+	{
+		keys = other.keys.clone();
+		values = other.values.clone();
+		size = other.size;
+	}
+
+	/**
+	 * @return The number of keys in the map
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param key A non-negative key
+	 * @param defaultValue The value to return if the key is not in the map
+	 * @return The value of the key, or defaultValue
+	 */
+	int get(int key, int defaultValue)
+	{
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+			{
+				return values[slot];
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Sets the value of a key, adding the key if necessary
+	 *
+	 * @param key A non-negative key
+	 * @param value The new value
+	 */
+	void put(int key, int value)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != FREE)
+		{
+			if (keys[slot] == key)
+			{
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		if (size * 2 > keys.length)
+		{
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Removes a key from the map if it is there
+	 *
+	 * @param key A non-negative key
+	 */
+	void remove(int key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != key)
+		{
+			if (keys[slot] == FREE)
+			{
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		//Move back every later entry of the run that would no longer be found
+		int free = slot;
+		for (int next = (free + 1) & mask; keys[next] != FREE; next = (next + 1) & mask)
+		{
+			int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - free) & mask))
+			{
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+		}
+		keys[free] = FREE;
+		size--;
+	}
+
+	/**
+	 * Moves all entries to tables of the specified capacity
+	 */
+	private void resize(int capacity)
+	{
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] != FREE)
+			{
+				int slot = hash(oldKeys[i]) & mask;
+				while (keys[slot] != FREE)
+				{
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads consecutive keys over the table
+	 */
+	private static int hash(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
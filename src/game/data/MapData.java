@@ -1,23 +1,281 @@
 package game.data;
 
 /**
- * 
+ *
  * The MapData class that is extensively used
  * throughout the game. It has vital information
  * about each room in the game.
- * 
+ *
+ * Room descriptions, items and doors are reached through accessors, so that
+ * they can be kept either on the Java heap or outside of it. The backend is chosen
+ * when the map is loaded, from the BACKEND_PROPERTY system property.
+ *
  * @author Nikolai Kolbenev 15897074
  *
  */
-public class MapData 
+public class MapData
 {
-	public int numberOfRooms;
-	public int[][] roomLayout;
-	public String[] roomDescriptions;
-	public boolean[] roomsWithPrimaryWeapon;
-	public boolean[] roomsWithSecondaryWeapon;
-	public int[] currencyInRooms;
-	
+	public static final String BACKEND_HEAP = "heap";
+	public static final String BACKEND_OFF_HEAP = "offHeap";
+	public static final String BACKEND_PROPERTY = "game.mapBackend";
+	public static final String SHARED_WORLD_PROPERTY = "game.sharedWorld";
+
+	public final int numberOfRooms;
 	public int entranceRoomNumber;
 	public int exitRoomNumber;
+
+	private final String backend;
+	private final RoomDescriptions roomDescriptions;
+	private final RoomItems roomItems;
+	private final boolean sharedWorld;
+	private RoomLayout roomLayout;
+
+	/**
+	 * Creates a map without descriptions, items or doors, stored in
+	 * the backend named by the BACKEND_PROPERTY system property
+	 *
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	public MapData(int numberOfRooms)
+	{
+		this(numberOfRooms, System.getProperty(BACKEND_PROPERTY, BACKEND_HEAP));
+	}
+
+	/**
+	 * Creates a map without descriptions, items or doors
+	 *
+	 * @param numberOfRooms The number of rooms in the map
+	 * @param backend BACKEND_HEAP to keep the rooms in Java arrays, or BACKEND_OFF_HEAP
+	 * to keep them in direct buffers so that heap use does not grow with the map
+	 */
+	public MapData(int numberOfRooms, String backend)
+	{
+		this(numberOfRooms, backend, null);
+	}
+
+	/**
+	 * Creates a map without items or doors, whose descriptions are kept elsewhere, such as in a compiled map file
+	 *
+	 * @param numberOfRooms The number of rooms in the map
+	 * @param backend BACKEND_HEAP or BACKEND_OFF_HEAP, for the items and doors
+	 * @param roomDescriptions The descriptions of the rooms, or null for empty descriptions in the backend
+	 */
+	MapData(int numberOfRooms, String backend, RoomDescriptions roomDescriptions)
+	{
+		this.numberOfRooms = numberOfRooms;
+		if (backend.equals(BACKEND_OFF_HEAP))
+		{
+			this.backend = BACKEND_OFF_HEAP;
+			this.roomDescriptions = (roomDescriptions != null) ? roomDescriptions : new OffHeapRoomDescriptions(numberOfRooms);
+			this.roomItems = new OffHeapRoomItems(numberOfRooms);
+		}
+		else if (backend.equals(BACKEND_HEAP))
+		{
+			this.backend = BACKEND_HEAP;
+			this.roomDescriptions = (roomDescriptions != null) ? roomDescriptions : new HeapRoomDescriptions(numberOfRooms);
+			this.roomItems = new HeapRoomItems(numberOfRooms);
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown map backend: " + backend);
+		}
+		this.sharedWorld = false;
+	}
+
+	/**
+	 * Creates a map that shares the descriptions and doors of another map
+	 *
+	 * @param sharedMap The map to share
+	 * @param roomItems The items of the new map
+	 * @param sharedWorld True if the items are changed by all games at once
+	 */
+	private MapData(MapData sharedMap, RoomItems roomItems, boolean sharedWorld)
+	{
+		this.numberOfRooms = sharedMap.numberOfRooms;
+		this.entranceRoomNumber = sharedMap.entranceRoomNumber;
+		this.exitRoomNumber = sharedMap.exitRoomNumber;
+		this.backend = sharedMap.backend;
+		this.roomDescriptions = sharedMap.roomDescriptions;
+		this.roomLayout = sharedMap.roomLayout;
+		this.roomItems = roomItems;
+		this.sharedWorld = sharedWorld;
+	}
+
+	/**
+	 * Returns a map for one game. The descriptions and doors are shared with this map,
+	 * so many games can be played on a map that is loaded once. The items are shared too,
+	 * behind an overlay that records the rooms the game changes, so that each game takes
+	 * and drops items in its own rooms and costs memory only for those rooms.
+	 * Neither the descriptions nor the items of this map must be changed while games use the copy.
+	 *
+	 * In a shared world, the items are not copied: every game takes and drops the same items.
+	 *
+	 * @return A map with the same rooms and items of its own, or the same items in a shared world
+	 */
+	public MapData copyForGame()
+	{
+		if (sharedWorld == true)
+		{
+			return new MapData(this, roomItems, true);
+		}
+		return new MapData(this, OverlayRoomItems.forGame(roomItems, numberOfRooms), false);
+	}
+
+	/**
+	 * Returns a map for a shared world, in which all games that are given copies of it
+	 * contend for the same items. The items start out like the items of this map and are kept in
+	 * ConcurrentRoomItems, so that two players never both take the same item. The descriptions
+	 * and doors are shared with this map, which must not be changed while games use the copy.
+	 *
+	 * @return A map whose copyForGame returns maps with the same items
+	 */
+	public MapData copyForSharedWorld()
+	{
+		return new MapData(this, new ConcurrentRoomItems(roomItems, numberOfRooms), true);
+	}
+
+	/**
+	 * @return True if the items of this map are shared by all games played on it
+	 */
+	public boolean isSharedWorld()
+	{
+		return sharedWorld;
+	}
+
+	/**
+	 * Returns a number that changes whenever an item of a shared world is taken or dropped, by any game.
+	 * A game can compare it with an earlier value to find out whether other players changed the items since.
+	 *
+	 * @return The item epoch of a shared world, or 0 if the items of this map belong to one game
+	 */
+	public long getSharedItemEpoch()
+	{
+		return (sharedWorld == true) ? ((ConcurrentRoomItems)roomItems).getEpoch() : 0;
+	}
+
+	/**
+	 * @return BACKEND_HEAP or BACKEND_OFF_HEAP
+	 */
+	public String getBackend()
+	{
+		return backend;
+	}
+
+	/**
+	 * @return The doors of every room
+	 */
+	public RoomLayout getRoomLayout()
+	{
+		return roomLayout;
+	}
+
+	/**
+	 * @return A builder that builds the doors of this map in the backend of this map,
+	 * so that the doors of an off-heap map are never held on the heap while it is loaded
+	 */
+	public RoomLayout.Builder newRoomLayoutBuilder()
+	{
+		return new RoomLayout.Builder(numberOfRooms, backend == BACKEND_OFF_HEAP);
+	}
+
+	/**
+	 * Replaces the doors of every room. With the off-heap backend, a layout on the heap
+	 * is copied off the heap first; layouts from newRoomLayoutBuilder are used as they are.
+	 *
+	 * @param roomLayout The new layout, with numberOfRooms rooms
+	 */
+	public void setRoomLayout(RoomLayout roomLayout)
+	{
+		this.roomLayout = (backend == BACKEND_OFF_HEAP) ? roomLayout.toOffHeap() : roomLayout;
+	}
+
+	/**
+	 * @return The items of every room
+	 */
+	public RoomItems getRoomItems()
+	{
+		return roomItems;
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return The description of the room, or null if it has none
+	 */
+	public String getRoomDescription(int roomIndex)
+	{
+		return roomDescriptions.getDescription(roomIndex);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @param description The new description of the room, or null
+	 */
+	public void setRoomDescription(int roomIndex, String description)
+	{
+		roomDescriptions.setDescription(roomIndex, description);
+	}
+
+	/**
+	 * @param roomIndexes The room numbers minus one
+	 * @param descriptions The new description of each room, or null
+	 * @param count The number of rooms to set, from the start of both arrays
+	 */
+	public void setRoomDescriptions(int[] roomIndexes, String[] descriptions, int count)
+	{
+		roomDescriptions.setDescriptions(roomIndexes, descriptions, count);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return True if a primary weapon lies in the room
+	 */
+	public boolean hasPrimaryWeapon(int roomIndex)
+	{
+		return roomItems.hasPrimaryWeapon(roomIndex);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @param present True to put a primary weapon in the room, false to take it away
+	 */
+	public void setPrimaryWeapon(int roomIndex, boolean present)
+	{
+		roomItems.setPrimaryWeapon(roomIndex, present);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return True if a secondary weapon lies in the room
+	 */
+	public boolean hasSecondaryWeapon(int roomIndex)
+	{
+		return roomItems.hasSecondaryWeapon(roomIndex);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @param present True to put a secondary weapon in the room, false to take it away
+	 */
+	public void setSecondaryWeapon(int roomIndex, boolean present)
+	{
+		roomItems.setSecondaryWeapon(roomIndex, present);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return The amount of currency lying in the room
+	 */
+	public int getCurrency(int roomIndex)
+	{
+		return roomItems.getCurrency(roomIndex);
+	}
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @param amount The new amount of currency lying in the room
+	 */
+	public void setCurrency(int roomIndex, int amount)
+	{
+		roomItems.setCurrency(roomIndex, amount);
+	}
 }
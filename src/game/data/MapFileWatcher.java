@@ -0,0 +1,346 @@
+package game.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches a map file for changes and turns each change into a MapUpdate.
+ *
+ * A hash of every room block is kept from the last version of the file. When the file
+ * changes, it is mapped into memory and scanned once to hash its room blocks, and only the blocks
+ * whose hash differs are parsed; the file is never copied to the heap. Descriptions, doors and items are therefore only created for
+ * the rooms that actually changed.
+ *
+ * Updates are queued and must be taken with pollUpdate and applied by the thread that
+ * reads the map. A file that cannot be parsed, for example because it is still being written,
+ * is ignored; the next change is compared with the last version that could be parsed.
+ */
+public final class MapFileWatcher implements Runnable
+{
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final long ABSENT = 0;
+	private static final long SETTLE_MILLIS = 100;
+
+	private final Path mapFile;
+	private final WatchService watchService;
+	private final ConcurrentLinkedQueue<MapUpdate> updates = new ConcurrentLinkedQueue<MapUpdate>();
+
+	private int numberOfRooms;
+	private int entranceRoomNumber;
+	private int exitRoomNumber;
+	private long[] roomHashes;
+	private long[] newRoomHashes;
+	private int[] blockBounds = new int[64];
+	private int scannedEntranceRoomNumber;
+	private int scannedExitRoomNumber;
+
+	/**
+	 * Creates a watcher and hashes the current version of the file, which is
+	 * expected to be the version the game was loaded from
+	 *
+	 * @param filePath The path to the map file to watch
+	 * @throws IOException if the file cannot be read or its directory cannot be watched
+	 */
+	public MapFileWatcher(String filePath) throws IOException
+	{
+		mapFile = Paths.get(filePath).toAbsolutePath();
+		readSnapshot(MappedMapReader.mapFile(mapFile.toString()));
+
+		watchService = FileSystems.getDefault().newWatchService();
+		mapFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+	}
+
+	/**
+	 * Starts watching the file on a daemon thread
+	 */
+	public void start()
+	{
+		Thread thread = new Thread(this, "map-file-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the file. Updates that are already queued can still be taken.
+	 */
+	public void close()
+	{
+		try
+		{
+			watchService.close();
+		}
+		catch (IOException ex)
+		{
+			//Nothing left to release
+		}
+	}
+
+	/**
+	 * @return The oldest update that has not been taken yet, or null if there is none
+	 */
+	public MapUpdate pollUpdate()
+	{
+		return updates.poll();
+	}
+
+	/**
+	 * Waits for changes of the map file and queues an update for each of them
+	 * until the watcher is closed
+	 */
+	@Override
+	public void run()
+	{
+		while (true)
+		{
+			boolean changed = false;
+			try
+			{
+				WatchKey key = watchService.take();
+
+				//Let an editor finish writing before the file is read
+				while (key != null)
+				{
+					changed |= isMapFileEvent(key);
+					key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				}
+			}
+			catch (ClosedWatchServiceException ex)
+			{
+				return;
+			}
+			catch (InterruptedException ex)
+			{
+				return;
+			}
+
+			if (changed == true)
+			{
+				try
+				{
+					MapUpdate update = readUpdate(MappedMapReader.mapFile(mapFile.toString()));
+					if (update != null)
+					{
+						updates.add(update);
+					}
+				}
+				catch (IOException ex)
+				{
+					//The file is being replaced, wait for the next event
+				}
+				catch (RuntimeException ex)
+				{
+					//The file is incomplete or malformed, wait for the next event
+				}
+				catch (InternalError ex)
+				{
+					//The file was truncated while it was mapped, wait for the next event
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes the events of a watch key and makes the key ready for new events
+	 *
+	 * @return True if any of the events is about the map file
+	 */
+	private boolean isMapFileEvent(WatchKey key)
+	{
+		boolean mapFileEvent = false;
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (mapFile.getFileName().equals(event.context()))
+			{
+				mapFileEvent = true;
+			}
+		}
+		key.reset();
+		return mapFileEvent;
+	}
+
+	/**
+	 * Compares a new version of the map file with the last one and makes the snapshot
+	 * of the new version current
+	 *
+	 * @param mapBytes The contents of the new version
+	 * @return The changes between the versions, or null if no room changed
+	 */
+	MapUpdate readUpdate(ByteBuffer mapBytes)
+	{
+		MapTextParser parser = new MapTextParser(mapBytes);
+		int newNumberOfRooms = parser.parseRoomCount();
+		if (newNumberOfRooms != numberOfRooms)
+		{
+			return readReplacement(mapBytes);
+		}
+
+		Arrays.fill(newRoomHashes, ABSENT);
+		int numberOfBlocks = hashRoomBlocks(parser, mapBytes, newRoomHashes, roomHashes);
+		int newEntranceRoomNumber = scannedEntranceRoomNumber;
+		int newExitRoomNumber = scannedExitRoomNumber;
+
+		MapUpdate update = new MapUpdate(numberOfRooms, newEntranceRoomNumber, newExitRoomNumber);
+		for (int b = 0; b < numberOfBlocks; b++)
+		{
+			int room = blockBounds[3 * b];
+			if (newRoomHashes[room] != roomHashes[room])
+			{
+				update.addChangedRoom(room, roomHashes[room] == ABSENT);
+			}
+		}
+		for (int room = 0; room < numberOfRooms; room++)
+		{
+			if (newRoomHashes[room] == ABSENT && roomHashes[room] != ABSENT)
+			{
+				update.addRemovedRoom(room);
+			}
+		}
+
+		int contentEnd = MapTextParser.findContentEnd(mapBytes, 0, mapBytes.limit());
+		for (int b = 0; b < numberOfBlocks; b++)
+		{
+			int room = blockBounds[3 * b];
+			if (newRoomHashes[room] != roomHashes[room])
+			{
+				MapTextParser blockParser = new MapTextParser(mapBytes, blockBounds[3 * b + 1], blockBounds[3 * b + 2], contentEnd);
+				blockParser.parseRoomBlocks(update.getRoomSink(), update.getRoomLayout());
+			}
+		}
+
+		long[] oldRoomHashes = roomHashes;
+		roomHashes = newRoomHashes;
+		newRoomHashes = oldRoomHashes;
+
+		if (update.getNumberOfChangedRooms() == 0 && newEntranceRoomNumber == entranceRoomNumber && newExitRoomNumber == exitRoomNumber)
+		{
+			return null;
+		}
+		entranceRoomNumber = newEntranceRoomNumber;
+		exitRoomNumber = newExitRoomNumber;
+		return update;
+	}
+
+	/**
+	 * Reads the whole of a new version with a different number of rooms
+	 *
+	 * @param mapBytes The contents of the new version
+	 * @return An update that replaces the map, keeping the items of rooms that exist in both versions
+	 */
+	private MapUpdate readReplacement(ByteBuffer mapBytes)
+	{
+		MapData replacement = MappedMapReader.readMapData(mapBytes);
+		long[] oldRoomHashes = roomHashes;
+		readSnapshot(mapBytes);
+
+		long[] keptRooms = new long[(numberOfRooms + 63) / 64];
+		for (int room = 0; room < Math.min(oldRoomHashes.length, numberOfRooms); room++)
+		{
+			if (oldRoomHashes[room] != ABSENT && roomHashes[room] != ABSENT)
+			{
+				keptRooms[room >>> 6] |= 1L << room;
+			}
+		}
+		return new MapUpdate(replacement, keptRooms);
+	}
+
+	/**
+	 * Hashes all room blocks of a version of the file and makes it the current snapshot
+	 *
+	 * @param mapBytes The contents of the file
+	 */
+	private void readSnapshot(ByteBuffer mapBytes)
+	{
+		MapTextParser parser = new MapTextParser(mapBytes);
+		numberOfRooms = parser.parseRoomCount();
+		roomHashes = new long[numberOfRooms];
+		newRoomHashes = new long[numberOfRooms];
+
+		hashRoomBlocks(parser, mapBytes, roomHashes, null);
+		entranceRoomNumber = scannedEntranceRoomNumber;
+		exitRoomNumber = scannedExitRoomNumber;
+	}
+
+	/**
+	 * Hashes the room blocks that follow the room count. The bounds of every block whose
+	 * hash differs from the previous hash of its room are recorded in blockBounds
+	 * as triples of room index, start and end, in file order.
+	 * Each room number is expected to appear in one block only; a room with several blocks
+	 * gets a hash that combines all of them, so that it is at least seen as changed. Like parseRoomBlocks,
+	 * the first block gives the entrance and the last block gives the exit.
+	 *
+	 * @param parser A parser positioned after the room count
+	 * @param mapBytes The contents of the file
+	 * @param hashes The array to write the hash of each room to, filled with ABSENT
+	 * @param previousHashes The hashes of the last version, or null to record no blocks
+	 * @return The number of recorded blocks
+	 */
+	private int hashRoomBlocks(MapTextParser parser, ByteBuffer mapBytes, long[] hashes, long[] previousHashes)
+	{
+		int numberOfBlocks = 0;
+		int firstRoomNumber = 0;
+		int lastRoomIndex = -1;
+		int roomNumber;
+		while ((roomNumber = parser.skipRoomBlock()) != -1)
+		{
+			int room = roomNumber - 1;
+			if (room < 0 || room >= hashes.length)
+			{
+				throw new ArrayIndexOutOfBoundsException("Room number out of range: " + roomNumber);
+			}
+			if (lastRoomIndex == -1)
+			{
+				firstRoomNumber = roomNumber;
+			}
+			lastRoomIndex = room;
+
+			long blockHash = hashBytes(mapBytes, parser.getBlockStart(), parser.getPosition());
+			hashes[room] = (hashes[room] == ABSENT) ? blockHash : hashes[room] * FNV_PRIME ^ blockHash;
+			if (hashes[room] == ABSENT)
+			{
+				hashes[room] = 1;
+			}
+
+			if (previousHashes != null && blockHash != previousHashes[room])
+			{
+				if (3 * numberOfBlocks + 3 > blockBounds.length)
+				{
+					blockBounds = Arrays.copyOf(blockBounds, blockBounds.length * 2);
+				}
+				blockBounds[3 * numberOfBlocks] = room;
+				blockBounds[3 * numberOfBlocks + 1] = parser.getBlockStart();
+				blockBounds[3 * numberOfBlocks + 2] = parser.getPosition();
+				numberOfBlocks++;
+			}
+		}
+
+		scannedEntranceRoomNumber = firstRoomNumber;
+		scannedExitRoomNumber = lastRoomIndex + 1;
+		return numberOfBlocks;
+	}
+
+	/**
+	 * @return The 64-bit FNV-1a hash of the specified bytes, never ABSENT
+	 */
+	private static long hashBytes(ByteBuffer mapBytes, int start, int end)
+	{
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = start; i < end; i++)
+		{
+			hash ^= mapBytes.get(i) & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return (hash == ABSENT) ? 1 : hash;
+	}
+}
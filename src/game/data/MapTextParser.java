@@ -0,0 +1,621 @@
+package game.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A cursor over the bytes of a map file. Mirrors the line-by-line
+ * behaviour of the Scanner used in DataTransfer.readMapData, including
+ * the fact that the last non-blank line of a file is only ever read
+ * as the value of a preceding tag.
+ */
+final class MapTextParser
+{
+	private static final byte[] ITEMS_TAG = DataTransfer.ITEMS_TAG.getBytes(MappedMapReader.MAP_CHARSET);
+	private static final byte[] CONNECT_TAG = DataTransfer.CONNECT_TAG.getBytes(MappedMapReader.MAP_CHARSET);
+	private static final byte[] DESCRIPTION_TAG = DataTransfer.DESCRIPTION_TAG.getBytes(MappedMapReader.MAP_CHARSET);
+
+	private static final byte TOKEN_DELIMITER = (byte)DataTransfer.TOKEN_DELIMITER.charAt(0);
+	private static final byte[] CURRENCY = DataTransfer.CURRENCY.getBytes(MappedMapReader.MAP_CHARSET);
+	private static final byte[] PRIMARY_WEAPON = DataTransfer.PRIMARY_WEAPON.getBytes(MappedMapReader.MAP_CHARSET);
+	private static final byte[] SECONDARY_WEAPON = DataTransfer.SECONDARY_WEAPON.getBytes(MappedMapReader.MAP_CHARSET);
+
+	private final ByteBuffer bytes;
+	private final int limit;
+	private final int contentEnd;
+	private int position;
+
+	private int lineStart;
+	private int lineEnd;
+
+	private int firstRoomNumber;
+	private int lastRoomIndex = -1;
+	private RoomLayout.Builder roomLayout;
+	private int blockStart;
+
+	private byte[] descriptionBuffer = new byte[256];
+
+	/**
+	 * Creates a parser over the whole of the specified buffer
+	 *
+	 * @param bytes The contents of a map file
+	 */
+	MapTextParser(ByteBuffer bytes)
+	{
+		this(bytes, 0, bytes.limit(), findContentEnd(bytes, 0, bytes.limit()));
+	}
+
+	/**
+	 * Creates a parser over a region of the specified buffer. The region must
+	 * start at the beginning of a line.
+	 *
+	 * @param bytes The contents of a map file
+	 * @param start The offset of the first byte to parse
+	 * @param end The offset after the last byte to parse
+	 * @param contentEnd The offset after the last non-whitespace byte of the whole file
+	 */
+	MapTextParser(ByteBuffer bytes, int start, int end, int contentEnd)
+	{
+		this.bytes = bytes;
+		this.position = start;
+		this.limit = end;
+		this.contentEnd = contentEnd;
+	}
+
+	/**
+	 * Reads the first line of the file, which holds the number of rooms
+	 *
+	 * @return The number of rooms declared by the file
+	 */
+	int parseRoomCount()
+	{
+		nextLine();
+		return parseInt(lineStart, lineEnd);
+	}
+
+	/**
+	 * @return The offset of the next byte to parse
+	 */
+	int getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * @return The number of the first room block read by parseRoomBlocks
+	 */
+	int getFirstRoomNumber()
+	{
+		return firstRoomNumber;
+	}
+
+	/**
+	 * @return The index of the last room block read by parseRoomBlocks, or -1 if there was none
+	 */
+	int getLastRoomIndex()
+	{
+		return lastRoomIndex;
+	}
+
+	/**
+	 * @return The layout builder passed to parseRoomBlocks
+	 */
+	RoomLayout.Builder getRoomLayout()
+	{
+		return roomLayout;
+	}
+
+	/**
+	 * Reads room blocks up to the end of the region and stores their
+	 * descriptions and items in the specified MapData object and their doors in the
+	 * specified layout builder. The numbers of the first and the last room block are recorded,
+	 * they are the entrance and the exit when the whole file is parsed.
+	 *
+	 * @param gameData The MapData object to fill
+	 * @param roomLayout The builder of the room layout
+	 */
+	void parseRoomBlocks(final MapData gameData, RoomLayout.Builder roomLayout)
+	{
+		parseRoomBlocks(new RoomSink()
+		{
+			@Override
+			public void setDescription(int roomIndex, String description)
+			{
+				gameData.setRoomDescription(roomIndex, description);
+			}
+
+			@Override
+			public void setItems(int roomIndex, boolean primaryWeapon, boolean secondaryWeapon, boolean currency)
+			{
+				gameData.setPrimaryWeapon(roomIndex, primaryWeapon);
+				gameData.setSecondaryWeapon(roomIndex, secondaryWeapon);
+				gameData.setCurrency(roomIndex, (currency == true) ? DataTransfer.generateRoomCurrency() : 0);
+			}
+		}, roomLayout);
+	}
+
+	/**
+	 * Reads room blocks up to the end of the region and passes their
+	 * descriptions and items to the specified sink and their doors to the
+	 * specified layout builder.
+	 *
+	 * @param rooms The receiver of descriptions and items
+	 * @param roomLayout The builder of the room layout
+	 */
+	void parseRoomBlocks(RoomSink rooms, RoomLayout.Builder roomLayout)
+	{
+		this.roomLayout = roomLayout;
+		int roomIndex = -1;
+
+		while (position < limit && position < contentEnd)
+		{
+			nextLine();
+			if (position >= contentEnd)
+			{
+				break;
+			}
+
+			int dataStart = trimStart(lineStart, lineEnd);
+			int dataEnd = trimEnd(dataStart, lineEnd);
+
+			if (equalsIgnoreCase(dataStart, dataEnd, ITEMS_TAG))
+			{
+				nextLine();
+				rooms.setItems(roomIndex, isItemPresent(lineStart, lineEnd, PRIMARY_WEAPON),
+						isItemPresent(lineStart, lineEnd, SECONDARY_WEAPON), isItemPresent(lineStart, lineEnd, CURRENCY));
+			}
+			else if (equalsIgnoreCase(dataStart, dataEnd, CONNECT_TAG))
+			{
+				nextLine();
+				parseRoomConnections(roomLayout, roomIndex, lineStart, lineEnd);
+			}
+			else if (equalsIgnoreCase(dataStart, dataEnd, DESCRIPTION_TAG))
+			{
+				nextLine();
+				rooms.setDescription(roomIndex, decodeLine(lineStart, lineEnd));
+			}
+			else
+			{
+				int roomNumber = parseInt(dataStart, dataEnd);
+				if (roomIndex == -1)
+				{
+					firstRoomNumber = roomNumber;
+				}
+				roomIndex = roomNumber - 1;
+			}
+		}
+		lastRoomIndex = roomIndex;
+	}
+
+	/**
+	 * Moves the cursor over the next room block without storing anything.
+	 * Lines before the first room number are skipped. Afterwards, the block occupies
+	 * the bytes from getBlockStart() to getPosition().
+	 *
+	 * @return The room number of the block, or -1 if there are no more room blocks
+	 */
+	int skipRoomBlock()
+	{
+		int roomNumber = -1;
+		boolean expectValue = false;
+		while (position < limit)
+		{
+			int start = position;
+			nextLine();
+			if (expectValue == true)
+			{
+				expectValue = false;
+				continue;
+			}
+
+			int valueStart = trimStart(lineStart, lineEnd);
+			int valueEnd = trimEnd(valueStart, lineEnd);
+			if (isTag(valueStart, valueEnd))
+			{
+				expectValue = true;
+			}
+			else if (isNumber(valueStart, valueEnd))
+			{
+				if (roomNumber != -1)
+				{
+					position = start;
+					break;
+				}
+				blockStart = start;
+				roomNumber = parseInt(valueStart, valueEnd);
+			}
+		}
+		return roomNumber;
+	}
+
+	/**
+	 * @return The offset of the first byte of the block read by the last call to skipRoomBlock
+	 */
+	int getBlockStart()
+	{
+		return blockStart;
+	}
+
+	/**
+	 * Finds the first room block that starts at or after the specified offset.
+	 * A line starts a room block if it holds a room number and is not the value of a tag.
+	 * A tag-like line may itself be the value of a tag, so the run of tag-like lines
+	 * before a number decides: the number is a tag value only if the run has odd length.
+	 *
+	 * @param from The offset to start searching from
+	 * @param end The offset after the last byte to search
+	 * @return The offset of the first line of the room block, or end if there is none
+	 */
+	int findRoomBlockStart(int from, int end)
+	{
+		int start = from;
+		if (start > 0 && isLineTerminator(bytes.get(start - 1)) == false)
+		{
+			start = skipLine(start, end);
+		}
+
+		while (start < end)
+		{
+			int next = skipLine(start, end);
+			int valueStart = trimStart(start, next);
+			int valueEnd = trimEnd(valueStart, next);
+			if (isNumber(valueStart, valueEnd) && countTagLinesBefore(start) % 2 == 0)
+			{
+				return start;
+			}
+			start = next;
+		}
+		return end;
+	}
+
+	/**
+	 * Counts the tag-like lines immediately before the line starting at the specified offset
+	 */
+	private int countTagLinesBefore(int lineStart)
+	{
+		int count = 0;
+		int end = lineStart;
+		while (end > 0)
+		{
+			end--;
+			if (end > 0 && bytes.get(end) == '\n' && bytes.get(end - 1) == '\r')
+			{
+				end--;
+			}
+
+			int start = end;
+			while (start > 0 && isLineTerminator(bytes.get(start - 1)) == false)
+			{
+				start--;
+			}
+
+			int valueStart = trimStart(start, end);
+			int valueEnd = trimEnd(valueStart, end);
+			if (isTag(valueStart, valueEnd) == false)
+			{
+				break;
+			}
+			count++;
+			end = start;
+		}
+		return count;
+	}
+
+	/**
+	 * @return True if the region holds one of the recognised tags
+	 */
+	private boolean isTag(int start, int end)
+	{
+		return equalsIgnoreCase(start, end, ITEMS_TAG) || equalsIgnoreCase(start, end, CONNECT_TAG)
+				|| equalsIgnoreCase(start, end, DESCRIPTION_TAG);
+	}
+
+	/**
+	 * @return The offset of the line after the one containing the specified offset
+	 */
+	private int skipLine(int offset, int end)
+	{
+		while (offset < end)
+		{
+			byte b = bytes.get(offset++);
+			if (b == '\n')
+			{
+				break;
+			}
+			if (b == '\r')
+			{
+				if (offset < end && bytes.get(offset) == '\n')
+				{
+					offset++;
+				}
+				break;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * @return True if the region holds an optionally signed, non-empty sequence of digits
+	 */
+	private boolean isNumber(int start, int end)
+	{
+		if (start < end && (bytes.get(start) == '-' || bytes.get(start) == '+'))
+		{
+			start++;
+		}
+		if (start >= end)
+		{
+			return false;
+		}
+		for (int i = start; i < end; i++)
+		{
+			if (bytes.get(i) < '0' || bytes.get(i) > '9')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Advances the cursor past the next line, recording the bounds of
+	 * that line without its terminator.
+	 */
+	private void nextLine()
+	{
+		lineStart = position;
+		int i = position;
+		while (i < limit)
+		{
+			byte b = bytes.get(i);
+			if (b == '\n')
+			{
+				lineEnd = i;
+				position = i + 1;
+				return;
+			}
+			if (b == '\r')
+			{
+				lineEnd = i;
+				position = (i + 1 < limit && bytes.get(i + 1) == '\n') ? i + 2 : i + 1;
+				return;
+			}
+			i++;
+		}
+		lineEnd = limit;
+		position = limit;
+	}
+
+	/**
+	 * Parses a comma separated list of room numbers and adds them as doors
+	 * of the specified room. As with String.split, trailing empty tokens are ignored.
+	 *
+	 * @param roomLayout The builder of the room layout
+	 * @param roomIndex The room to add doors to
+	 * @param start The offset of the first byte of the list
+	 * @param end The offset after the last byte of the list
+	 */
+	private void parseRoomConnections(RoomLayout.Builder roomLayout, int roomIndex, int start, int end)
+	{
+		int tokenEnd = end;
+		while (tokenEnd > start && bytes.get(tokenEnd - 1) == TOKEN_DELIMITER)
+		{
+			tokenEnd--;
+		}
+
+		roomLayout.beginRoom(roomIndex);
+		int tokenStart = start;
+		do
+		{
+			int i = tokenStart;
+			while (i < tokenEnd && bytes.get(i) != TOKEN_DELIMITER)
+			{
+				i++;
+			}
+			roomLayout.addDoor(parseInt(tokenStart, i));
+			tokenStart = i + 1;
+		}
+		while (tokenStart < tokenEnd);
+	}
+
+	/**
+	 * Checks whether the item is present in the comma separated list of items
+	 *
+	 * @param start The offset of the first byte of the list
+	 * @param end The offset after the last byte of the list
+	 * @param certainItem The item to search for, in lower case
+	 * @return True if the item is present in the list
+	 */
+	private boolean isItemPresent(int start, int end, byte[] certainItem)
+	{
+		int tokenStart = start;
+		for (int i = start; i <= end; i++)
+		{
+			if (i == end || bytes.get(i) == TOKEN_DELIMITER)
+			{
+				if (equalsIgnoreCase(tokenStart, i, certainItem))
+				{
+					return true;
+				}
+				tokenStart = i + 1;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compares a region of the buffer with an ASCII token, ignoring case
+	 *
+	 * @param start The offset of the first byte of the region
+	 * @param end The offset after the last byte of the region
+	 * @param token The token in lower case
+	 * @return True if the region holds the token
+	 */
+	private boolean equalsIgnoreCase(int start, int end, byte[] token)
+	{
+		if (end - start != token.length)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < token.length; i++)
+		{
+			int b = bytes.get(start + i);
+			if (b >= 'A' && b <= 'Z')
+			{
+				b += 'a' - 'A';
+			}
+			if (b != token[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a signed decimal integer with the same rules as Integer.parseInt
+	 *
+	 * @param start The offset of the first byte of the number
+	 * @param end The offset after the last byte of the number
+	 * @return The parsed integer
+	 * @throws NumberFormatException if the region does not hold a valid integer
+	 */
+	private int parseInt(int start, int end)
+	{
+		if (start >= end)
+		{
+			throw new NumberFormatException("For input string: \"" + decodeLine(start, end) + "\"");
+		}
+
+		boolean negative = false;
+		int i = start;
+		byte first = bytes.get(i);
+		if (first == '-' || first == '+')
+		{
+			negative = (first == '-');
+			i++;
+			if (i == end)
+			{
+				throw new NumberFormatException("For input string: \"" + decodeLine(start, end) + "\"");
+			}
+		}
+
+		long value = 0;
+		for (; i < end; i++)
+		{
+			int digit = bytes.get(i) - '0';
+			if (digit < 0 || digit > 9)
+			{
+				throw new NumberFormatException("For input string: \"" + decodeLine(start, end) + "\"");
+			}
+			value = value * 10 + digit;
+			if (value > (long)Integer.MAX_VALUE + 1)
+			{
+				throw new NumberFormatException("For input string: \"" + decodeLine(start, end) + "\"");
+			}
+		}
+
+		if (negative)
+		{
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE)
+		{
+			throw new NumberFormatException("For input string: \"" + decodeLine(start, end) + "\"");
+		}
+		return (int)value;
+	}
+
+	/**
+	 * Decodes a region of the buffer into a string
+	 *
+	 * @param start The offset of the first byte of the region
+	 * @param end The offset after the last byte of the region
+	 * @return The decoded string
+	 */
+	private String decodeLine(int start, int end)
+	{
+		int length = end - start;
+		if (descriptionBuffer.length < length)
+		{
+			descriptionBuffer = new byte[Math.max(length, descriptionBuffer.length * 2)];
+		}
+		for (int i = 0; i < length; i++)
+		{
+			descriptionBuffer[i] = bytes.get(start + i);
+		}
+		return new String(descriptionBuffer, 0, length, MappedMapReader.MAP_CHARSET);
+	}
+
+	/**
+	 * @return The offset of the first byte that is not whitespace or control character,
+	 * in the same way as String.trim
+	 */
+	private int trimStart(int start, int end)
+	{
+		while (start < end && (bytes.get(start) & 0xFF) <= ' ')
+		{
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * @return The offset after the last byte that is not whitespace or control character,
+	 * in the same way as String.trim
+	 */
+	private int trimEnd(int start, int end)
+	{
+		while (end > start && (bytes.get(end - 1) & 0xFF) <= ' ')
+		{
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Finds the offset after the last byte that is not whitespace. Any line starting
+	 * at or after this offset would not be seen by Scanner.hasNext().
+	 *
+	 * @param bytes The contents of a map file
+	 * @param start The offset of the first byte of the region
+	 * @param end The offset after the last byte of the region
+	 * @return The offset after the last non-whitespace byte, or start if there is none
+	 */
+	static int findContentEnd(ByteBuffer bytes, int start, int end)
+	{
+		while (end > start && isWhitespace(bytes.get(end - 1)))
+		{
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * @param b A byte of the map file
+	 * @return True if the byte is an ASCII whitespace character, as recognised by Scanner
+	 */
+	private static boolean isWhitespace(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B || (b >= 0x1C && b <= 0x1F);
+	}
+
+	/**
+	 * @param b A byte of the map file
+	 * @return True if the byte ends a line
+	 */
+	private static boolean isLineTerminator(byte b)
+	{
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Receives the descriptions and items of room blocks as they are parsed
+	 */
+	interface RoomSink
+	{
+		void setDescription(int roomIndex, String description);
+
+		void setItems(int roomIndex, boolean primaryWeapon, boolean secondaryWeapon, boolean currency);
+	}
+}
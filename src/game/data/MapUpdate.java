@@ -0,0 +1,205 @@
+package game.data;
+
+import java.util.Arrays;
+
+/**
+ * A set of changes to a live MapData object, produced by MapFileWatcher
+ * when the map file changes. Only the room blocks that changed are carried.
+ *
+ * Rooms that still exist keep their items and currency, so whatever the player
+ * has picked up or dropped survives a reload. New rooms get the items from the file,
+ * and rooms that were removed from the file lose their description, doors and items.
+ *
+ * An update must be applied on the thread that reads the map, between commands,
+ * so that no reader can see a room that is half updated.
+ */
+public final class MapUpdate
+{
+	private final int entranceRoomNumber;
+	private final int exitRoomNumber;
+
+	private final MapData replacement;
+	private final long[] keptRooms;
+
+	private int[] changedRooms = new int[8];
+	private String[] descriptions = new String[8];
+	private int[] newRoomItems = new int[8];
+	private int numberOfChangedRooms;
+	private final RoomLayout.Builder roomLayout;
+
+	private static final int ROOM_IS_NEW = 1;
+	private static final int PRIMARY_WEAPON = 2;
+	private static final int SECONDARY_WEAPON = 4;
+	private static final int CURRENCY = 8;
+
+	/**
+	 * Creates an update that changes individual rooms
+	 *
+	 * @param numberOfRooms The number of rooms, which is the same before and after the update
+	 * @param entranceRoomNumber The entrance after the update
+	 * @param exitRoomNumber The exit after the update
+	 */
+	MapUpdate(int numberOfRooms, int entranceRoomNumber, int exitRoomNumber)
+	{
+		this.entranceRoomNumber = entranceRoomNumber;
+		this.exitRoomNumber = exitRoomNumber;
+		this.replacement = null;
+		this.keptRooms = null;
+		this.roomLayout = new RoomLayout.Builder(numberOfRooms);
+	}
+
+	/**
+	 * Creates an update that replaces the whole map, used when the number of rooms changes
+	 *
+	 * @param replacement The newly read map
+	 * @param keptRooms A bitmap of the rooms that exist both before and after the update
+	 */
+	MapUpdate(MapData replacement, long[] keptRooms)
+	{
+		this.entranceRoomNumber = replacement.entranceRoomNumber;
+		this.exitRoomNumber = replacement.exitRoomNumber;
+		this.replacement = replacement;
+		this.keptRooms = keptRooms;
+		this.roomLayout = null;
+	}
+
+	/**
+	 * @return The receiver of parsed room blocks; each block that is passed to it
+	 * is recorded as a changed room
+	 */
+	MapTextParser.RoomSink getRoomSink()
+	{
+		return new MapTextParser.RoomSink()
+		{
+			@Override
+			public void setDescription(int roomIndex, String description)
+			{
+				descriptions[findChangedRoom(roomIndex)] = description;
+			}
+
+			@Override
+			public void setItems(int roomIndex, boolean primaryWeapon, boolean secondaryWeapon, boolean currency)
+			{
+				int change = findChangedRoom(roomIndex);
+				newRoomItems[change] = (newRoomItems[change] & ROOM_IS_NEW) | (primaryWeapon ? PRIMARY_WEAPON : 0)
+						| (secondaryWeapon ? SECONDARY_WEAPON : 0) | (currency ? CURRENCY : 0);
+			}
+		};
+	}
+
+	/**
+	 * @return The builder that collects the doors of changed rooms
+	 */
+	RoomLayout.Builder getRoomLayout()
+	{
+		return roomLayout;
+	}
+
+	/**
+	 * Records a room as changed before its block is parsed
+	 *
+	 * @param roomIndex The room number minus one
+	 * @param isNew True if the room did not exist before the update
+	 */
+	void addChangedRoom(int roomIndex, boolean isNew)
+	{
+		int change = findChangedRoom(roomIndex);
+		newRoomItems[change] = (isNew == true) ? ROOM_IS_NEW : 0;
+		descriptions[change] = null;
+		roomLayout.beginRoom(roomIndex);
+	}
+
+	/**
+	 * Records a room as removed from the map file
+	 *
+	 * @param roomIndex The room number minus one
+	 */
+	void addRemovedRoom(int roomIndex)
+	{
+		addChangedRoom(roomIndex, true);
+	}
+
+	/**
+	 * @return The number of rooms that are changed, added or removed by this update
+	 */
+	public int getNumberOfChangedRooms()
+	{
+		return (replacement != null) ? replacement.numberOfRooms : numberOfChangedRooms;
+	}
+
+	/**
+	 * @return True if this update changes any doors, which invalidates anything computed from the layout
+	 */
+	public boolean changesLayout()
+	{
+		return replacement != null || roomLayout.isEmpty() == false;
+	}
+
+	/**
+	 * Applies this update to a map
+	 *
+	 * @param mapData The map that was current when the update was produced
+	 * @return The map to use from now on, which is either mapData itself or a replacement
+	 * holding the items of all kept rooms
+	 */
+	public MapData applyTo(MapData mapData)
+	{
+		if (replacement != null)
+		{
+			int commonRooms = Math.min(mapData.numberOfRooms, replacement.numberOfRooms);
+			for (int i = 0; i < commonRooms; i++)
+			{
+				if ((keptRooms[i >>> 6] & (1L << i)) != 0)
+				{
+					replacement.setPrimaryWeapon(i, mapData.hasPrimaryWeapon(i));
+					replacement.setSecondaryWeapon(i, mapData.hasSecondaryWeapon(i));
+					replacement.setCurrency(i, mapData.getCurrency(i));
+				}
+			}
+			return replacement;
+		}
+
+		mapData.setRoomDescriptions(changedRooms, descriptions, numberOfChangedRooms);
+		for (int change = 0; change < numberOfChangedRooms; change++)
+		{
+			int room = changedRooms[change];
+			if ((newRoomItems[change] & ROOM_IS_NEW) != 0)
+			{
+				mapData.setPrimaryWeapon(room, (newRoomItems[change] & PRIMARY_WEAPON) != 0);
+				mapData.setSecondaryWeapon(room, (newRoomItems[change] & SECONDARY_WEAPON) != 0);
+				mapData.setCurrency(room, ((newRoomItems[change] & CURRENCY) != 0) ? DataTransfer.generateRoomCurrency() : 0);
+			}
+		}
+		if (roomLayout.isEmpty() == false)
+		{
+			mapData.setRoomLayout(roomLayout.buildOnto(mapData.getRoomLayout()));
+		}
+		mapData.entranceRoomNumber = entranceRoomNumber;
+		mapData.exitRoomNumber = exitRoomNumber;
+
+		return mapData;
+	}
+
+	/**
+	 * @return The position of the room in the list of changed rooms, adding it if necessary
+	 */
+	private int findChangedRoom(int roomIndex)
+	{
+		for (int change = numberOfChangedRooms - 1; change >= 0; change--)
+		{
+			if (changedRooms[change] == roomIndex)
+			{
+				return change;
+			}
+		}
+
+		if (numberOfChangedRooms == changedRooms.length)
+		{
+			changedRooms = Arrays.copyOf(changedRooms, numberOfChangedRooms * 2);
+			descriptions = Arrays.copyOf(descriptions, numberOfChangedRooms * 2);
+			newRoomItems = Arrays.copyOf(newRoomItems, numberOfChangedRooms * 2);
+		}
+		changedRooms[numberOfChangedRooms] = roomIndex;
+		return numberOfChangedRooms++;
+	}
+}
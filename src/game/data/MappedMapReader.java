@@ -0,0 +1,87 @@
+package game.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * This class reads game data from a memory-mapped map file.
+ * It understands the same format as DataTransfer.readMapData, but parses
+ * tags, room numbers, connections and items straight from the mapped bytes,
+ * so the only strings created while loading are the room descriptions.
+ * The file is expected to be in UTF-8 (or plain ASCII).
+ *
+ * @see DataTransfer#readMapData(String)
+ */
+public final class MappedMapReader
+{
+	static final Charset MAP_CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * Memory-maps the file in the specified path and instantiates a
+	 * MapData object from it. The resulting object is equivalent to the one
+	 * returned by DataTransfer.readMapData for the same file.
+	 *
+	 * @param filePath The path to a file with game data
+	 * @return The MapData object with all fields, containing game data, initialized
+	 * @throws IOException if the specified filePath path does not exist or the file cannot be mapped
+	 */
+	public static MapData readMapData(String filePath) throws IOException
+	{
+		MapData gameData = readMapData(mapFile(filePath));
+		System.out.println("Initialising game map -- number of rooms: " + gameData.numberOfRooms);
+		return gameData;
+	}
+
+	/**
+	 * Instantiates a MapData object from the contents of a map file
+	 *
+	 * @param mapBytes The contents of a map file
+	 * @return The MapData object with all fields, containing game data, initialized
+	 */
+	static MapData readMapData(ByteBuffer mapBytes)
+	{
+		MapTextParser parser = new MapTextParser(mapBytes);
+
+		MapData gameData = new MapData(parser.parseRoomCount());
+
+		RoomLayout.Builder roomLayout = gameData.newRoomLayoutBuilder();
+		parser.parseRoomBlocks(gameData, roomLayout);
+		gameData.setRoomLayout(roomLayout.build());
+		gameData.entranceRoomNumber = parser.getFirstRoomNumber();
+		gameData.exitRoomNumber = parser.getLastRoomIndex() + 1;
+
+		return gameData;
+	}
+
+	/**
+	 * Maps the whole file in the specified path into memory as a read-only buffer.
+	 * The mapping stays valid after the underlying channel is closed.
+	 *
+	 * @param filePath The path to the file to map
+	 * @return A read-only buffer with the contents of the file
+	 * @throws IOException if the specified filePath path does not exist, the file
+	 * is too large to be mapped or cannot be read
+	 */
+	static ByteBuffer mapFile(String filePath) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(new File(filePath), "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Map file \'" + filePath + "\' is too large to be mapped: " + channel.size() + " bytes");
+			}
+
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package game.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Room descriptions read straight from the string table of a compiled map file, which stays
+ * mapped into memory. Loading costs nothing per room: a String is only created when a description
+ * is read, from the UTF-8 bytes in the file.
+ *
+ * Descriptions that are set later, by map updates, are kept in a small table in front of the file:
+ * an IntIntMap from room to slot and an array with the description in each slot. The table is
+ * copied and replaced as a whole once per call, so readers on other threads never see it half changed,
+ * and a map update that sets many rooms copies it only once.
+ */
+final class MappedRoomDescriptions implements RoomDescriptions
+{
+	private static final int NOT_REPLACED = -1;
+
+	/**
+	 * The descriptions that replace those in the file, never changed once published
+	 */
+	private static final class Replacements
+	{
+		final IntIntMap slots;
+		final String[] descriptions;
+
+		/**
+		 * @param slots The slot of each replaced room in descriptions
+		 * @param descriptions The replaced descriptions
+		 */
+		Replacements(IntIntMap slots, String[] descriptions)
+		{
+			this.slots = slots;
+			this.descriptions = descriptions;
+		}
+	}
+
+	private final ByteBuffer mapBytes;
+	private final int numberOfRooms;
+	private final int presentPosition;
+	private final int offsetsPosition;
+	private final int tablePosition;
+
+	private volatile Replacements replacements = new Replacements(new IntIntMap(), new String[0]);
+
+	/**
+	 * @param mapBytes The contents of a compiled map file
+	 * @param numberOfRooms The number of rooms in the map
+	 * @param presentPosition The position of the bitmap of rooms with a description
+	 * @param offsetsPosition The position of the string offsets
+	 * @param tablePosition The position of the string table
+	 */
+	MappedRoomDescriptions(ByteBuffer mapBytes, int numberOfRooms, int presentPosition, int offsetsPosition, int tablePosition)
+	{
+		this.mapBytes = mapBytes.duplicate();
+		this.numberOfRooms = numberOfRooms;
+		this.presentPosition = presentPosition;
+		this.offsetsPosition = offsetsPosition;
+		this.tablePosition = tablePosition;
+	}
+
+	@Override
+	public String getDescription(int roomIndex)
+	{
+		checkRoomIndex(roomIndex);
+		Replacements replaced = replacements;
+		if (replaced.slots.size() != 0)
+		{
+			int slot = replaced.slots.get(roomIndex, NOT_REPLACED);
+			if (slot != NOT_REPLACED)
+			{
+				return replaced.descriptions[slot];
+			}
+		}
+
+		if ((mapBytes.getLong(presentPosition + (roomIndex >>> 6) * 8) & (1L << roomIndex)) == 0)
+		{
+			return null;
+		}
+		int start = mapBytes.getInt(offsetsPosition + roomIndex * 4);
+		int end = mapBytes.getInt(offsetsPosition + (roomIndex + 1) * 4);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer description = mapBytes.duplicate();
+		description.position(tablePosition + start);
+		description.get(bytes);
+		return new String(bytes, MappedMapReader.MAP_CHARSET);
+	}
+
+	@Override
+	public void setDescription(int roomIndex, String description)
+	{
+		setDescriptions(new int[] { roomIndex }, new String[] { description }, 1);
+	}
+
+	@Override
+	public synchronized void setDescriptions(int[] roomIndexes, String[] descriptions, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			checkRoomIndex(roomIndexes[i]);
+		}
+
+		Replacements replaced = replacements;
+		IntIntMap slots = new IntIntMap(replaced.slots);
+		String[] newDescriptions = Arrays.copyOf(replaced.descriptions, slots.size() + count);
+		for (int i = 0; i < count; i++)
+		{
+			int slot = slots.get(roomIndexes[i], NOT_REPLACED);
+			if (slot == NOT_REPLACED)
+			{
+				slot = slots.size();
+				slots.put(roomIndexes[i], slot);
+			}
+			newDescriptions[slot] = descriptions[i];
+		}
+		replacements = new Replacements(slots, newDescriptions);
+	}
+
+	/**
+	 * @throws ArrayIndexOutOfBoundsException if the room does not exist
+	 */
+	private void checkRoomIndex(int roomIndex)
+	{
+		if (roomIndex < 0 || roomIndex >= numberOfRooms)
+		{
+			throw new ArrayIndexOutOfBoundsException(roomIndex);
+		}
+	}
+}
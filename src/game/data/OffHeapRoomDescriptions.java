@@ -0,0 +1,107 @@
+package game.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Room descriptions kept outside the Java heap. The UTF-8 bytes of all descriptions
+ * are appended to an arena of direct buffers, and each room has a fixed size entry
+ * of ROOM_SIZE bytes in one more direct buffer:
+ * <pre>
+ * offset 0  long  position in the arena: chunk index in the high 32 bits, offset in the low 32 bits
+ * offset 8  int   length in bytes, or NO_DESCRIPTION
+ * </pre>
+ * A String is only created when a description is read. Replacing a description
+ * appends the new bytes; the old ones stay in the arena until the map is discarded.
+ */
+final class OffHeapRoomDescriptions implements RoomDescriptions
+{
+	static final int ROOM_SIZE = 16;
+	private static final int POSITION_OFFSET = 0;
+	private static final int LENGTH_OFFSET = 8;
+	private static final int NO_DESCRIPTION = -1;
+
+	private static final int CHUNK_SIZE = 16 << 20;
+
+	private final ByteBuffer rooms;
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+	/**
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	OffHeapRoomDescriptions(int numberOfRooms)
+	{
+		if (numberOfRooms > Integer.MAX_VALUE / ROOM_SIZE)
+		{
+			throw new IllegalArgumentException("Too many rooms for off-heap storage: " + numberOfRooms);
+		}
+		rooms = ByteBuffer.allocateDirect(numberOfRooms * ROOM_SIZE).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			rooms.putInt(i * ROOM_SIZE + LENGTH_OFFSET, NO_DESCRIPTION);
+		}
+	}
+
+	@Override
+	public String getDescription(int roomIndex)
+	{
+		int length = rooms.getInt(roomIndex * ROOM_SIZE + LENGTH_OFFSET);
+		if (length == NO_DESCRIPTION)
+		{
+			return null;
+		}
+
+		long position = rooms.getLong(roomIndex * ROOM_SIZE + POSITION_OFFSET);
+		ByteBuffer chunk = chunks[(int)(position >>> 32)].duplicate();
+		chunk.position((int)position);
+		byte[] bytes = new byte[length];
+		chunk.get(bytes);
+		return new String(bytes, MappedMapReader.MAP_CHARSET);
+	}
+
+	@Override
+	public void setDescription(int roomIndex, String description)
+	{
+		if (description == null)
+		{
+			rooms.putInt(roomIndex * ROOM_SIZE + LENGTH_OFFSET, NO_DESCRIPTION);
+			return;
+		}
+
+		byte[] bytes = description.getBytes(MappedMapReader.MAP_CHARSET);
+		rooms.putLong(roomIndex * ROOM_SIZE + POSITION_OFFSET, append(bytes));
+		rooms.putInt(roomIndex * ROOM_SIZE + LENGTH_OFFSET, bytes.length);
+	}
+
+	@Override
+	public void setDescriptions(int[] roomIndexes, String[] descriptions, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			setDescription(roomIndexes[i], descriptions[i]);
+		}
+	}
+
+	/**
+	 * Copies bytes to the end of the arena, starting a new chunk if they do not fit in the last one
+	 *
+	 * @return The position of the copied bytes
+	 */
+	private synchronized long append(byte[] bytes)
+	{
+		ByteBuffer[] arena = chunks;
+		ByteBuffer last = (arena.length > 0) ? arena[arena.length - 1] : null;
+		if (last == null || last.remaining() < bytes.length)
+		{
+			last = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, bytes.length));
+			arena = Arrays.copyOf(arena, arena.length + 1);
+			arena[arena.length - 1] = last;
+			chunks = arena;
+		}
+
+		long position = ((long)(arena.length - 1) << 32) | last.position();
+		last.put(bytes);
+		return position;
+	}
+}
@@ -0,0 +1,107 @@
+package game.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Room items kept outside the Java heap, in one direct buffer with a fixed
+ * layout of ROOM_SIZE bytes per room:
+ * <pre>
+ * offset 0  int  currency
+ * offset 4  int  flags: PRIMARY_WEAPON | SECONDARY_WEAPON, and the version in the bits from VERSION_SHIFT up
+ * </pre>
+ * Only absolute reads and writes are used, so threads may fill different rooms at the same time.
+ */
+final class OffHeapRoomItems extends AbstractRoomItems
+{
+	static final int ROOM_SIZE = 8;
+	private static final int CURRENCY_OFFSET = 0;
+	private static final int FLAGS_OFFSET = 4;
+
+	private static final int PRIMARY_WEAPON = 1;
+	private static final int SECONDARY_WEAPON = 2;
+	private static final int VERSION_SHIFT = 2;
+
+	private final ByteBuffer rooms;
+
+	/**
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	OffHeapRoomItems(int numberOfRooms)
+	{
+		super(numberOfRooms);
+		if (numberOfRooms > Integer.MAX_VALUE / ROOM_SIZE)
+		{
+			throw new IllegalArgumentException("Too many rooms for off-heap storage: " + numberOfRooms);
+		}
+		rooms = ByteBuffer.allocateDirect(numberOfRooms * ROOM_SIZE).order(ByteOrder.nativeOrder());
+	}
+
+	@Override
+	public RoomItems copy()
+	{
+		OffHeapRoomItems copy = new OffHeapRoomItems(getNumberOfRooms());
+		copy.rooms.put(rooms.duplicate());
+		copy.rooms.clear();
+		return copy;
+	}
+
+	@Override
+	public boolean hasPrimaryWeapon(int roomIndex)
+	{
+		return (rooms.getInt(roomIndex * ROOM_SIZE + FLAGS_OFFSET) & PRIMARY_WEAPON) != 0;
+	}
+
+	@Override
+	public void setPrimaryWeapon(int roomIndex, boolean present)
+	{
+		setFlag(roomIndex, PRIMARY_WEAPON, present);
+	}
+
+	@Override
+	public boolean hasSecondaryWeapon(int roomIndex)
+	{
+		return (rooms.getInt(roomIndex * ROOM_SIZE + FLAGS_OFFSET) & SECONDARY_WEAPON) != 0;
+	}
+
+	@Override
+	public void setSecondaryWeapon(int roomIndex, boolean present)
+	{
+		setFlag(roomIndex, SECONDARY_WEAPON, present);
+	}
+
+	@Override
+	public int getCurrency(int roomIndex)
+	{
+		return rooms.getInt(roomIndex * ROOM_SIZE + CURRENCY_OFFSET);
+	}
+
+	@Override
+	public void setCurrency(int roomIndex, int amount)
+	{
+		rooms.putInt(roomIndex * ROOM_SIZE + CURRENCY_OFFSET, amount);
+	}
+
+	@Override
+	public int getVersion(int roomIndex)
+	{
+		return rooms.getInt(roomIndex * ROOM_SIZE + FLAGS_OFFSET) >>> VERSION_SHIFT;
+	}
+
+	@Override
+	public void incrementVersion(int roomIndex)
+	{
+		int position = roomIndex * ROOM_SIZE + FLAGS_OFFSET;
+		rooms.putInt(position, rooms.getInt(position) + (1 << VERSION_SHIFT));
+	}
+
+	/**
+	 * Sets or clears one of the flags of a room
+	 */
+	private void setFlag(int roomIndex, int flag, boolean present)
+	{
+		int position = roomIndex * ROOM_SIZE + FLAGS_OFFSET;
+		int flags = rooms.getInt(position);
+		rooms.putInt(position, (present == true) ? flags | flag : flags & ~flag);
+	}
+}
@@ -0,0 +1,132 @@
+package game.data;
+
+import java.nio.IntBuffer;
+
+/**
+ * A room layout kept in two direct buffers outside the Java heap, for maps too large to keep on it.
+ * Only absolute reads are used, so many threads may read the layout at the same time.
+ */
+final class OffHeapRoomLayout extends RoomLayout
+{
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final DoorIndex doorIndex;
+
+	/**
+	 * Creates a layout over the buffers of a compressed sparse row structure and indexes its hub rooms.
+	 * The buffers are used as they are and must not be modified afterwards.
+	 *
+	 * @param offsets A buffer of numberOfRooms + 1 non-decreasing positions in targets
+	 * @param targets The door numbers of all rooms, grouped by room
+	 */
+	OffHeapRoomLayout(IntBuffer offsets, IntBuffer targets)
+	{
+		checkOffsets(offsets, targets);
+		this.offsets = offsets;
+		this.targets = targets;
+		this.doorIndex = DoorIndex.build(offsets, targets, true);
+	}
+
+	/**
+	 * Creates a layout from buffers that are already checked and indexed
+	 *
+	 * @param doorIndex The sorted doors of the hub rooms, or null if there are none
+	 */
+	OffHeapRoomLayout(IntBuffer offsets, IntBuffer targets, DoorIndex doorIndex)
+	{
+		this.offsets = offsets;
+		this.targets = targets;
+		this.doorIndex = doorIndex;
+	}
+
+	@Override
+	public RoomLayout toOffHeap()
+	{
+		return this;
+	}
+
+	@Override
+	public boolean isOffHeap()
+	{
+		return true;
+	}
+
+	@Override
+	public int getNumberOfRooms()
+	{
+		return offsets.capacity() - 1;
+	}
+
+	@Override
+	public int getTotalNumberOfDoors()
+	{
+		return targets.capacity();
+	}
+
+	@Override
+	public int getNumberOfDoors(int roomIndex)
+	{
+		return offsets.get(roomIndex + 1) - offsets.get(roomIndex);
+	}
+
+	@Override
+	public int getDoor(int roomIndex, int doorIndex)
+	{
+		return targets.get(offsets.get(roomIndex) + doorIndex);
+	}
+
+	@Override
+	public int getFirstDoorPosition(int roomIndex)
+	{
+		return offsets.get(roomIndex);
+	}
+
+	@Override
+	public int getEndDoorPosition(int roomIndex)
+	{
+		return offsets.get(roomIndex + 1);
+	}
+
+	@Override
+	public int getDoorAt(int doorPosition)
+	{
+		return targets.get(doorPosition);
+	}
+
+	@Override
+	public boolean hasDoor(int roomIndex, int roomNumber)
+	{
+		int first = offsets.get(roomIndex);
+		int end = offsets.get(roomIndex + 1);
+
+		if (end - first > LINEAR_SCAN_LIMIT)
+		{
+			return doorIndex.contains(roomIndex, end - first, roomNumber);
+		}
+
+		for (int d = first; d < end; d++)
+		{
+			if (targets.get(d) == roomNumber)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void copyOffsets(int[] destination)
+	{
+		IntBuffer view = offsets.duplicate();
+		view.clear();
+		view.get(destination, 0, offsets.capacity());
+	}
+
+	@Override
+	public void copyTargets(int[] destination)
+	{
+		IntBuffer view = targets.duplicate();
+		view.clear();
+		view.get(destination, 0, targets.capacity());
+	}
+}
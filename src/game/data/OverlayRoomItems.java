@@ -0,0 +1,279 @@
+package game.data;
+
+import java.util.Arrays;
+
+/**
+ * The items of one game, kept as changes on top of the items of a shared map.
+ * Rooms the game has not changed are read from the shared items; the first change to a room
+ * copies its state into the overlay, and from then on the room is read from the overlay only.
+ * An overlay therefore costs memory in proportion to the rooms its game has changed,
+ * not to the size of the map, and is created without copying anything.
+ *
+ * The state of a changed room is kept in two sparse maps: its weapons and version,
+ * packed like the flags of OffHeapRoomItems, and its currency. The indexes of changed rooms
+ * are also kept in a sorted array, so that the scans can merge them with the scans of the shared items.
+ *
+ * The shared items must not change while overlays on them are in use.
+ */
+final class OverlayRoomItems extends AbstractRoomItems
+{
+	private static final int PRIMARY_WEAPON = 1;
+	private static final int SECONDARY_WEAPON = 2;
+	private static final int VERSION_SHIFT = 2;
+	private static final int UNCHANGED = -1;
+	private static final int INITIAL_CHANGED_ROOMS = 8;
+
+	private final RoomItems sharedItems;
+	private IntIntMap flags;
+	private IntIntMap currencies;
+	private int[] changedRooms;
+	private int numberOfChangedRooms;
+
+	/**
+	 * Creates an overlay without changes
+	 *
+	 * @param sharedItems The items to show through the overlay
+	 * @param numberOfRooms The number of rooms in the map
+	 */
+	private OverlayRoomItems(RoomItems sharedItems, int numberOfRooms)
+	{
+		super(numberOfRooms);
+		this.sharedItems = sharedItems;
+	}
+
+	/**
+	 * Creates a copy of another overlay, on the same shared items
+	 */
+	private OverlayRoomItems(OverlayRoomItems other)
+	{
+		super(other.getNumberOfRooms());
+		sharedItems = other.sharedItems;
+		if (other.numberOfChangedRooms > 0)
+		{
+			flags = new IntIntMap(other.flags);
+			currencies = new IntIntMap(other.currencies);
+			changedRooms = other.changedRooms.clone();
+			numberOfChangedRooms = other.numberOfChangedRooms;
+		}
+	}
+
+	/**
+	 * Returns items for one game, which start out like the specified items and change independently of them
+	 *
+	 * @param items The items of a shared map, or of another game
+	 * @param numberOfRooms The number of rooms in the map
+	 * @return An overlay on the shared items; the items of another game are copied, overlay and all
+	 */
+	static RoomItems forGame(RoomItems items, int numberOfRooms)
+	{
+		if (items instanceof OverlayRoomItems)
+		{
+			return items.copy();
+		}
+		return new OverlayRoomItems(items, numberOfRooms);
+	}
+
+	@Override
+	public RoomItems copy()
+	{
+		return new OverlayRoomItems(this);
+	}
+
+	@Override
+	public boolean hasPrimaryWeapon(int roomIndex)
+	{
+		int roomFlags = getChangedFlags(roomIndex);
+		return (roomFlags != UNCHANGED) ? (roomFlags & PRIMARY_WEAPON) != 0 : sharedItems.hasPrimaryWeapon(roomIndex);
+	}
+
+	@Override
+	public void setPrimaryWeapon(int roomIndex, boolean present)
+	{
+		setFlag(roomIndex, PRIMARY_WEAPON, present);
+	}
+
+	@Override
+	public boolean hasSecondaryWeapon(int roomIndex)
+	{
+		int roomFlags = getChangedFlags(roomIndex);
+		return (roomFlags != UNCHANGED) ? (roomFlags & SECONDARY_WEAPON) != 0 : sharedItems.hasSecondaryWeapon(roomIndex);
+	}
+
+	@Override
+	public void setSecondaryWeapon(int roomIndex, boolean present)
+	{
+		setFlag(roomIndex, SECONDARY_WEAPON, present);
+	}
+
+	@Override
+	public int getCurrency(int roomIndex)
+	{
+		return (getChangedFlags(roomIndex) != UNCHANGED) ? currencies.get(roomIndex, 0) : sharedItems.getCurrency(roomIndex);
+	}
+
+	@Override
+	public void setCurrency(int roomIndex, int amount)
+	{
+		change(roomIndex);
+		if (amount > 0)
+		{
+			currencies.put(roomIndex, amount);
+		}
+		else
+		{
+			currencies.remove(roomIndex);
+		}
+	}
+
+	@Override
+	public int getVersion(int roomIndex)
+	{
+		int roomFlags = getChangedFlags(roomIndex);
+		return (roomFlags != UNCHANGED) ? roomFlags >>> VERSION_SHIFT : sharedItems.getVersion(roomIndex);
+	}
+
+	@Override
+	public void incrementVersion(int roomIndex)
+	{
+		change(roomIndex);
+		flags.put(roomIndex, flags.get(roomIndex, 0) + (1 << VERSION_SHIFT));
+	}
+
+	/**
+	 * Merges the rooms with currency of the shared items, less those changed since, with the changed rooms that have currency
+	 */
+	@Override
+	public int nextRoomWithCurrency(int fromIndex)
+	{
+		int shared = sharedItems.nextRoomWithCurrency(fromIndex);
+		while (shared >= 0 && getChangedFlags(shared) != UNCHANGED)
+		{
+			shared = sharedItems.nextRoomWithCurrency(shared + 1);
+		}
+		for (int i = firstChangedRoom(fromIndex); i < numberOfChangedRooms; i++)
+		{
+			int roomIndex = changedRooms[i];
+			if (shared >= 0 && roomIndex > shared)
+			{
+				break;
+			}
+			if (currencies.get(roomIndex, 0) > 0)
+			{
+				return roomIndex;
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Merges the rooms with weapons of the shared items, less those changed since, with the changed rooms that have weapons
+	 */
+	@Override
+	public int nextRoomWithWeapon(int fromIndex)
+	{
+		int shared = sharedItems.nextRoomWithWeapon(fromIndex);
+		while (shared >= 0 && getChangedFlags(shared) != UNCHANGED)
+		{
+			shared = sharedItems.nextRoomWithWeapon(shared + 1);
+		}
+		for (int i = firstChangedRoom(fromIndex); i < numberOfChangedRooms; i++)
+		{
+			int roomIndex = changedRooms[i];
+			if (shared >= 0 && roomIndex > shared)
+			{
+				break;
+			}
+			if ((flags.get(roomIndex, 0) & (PRIMARY_WEAPON | SECONDARY_WEAPON)) != 0)
+			{
+				return roomIndex;
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Sets or clears a weapon flag of a room
+	 */
+	private void setFlag(int roomIndex, int flag, boolean present)
+	{
+		change(roomIndex);
+		int roomFlags = flags.get(roomIndex, 0);
+		flags.put(roomIndex, (present == true) ? roomFlags | flag : roomFlags & ~flag);
+	}
+
+	/**
+	 * @return The weapons and version of a room that has been copied into the overlay, or UNCHANGED
+	 */
+	private int getChangedFlags(int roomIndex)
+	{
+		checkRoomIndex(roomIndex);
+		return (flags != null) ? flags.get(roomIndex, UNCHANGED) : UNCHANGED;
+	}
+
+	/**
+	 * Copies the state of a room from the shared items into the overlay, unless it is there already
+	 */
+	private void change(int roomIndex)
+	{
+		checkRoomIndex(roomIndex);
+		if (changedRooms == null)
+		{
+			flags = new IntIntMap();
+			currencies = new IntIntMap();
+			changedRooms = new int[INITIAL_CHANGED_ROOMS];
+		}
+
+		if (flags.get(roomIndex, UNCHANGED) != UNCHANGED)
+		{
+			return;
+		}
+		int position = -Arrays.binarySearch(changedRooms, 0, numberOfChangedRooms, roomIndex) - 1;
+		if (numberOfChangedRooms == changedRooms.length)
+		{
+			changedRooms = Arrays.copyOf(changedRooms, numberOfChangedRooms * 2);
+		}
+		System.arraycopy(changedRooms, position, changedRooms, position + 1, numberOfChangedRooms - position);
+		changedRooms[position] = roomIndex;
+		numberOfChangedRooms++;
+
+		int roomFlags = sharedItems.getVersion(roomIndex) << VERSION_SHIFT;
+		if (sharedItems.hasPrimaryWeapon(roomIndex) == true)
+		{
+			roomFlags |= PRIMARY_WEAPON;
+		}
+		if (sharedItems.hasSecondaryWeapon(roomIndex) == true)
+		{
+			roomFlags |= SECONDARY_WEAPON;
+		}
+		flags.put(roomIndex, roomFlags);
+		int amount = sharedItems.getCurrency(roomIndex);
+		if (amount > 0)
+		{
+			currencies.put(roomIndex, amount);
+		}
+	}
+
+	/**
+	 * @return The position in changedRooms of the first changed room at or after fromIndex
+	 */
+	private int firstChangedRoom(int fromIndex)
+	{
+		if (numberOfChangedRooms == 0)
+		{
+			return 0;
+		}
+		int position = Arrays.binarySearch(changedRooms, 0, numberOfChangedRooms, Math.max(fromIndex, 0));
+		return (position >= 0) ? position : -position - 1;
+	}
+
+	/**
+	 * @throws ArrayIndexOutOfBoundsException if the room does not exist
+	 */
+	private void checkRoomIndex(int roomIndex)
+	{
+		if (roomIndex < 0 || roomIndex >= getNumberOfRooms())
+		{
+			throw new ArrayIndexOutOfBoundsException(roomIndex);
+		}
+	}
+}
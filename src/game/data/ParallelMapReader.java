@@ -0,0 +1,204 @@
+package game.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class reads large map files on several threads. The memory-mapped file
+ * is split at room block boundaries and the parts are parsed on a ForkJoinPool.
+ * Descriptions are written straight into the MapData object, as each room block
+ * belongs to exactly one part. Items and doors are collected per part and merged
+ * in file order afterwards, because the item store packs several rooms into one word.
+ *
+ * As with DataTransfer.readMapData, the first room block is the entrance and the
+ * last room block is the exit. Each room number is expected to appear in one block only.
+ */
+public final class ParallelMapReader
+{
+	private static final int MINIMUM_PART_SIZE = 1 << 20;
+	private static final int PARTS_PER_THREAD = 4;
+
+	/**
+	 * Memory-maps the file in the specified path and instantiates a MapData
+	 * object from it, using as many threads as there are available processors
+	 *
+	 * @param filePath The path to a file with game data
+	 * @return The MapData object with all fields, containing game data, initialized
+	 * @throws IOException if the specified filePath path does not exist or the file cannot be mapped
+	 */
+	public static MapData readMapData(String filePath) throws IOException
+	{
+		return readMapData(filePath, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Memory-maps the file in the specified path and instantiates a MapData
+	 * object from it, using the specified number of threads
+	 *
+	 * @param filePath The path to a file with game data
+	 * @param parallelism The number of threads to parse the file with
+	 * @return The MapData object with all fields, containing game data, initialized
+	 * @throws IOException if the specified filePath path does not exist or the file cannot be mapped
+	 */
+	public static MapData readMapData(String filePath, int parallelism) throws IOException
+	{
+		ByteBuffer mapBytes = MappedMapReader.mapFile(filePath);
+		MapTextParser header = new MapTextParser(mapBytes);
+
+		MapData gameData = new MapData(header.parseRoomCount());
+		System.out.println("Initialising game map -- number of rooms: " + gameData.numberOfRooms);
+
+		int start = header.getPosition();
+		int end = mapBytes.limit();
+		int contentEnd = MapTextParser.findContentEnd(mapBytes, 0, end);
+		int partSize = Math.max(MINIMUM_PART_SIZE, (end - start) / (parallelism * PARTS_PER_THREAD));
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<Part> parts;
+		try
+		{
+			parts = pool.invoke(new ParseTask(mapBytes, gameData, start, end, contentEnd, partSize));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		RoomLayout.Builder roomLayout = gameData.newRoomLayoutBuilder();
+		int lastRoomIndex = -1;
+		for (int i = 0; i < parts.size(); i++)
+		{
+			MapTextParser part = parts.get(i).parser;
+			parts.get(i).copyItems();
+			roomLayout.append(part.getRoomLayout());
+			if (i == 0)
+			{
+				gameData.entranceRoomNumber = part.getFirstRoomNumber();
+			}
+			if (part.getLastRoomIndex() != -1)
+			{
+				lastRoomIndex = part.getLastRoomIndex();
+			}
+		}
+		gameData.exitRoomNumber = lastRoomIndex + 1;
+		gameData.setRoomLayout(roomLayout.build());
+
+		return gameData;
+	}
+
+	/**
+	 * Parses a region of the map file. Regions larger than the part size are
+	 * split in two at the room block nearest to their middle.
+	 * The result is the list of all parts, in file order.
+	 */
+	private static final class ParseTask extends RecursiveTask<List<Part>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer mapBytes;
+		private final MapData gameData;
+		private final int start;
+		private final int end;
+		private final int contentEnd;
+		private final int partSize;
+
+		ParseTask(ByteBuffer mapBytes, MapData gameData, int start, int end, int contentEnd, int partSize)
+		{
+			this.mapBytes = mapBytes;
+			this.gameData = gameData;
+			this.start = start;
+			this.end = end;
+			this.contentEnd = contentEnd;
+			this.partSize = partSize;
+		}
+
+		@Override
+		protected List<Part> compute()
+		{
+			if (end - start > partSize)
+			{
+				MapTextParser splitter = new MapTextParser(mapBytes.duplicate(), start, end, contentEnd);
+				int middle = splitter.findRoomBlockStart(start + (end - start) / 2, end);
+				if (middle > start && middle < end)
+				{
+					ParseTask second = new ParseTask(mapBytes, gameData, middle, end, contentEnd, partSize);
+					second.fork();
+					List<Part> parts = new ParseTask(mapBytes, gameData, start, middle, contentEnd, partSize).compute();
+					parts.addAll(second.join());
+					return parts;
+				}
+			}
+
+			Part part = new Part(new MapTextParser(mapBytes.duplicate(), start, end, contentEnd), gameData);
+			part.parser.parseRoomBlocks(part, gameData.newRoomLayoutBuilder());
+
+			List<Part> parts = new ArrayList<Part>();
+			parts.add(part);
+			return parts;
+		}
+	}
+
+	/**
+	 * The result of parsing one region: the parser with the doors of the region,
+	 * and the items of its rooms in file order
+	 */
+	private static final class Part implements MapTextParser.RoomSink
+	{
+		private static final int PRIMARY_WEAPON = 1;
+		private static final int SECONDARY_WEAPON = 2;
+		private static final int CURRENCY = 4;
+
+		private final MapTextParser parser;
+		private final MapData gameData;
+		private int[] itemRooms = new int[64];
+		private byte[] items = new byte[64];
+		private int numberOfItemRooms;
+
+		Part(MapTextParser parser, MapData gameData)
+		{
+			this.parser = parser;
+			this.gameData = gameData;
+		}
+
+		@Override
+		public void setDescription(int roomIndex, String description)
+		{
+			gameData.setRoomDescription(roomIndex, description);
+		}
+
+		@Override
+		public void setItems(int roomIndex, boolean primaryWeapon, boolean secondaryWeapon, boolean currency)
+		{
+			if (roomIndex < 0 || roomIndex >= gameData.numberOfRooms)
+			{
+				throw new ArrayIndexOutOfBoundsException(roomIndex);
+			}
+			if (numberOfItemRooms == itemRooms.length)
+			{
+				itemRooms = Arrays.copyOf(itemRooms, numberOfItemRooms * 2);
+				items = Arrays.copyOf(items, numberOfItemRooms * 2);
+			}
+			itemRooms[numberOfItemRooms] = roomIndex;
+			items[numberOfItemRooms] = (byte)((primaryWeapon ? PRIMARY_WEAPON : 0) | (secondaryWeapon ? SECONDARY_WEAPON : 0) | (currency ? CURRENCY : 0));
+			numberOfItemRooms++;
+		}
+
+		/**
+		 * Stores the collected items in the MapData object. Must be called for one part at a time.
+		 */
+		void copyItems()
+		{
+			for (int i = 0; i < numberOfItemRooms; i++)
+			{
+				gameData.setPrimaryWeapon(itemRooms[i], (items[i] & PRIMARY_WEAPON) != 0);
+				gameData.setSecondaryWeapon(itemRooms[i], (items[i] & SECONDARY_WEAPON) != 0);
+				gameData.setCurrency(itemRooms[i], ((items[i] & CURRENCY) != 0) ? DataTransfer.generateRoomCurrency() : 0);
+			}
+		}
+	}
+}
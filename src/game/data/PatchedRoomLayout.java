@@ -0,0 +1,181 @@
+package game.data;
+
+/**
+ * A room layout made of a base layout and a small layout with the doors of the rooms that were
+ * changed since, so that a map update costs time and memory in proportion to the rooms it changes
+ * instead of to the whole map. Rooms that were not changed are read from the base layout.
+ *
+ * Door positions below the number of doors of the base layout are positions in the base layout;
+ * the doors of changed rooms are found at the positions from there on.
+ * Once the changed rooms make up a large part of the map, Builder.buildOnto merges them into
+ * a plain layout again, so lookups never go through more than one patch.
+ */
+final class PatchedRoomLayout extends RoomLayout
+{
+	private static final int UNCHANGED = -1;
+
+	private final RoomLayout base;
+	private final IntIntMap changedRooms;
+	private final int[] changedRoomIndexes;
+	private final RoomLayout changes;
+	private final int basePositions;
+	private final int numberOfDoors;
+
+	/**
+	 * @param base The layout the changes apply to, which is not itself a PatchedRoomLayout
+	 * @param changedRoomIndexes The indexes of the changed rooms, in the order of the rooms of changes
+	 * @param changes A layout with one room for each changed room, holding its new doors
+	 */
+	PatchedRoomLayout(RoomLayout base, int[] changedRoomIndexes, RoomLayout changes)
+	{
+		this.base = base;
+		this.changedRoomIndexes = changedRoomIndexes;
+		this.changes = changes;
+		this.basePositions = base.getTotalNumberOfDoors();
+
+		changedRooms = new IntIntMap();
+		int doors = basePositions;
+		for (int k = 0; k < changedRoomIndexes.length; k++)
+		{
+			changedRooms.put(changedRoomIndexes[k], k);
+			doors += changes.getNumberOfDoors(k) - base.getNumberOfDoors(changedRoomIndexes[k]);
+		}
+		this.numberOfDoors = doors;
+	}
+
+	/**
+	 * @return The layout the changes apply to
+	 */
+	RoomLayout getBase()
+	{
+		return base;
+	}
+
+	/**
+	 * @return The number of rooms whose doors differ from the base layout
+	 */
+	int getNumberOfChangedRooms()
+	{
+		return changedRoomIndexes.length;
+	}
+
+	/**
+	 * Adds the doors of every changed room to a builder
+	 *
+	 * @param builder A builder for the same number of rooms
+	 */
+	void addChangesTo(Builder builder)
+	{
+		for (int k = 0; k < changedRoomIndexes.length; k++)
+		{
+			builder.beginRoom(changedRoomIndexes[k]);
+			for (int d = changes.getFirstDoorPosition(k); d < changes.getEndDoorPosition(k); d++)
+			{
+				builder.addDoor(changes.getDoorAt(d));
+			}
+		}
+	}
+
+	/**
+	 * @return The index of the room in the changes layout, or UNCHANGED
+	 */
+	private int getChange(int roomIndex)
+	{
+		return changedRooms.get(roomIndex, UNCHANGED);
+	}
+
+	/**
+	 * Moves the base layout off the heap; the changes are small and stay on the heap
+	 */
+	@Override
+	public RoomLayout toOffHeap()
+	{
+		if (base.isOffHeap() == true)
+		{
+			return this;
+		}
+		return new PatchedRoomLayout(base.toOffHeap(), changedRoomIndexes, changes);
+	}
+
+	@Override
+	public boolean isOffHeap()
+	{
+		return base.isOffHeap();
+	}
+
+	@Override
+	public int getNumberOfRooms()
+	{
+		return base.getNumberOfRooms();
+	}
+
+	@Override
+	public int getTotalNumberOfDoors()
+	{
+		return numberOfDoors;
+	}
+
+	@Override
+	public int getNumberOfDoors(int roomIndex)
+	{
+		int change = getChange(roomIndex);
+		return (change == UNCHANGED) ? base.getNumberOfDoors(roomIndex) : changes.getNumberOfDoors(change);
+	}
+
+	@Override
+	public int getDoor(int roomIndex, int doorIndex)
+	{
+		int change = getChange(roomIndex);
+		return (change == UNCHANGED) ? base.getDoor(roomIndex, doorIndex) : changes.getDoor(change, doorIndex);
+	}
+
+	@Override
+	public int getFirstDoorPosition(int roomIndex)
+	{
+		int change = getChange(roomIndex);
+		return (change == UNCHANGED) ? base.getFirstDoorPosition(roomIndex) : basePositions + changes.getFirstDoorPosition(change);
+	}
+
+	@Override
+	public int getEndDoorPosition(int roomIndex)
+	{
+		int change = getChange(roomIndex);
+		return (change == UNCHANGED) ? base.getEndDoorPosition(roomIndex) : basePositions + changes.getEndDoorPosition(change);
+	}
+
+	@Override
+	public int getDoorAt(int doorPosition)
+	{
+		return (doorPosition < basePositions) ? base.getDoorAt(doorPosition) : changes.getDoorAt(doorPosition - basePositions);
+	}
+
+	@Override
+	public boolean hasDoor(int roomIndex, int roomNumber)
+	{
+		int change = getChange(roomIndex);
+		return (change == UNCHANGED) ? base.hasDoor(roomIndex, roomNumber) : changes.hasDoor(change, roomNumber);
+	}
+
+	@Override
+	public void copyOffsets(int[] destination)
+	{
+		destination[0] = 0;
+		for (int i = 0; i < getNumberOfRooms(); i++)
+		{
+			destination[i + 1] = destination[i] + getNumberOfDoors(i);
+		}
+	}
+
+	@Override
+	public void copyTargets(int[] destination)
+	{
+		int position = 0;
+		for (int i = 0; i < getNumberOfRooms(); i++)
+		{
+			for (int d = getFirstDoorPosition(i); d < getEndDoorPosition(i); d++)
+			{
+				destination[position++] = getDoorAt(d);
+			}
+		}
+	}
+}
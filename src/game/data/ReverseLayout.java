@@ -0,0 +1,150 @@
+package game.data;
+
+import java.util.Arrays;
+
+/**
+ * The doors of a RoomLayout turned around: for every room, the rooms that have a door to it.
+ * They are stored in compressed sparse row form like the layout itself, and are used to search
+ * backwards from a target room, which finds the distance of every room to it in one pass.
+ *
+ * A reverse layout depends only on its RoomLayout, which creates it once and shares it between
+ * all games on the map (see RoomLayout.getReverseLayout). The distances to one room, normally the exit,
+ * are kept too, so that only the distances to items, which change during a game, are left to each game.
+ * It is safe to use from several threads.
+ */
+public final class ReverseLayout
+{
+	public static final int UNREACHABLE = -1;
+
+	private final int[] offsets;
+	private final int[] sources;
+
+	private volatile Distances distancesToRoom;
+
+	/**
+	 * Reverses the doors of a layout. Doors to rooms that do not exist are left out.
+	 *
+	 * @param layout The layout to reverse
+	 */
+	ReverseLayout(RoomLayout layout)
+	{
+		int numberOfRooms = layout.getNumberOfRooms();
+		offsets = new int[numberOfRooms + 1];
+		for (int room = 0; room < numberOfRooms; room++)
+		{
+			for (int d = layout.getFirstDoorPosition(room); d < layout.getEndDoorPosition(room); d++)
+			{
+				int target = layout.getDoorAt(d) - 1;
+				if (target >= 0 && target < numberOfRooms)
+				{
+					offsets[target + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < numberOfRooms; i++)
+		{
+			offsets[i + 1] += offsets[i];
+		}
+
+		sources = new int[offsets[numberOfRooms]];
+		int[] fill = Arrays.copyOf(offsets, numberOfRooms);
+		for (int room = 0; room < numberOfRooms; room++)
+		{
+			for (int d = layout.getFirstDoorPosition(room); d < layout.getEndDoorPosition(room); d++)
+			{
+				int target = layout.getDoorAt(d) - 1;
+				if (target >= 0 && target < numberOfRooms)
+				{
+					sources[fill[target]++] = room;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of rooms in the layout
+	 */
+	public int getNumberOfRooms()
+	{
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the distance of every room to one room, computing it the first time it is asked for.
+	 * Only the distances to the last room asked for are kept.
+	 *
+	 * @param roomIndex The room number minus one
+	 * @return The number of doors from each room to the specified room, or UNREACHABLE;
+	 * the array is shared and must not be modified
+	 */
+	public int[] getDistancesTo(int roomIndex)
+	{
+		Distances distances = distancesToRoom;
+		if (distances == null || distances.roomIndex != roomIndex)
+		{
+			int[] distance = new int[getNumberOfRooms()];
+			int[] queue = new int[getNumberOfRooms()];
+			int numberOfSources = 0;
+			if (roomIndex >= 0 && roomIndex < getNumberOfRooms())
+			{
+				queue[numberOfSources++] = roomIndex;
+			}
+			computeDistances(queue, numberOfSources, distance);
+			//Threads that get here at the same time compute the same distances, so either result may be kept
+			distances = new Distances(roomIndex, distance);
+			distancesToRoom = distances;
+		}
+		return distances.distance;
+	}
+
+	/**
+	 * Runs a breadth-first search over reversed doors from several rooms at once
+	 *
+	 * @param queue An array of getNumberOfRooms() elements that starts with the indexes of the rooms to search from
+	 * @param numberOfSources The number of rooms at the start of the queue
+	 * @param distance The array to write the distance of each room to, or UNREACHABLE
+	 */
+	public void computeDistances(int[] queue, int numberOfSources, int[] distance)
+	{
+		Arrays.fill(distance, UNREACHABLE);
+		for (int i = 0; i < numberOfSources; i++)
+		{
+			distance[queue[i]] = 0;
+		}
+
+		int head = 0;
+		int tail = numberOfSources;
+		while (head < tail)
+		{
+			int room = queue[head++];
+			for (int r = offsets[room]; r < offsets[room + 1]; r++)
+			{
+				int previous = sources[r];
+				if (distance[previous] == UNREACHABLE)
+				{
+					distance[previous] = distance[room] + 1;
+					queue[tail++] = previous;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The distances of all rooms to one room, replaced as a whole so that threads never see them half written
+	 */
+	private static final class Distances
+	{
+		private final int roomIndex;
+		private final int[] distance;
+
+		/**
+		 * @param roomIndex The room the distances lead to
+		 * @param distance The distance of each room to it
+		 */
+		private Distances(int roomIndex, int[] distance)
+		{
+			this.roomIndex = roomIndex;
+			this.distance = distance;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package game.data;
+
+/**
+ * The description of each room of a map. Rooms are identified by their index,
+ * which is the room number minus one; a room without a description has a null one.
+ *
+ * @see MapData#BACKEND_HEAP
+ * @see MapData#BACKEND_OFF_HEAP
+ */
+public interface RoomDescriptions
+{
+	String getDescription(int roomIndex);
+
+	void setDescription(int roomIndex, String description);
+
+	/**
+	 * Sets the descriptions of several rooms as one change, so that a map update
+	 * with many rooms costs no more than setting each of them
+	 *
+	 * @param roomIndexes The indexes of the rooms
+	 * @param descriptions The new description of each room, or null
+	 * @param count The number of rooms to set, from the start of both arrays
+	 */
+	void setDescriptions(int[] roomIndexes, String[] descriptions, int count);
+}
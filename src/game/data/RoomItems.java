@@ -0,0 +1,96 @@
+package game.data;
+
+/**
+ * The items lying in each room of a map: a primary weapon, a secondary weapon and an amount of currency.
+ * Rooms are identified by their index, which is the room number minus one.
+ *
+ * Each room also has a version, so that text rendered from its items can be cached.
+ * Loading a map does not change versions; code that changes the items of a room during play
+ * calls incrementVersion afterwards.
+ *
+ * The take and add operations change a room in one step where the implementation allows
+ * several games to change the same items (see MapData#copyForSharedWorld).
+ *
+ * @see MapData#BACKEND_HEAP
+ * @see MapData#BACKEND_OFF_HEAP
+ */
+public interface RoomItems
+{
+	boolean hasPrimaryWeapon(int roomIndex);
+
+	void setPrimaryWeapon(int roomIndex, boolean present);
+
+	boolean hasSecondaryWeapon(int roomIndex);
+
+	void setSecondaryWeapon(int roomIndex, boolean present);
+
+	int getCurrency(int roomIndex);
+
+	void setCurrency(int roomIndex, int amount);
+
+	/**
+	 * Removes the primary weapon from a room
+	 *
+	 * @param roomIndex The room number minus one
+	 * @return True if there was a weapon to take
+	 */
+	boolean takePrimaryWeapon(int roomIndex);
+
+	/**
+	 * Removes the secondary weapon from a room
+	 *
+	 * @param roomIndex The room number minus one
+	 * @return True if there was a weapon to take
+	 */
+	boolean takeSecondaryWeapon(int roomIndex);
+
+	/**
+	 * Removes all currency from a room
+	 *
+	 * @param roomIndex The room number minus one
+	 * @return The amount that was taken, 0 if there was none
+	 */
+	int takeCurrency(int roomIndex);
+
+	/**
+	 * Adds currency to a room, for example when a monster drops it
+	 *
+	 * @param roomIndex The room number minus one
+	 * @param amount The amount to add
+	 * @return The amount in the room afterwards
+	 */
+	int addCurrency(int roomIndex, int amount);
+
+	/**
+	 * Copies the items of every room, including their versions, so that a game can take
+	 * and drop items without affecting the other games that play on the same map
+	 *
+	 * @return Items in the same backend, which change independently of these
+	 */
+	RoomItems copy();
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return The version of the items of the room, 0 until incrementVersion is first called
+	 */
+	int getVersion(int roomIndex);
+
+	/**
+	 * Marks the items of a room as changed, so that text rendered from them is not reused
+	 *
+	 * @param roomIndex The room number minus one
+	 */
+	void incrementVersion(int roomIndex);
+
+	/**
+	 * @param fromIndex The index of the first room to look at
+	 * @return The index of the first room at or after fromIndex with currency in it, or -1 if there is none
+	 */
+	int nextRoomWithCurrency(int fromIndex);
+
+	/**
+	 * @param fromIndex The index of the first room to look at
+	 * @return The index of the first room at or after fromIndex with a weapon in it, or -1 if there is none
+	 */
+	int nextRoomWithWeapon(int fromIndex);
+}
@@ -0,0 +1,497 @@
+package game.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The doors of every room in the game, stored in compressed sparse row form.
+ * The door numbers of the room with index i are stored in
+ * targets[offsets[i]] ... targets[offsets[i + 1] - 1], in the order they
+ * appear in the map file. Only two arrays are used no matter how many rooms there are.
+ *
+ * Rooms with many doors also get a sorted copy of their doors in a DoorIndex, so that
+ * hasDoor takes logarithmic time in hub rooms and a short linear scan elsewhere.
+ * The index takes space only for hub rooms, and the Builder fills it while it copies their doors.
+ *
+ * A HeapRoomLayout keeps the arrays as Java arrays; an OffHeapRoomLayout keeps them
+ * in direct buffers outside the Java heap, for maps too large to keep on it.
+ * A Builder builds either kind directly, so a map loaded off the heap is never held on it.
+ *
+ * Doors can be visited without allocation:
+ * <pre>
+ * for (int d = layout.getFirstDoorPosition(i); d &lt; layout.getEndDoorPosition(i); d++)
+ * {
+ *     int roomNumber = layout.getDoorAt(d);
+ * }
+ * </pre>
+ */
+public abstract class RoomLayout
+{
+	static final int LINEAR_SCAN_LIMIT = 16;
+
+	private volatile ReverseLayout reverseLayout;
+
+	/**
+	 * Only the layouts of this package extend RoomLayout
+	 */
+	RoomLayout()
+	{
+	}
+
+	/**
+	 * @return A copy of this layout that is stored outside the Java heap, or this layout
+	 * if it already is
+	 */
+	public abstract RoomLayout toOffHeap();
+
+	/**
+	 * @return True if this layout is stored outside the Java heap
+	 */
+	public abstract boolean isOffHeap();
+
+	/**
+	 * @return The number of rooms in this layout
+	 */
+	public abstract int getNumberOfRooms();
+
+	/**
+	 * @return The total number of doors of all rooms
+	 */
+	public abstract int getTotalNumberOfDoors();
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return The number of doors in the specified room
+	 */
+	public abstract int getNumberOfDoors(int roomIndex);
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @param doorIndex The index of a door within the room
+	 * @return The number of the room behind the specified door
+	 */
+	public abstract int getDoor(int roomIndex, int doorIndex);
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return The position of the first door of the specified room, to be used with getDoorAt
+	 */
+	public abstract int getFirstDoorPosition(int roomIndex);
+
+	/**
+	 * @param roomIndex The room number minus one
+	 * @return The position after the last door of the specified room, to be used with getDoorAt
+	 */
+	public abstract int getEndDoorPosition(int roomIndex);
+
+	/**
+	 * @param doorPosition A position between getFirstDoorPosition and getEndDoorPosition of a room
+	 * @return The number of the room behind the door at the specified position
+	 */
+	public abstract int getDoorAt(int doorPosition);
+
+	/**
+	 * Checks whether the specified room has a door to another room
+	 *
+	 * @param roomIndex The room number minus one
+	 * @param roomNumber The number of the room behind the door
+	 * @return True if there is such a door
+	 */
+	public abstract boolean hasDoor(int roomIndex, int roomNumber);
+
+	/**
+	 * Copies the door offsets to the specified array
+	 *
+	 * @param destination An array of at least getNumberOfRooms() + 1 elements
+	 */
+	public abstract void copyOffsets(int[] destination);
+
+	/**
+	 * Copies the door numbers of all rooms to the specified array
+	 *
+	 * @param destination An array of at least getTotalNumberOfDoors() elements
+	 */
+	public abstract void copyTargets(int[] destination);
+
+	/**
+	 * Returns the doors of this layout turned around, reversing them the first time they are asked for.
+	 * All games on the map share the result, since the layout never changes.
+	 *
+	 * @return The reverse layout of this layout
+	 */
+	public ReverseLayout getReverseLayout()
+	{
+		ReverseLayout reverse = reverseLayout;
+		if (reverse == null)
+		{
+			synchronized (this)
+			{
+				reverse = reverseLayout;
+				if (reverse == null)
+				{
+					reverse = new ReverseLayout(this);
+					reverseLayout = reverse;
+				}
+			}
+		}
+		return reverse;
+	}
+
+	/**
+	 * Layouts are equal if every room has the same doors in the same order, however they are stored
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (other instanceof RoomLayout == false)
+		{
+			return false;
+		}
+		RoomLayout layout = (RoomLayout)other;
+		if (layout.getNumberOfRooms() != getNumberOfRooms() || layout.getTotalNumberOfDoors() != getTotalNumberOfDoors())
+		{
+			return false;
+		}
+		for (int i = 0; i < getNumberOfRooms(); i++)
+		{
+			int numberOfDoors = getNumberOfDoors(i);
+			if (layout.getNumberOfDoors(i) != numberOfDoors)
+			{
+				return false;
+			}
+			for (int d = 0; d < numberOfDoors; d++)
+			{
+				if (layout.getDoor(i, d) != getDoor(i, d))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int hash = getNumberOfRooms();
+		for (int i = 0; i < getNumberOfRooms(); i++)
+		{
+			hash = 31 * hash + getNumberOfDoors(i);
+			for (int d = getFirstDoorPosition(i); d < getEndDoorPosition(i); d++)
+			{
+				hash = 31 * hash + getDoorAt(d);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Checks the arrays of a compressed sparse row structure before a layout is made of them
+	 *
+	 * @param offsets The door offsets, numberOfRooms + 1 non-decreasing positions in targets
+	 * @param targets The door numbers of all rooms
+	 * @throws IllegalArgumentException if the offsets do not match the doors
+	 */
+	static void checkOffsets(IntBuffer offsets, IntBuffer targets)
+	{
+		if (offsets.capacity() == 0 || offsets.get(0) != 0 || offsets.get(offsets.capacity() - 1) != targets.capacity())
+		{
+			throw new IllegalArgumentException("Door offsets do not match the number of doors");
+		}
+	}
+
+	/**
+	 * @param capacity The number of ints in the buffer
+	 * @param offHeap True for a direct buffer, false for a buffer over a Java array
+	 * @return A new buffer filled with zeros
+	 */
+	static IntBuffer allocate(int capacity, boolean offHeap)
+	{
+		if (offHeap == true)
+		{
+			return ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return IntBuffer.wrap(new int[capacity]);
+	}
+
+	/**
+	 * Copies a range of ints between buffers without changing their positions
+	 */
+	static void copy(IntBuffer source, int sourcePosition, IntBuffer destination, int destinationPosition, int length)
+	{
+		if (source.hasArray() == true && destination.hasArray() == true)
+		{
+			System.arraycopy(source.array(), source.arrayOffset() + sourcePosition,
+					destination.array(), destination.arrayOffset() + destinationPosition, length);
+			return;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			destination.put(destinationPosition + i, source.get(sourcePosition + i));
+		}
+	}
+
+	/**
+	 * Collects the doors of each room while a map is being read. Rooms may be
+	 * added in any order; if the doors of a room are set more than once, the last set wins.
+	 * Rooms without doors end up with no doors. Memory use depends only on the
+	 * rooms and doors added, so several builders can fill parts of a map and be appended together.
+	 *
+	 * A builder for the off-heap backend collects the doors in a direct buffer and builds
+	 * an OffHeapRoomLayout, so that the doors of the map are never held on the Java heap.
+	 */
+	public static final class Builder
+	{
+		private static final int INITIAL_ENTRIES = 16;
+		private static final int INITIAL_DOORS = 64;
+		private static final int MERGE_DIVISOR = 8;
+
+		private final int numberOfRooms;
+		private final boolean offHeap;
+
+		private int[] entryRooms;
+		private int[] entryStarts;
+		private int[] entryLengths;
+		private int numberOfEntries;
+
+		private IntBuffer doors;
+		private int numberOfDoors;
+
+		/**
+		 * Creates a builder for a layout on the Java heap
+		 *
+		 * @param numberOfRooms The number of rooms in the map
+		 */
+		public Builder(int numberOfRooms)
+		{
+			this(numberOfRooms, false);
+		}
+
+		/**
+		 * @param numberOfRooms The number of rooms in the map
+		 * @param offHeap True to collect the doors and build the layout outside the Java heap
+		 */
+		public Builder(int numberOfRooms, boolean offHeap)
+		{
+			this.numberOfRooms = numberOfRooms;
+			this.offHeap = offHeap;
+			entryRooms = new int[INITIAL_ENTRIES];
+			entryStarts = new int[INITIAL_ENTRIES];
+			entryLengths = new int[INITIAL_ENTRIES];
+			doors = allocate(INITIAL_DOORS, offHeap);
+		}
+
+		/**
+		 * Starts a new list of doors for the specified room, replacing any
+		 * doors that were added to it before
+		 *
+		 * @param roomIndex The room number minus one
+		 */
+		public void beginRoom(int roomIndex)
+		{
+			if (roomIndex < 0 || roomIndex >= numberOfRooms)
+			{
+				throw new ArrayIndexOutOfBoundsException(roomIndex);
+			}
+			if (numberOfEntries == entryRooms.length)
+			{
+				growEntries(numberOfEntries * 2);
+			}
+			entryRooms[numberOfEntries] = roomIndex;
+			entryStarts[numberOfEntries] = numberOfDoors;
+			entryLengths[numberOfEntries] = 0;
+			numberOfEntries++;
+		}
+
+		/**
+		 * Adds a door to the room passed to the last call of beginRoom
+		 *
+		 * @param roomNumber The number of the room behind the door
+		 */
+		public void addDoor(int roomNumber)
+		{
+			if (numberOfDoors == doors.capacity())
+			{
+				growDoors(numberOfDoors * 2);
+			}
+			doors.put(numberOfDoors++, roomNumber);
+			entryLengths[numberOfEntries - 1]++;
+		}
+
+		/**
+		 * Adds all rooms collected by another builder after the rooms of this one,
+		 * as if they were read later in the same file
+		 *
+		 * @param other A builder for the same number of rooms
+		 */
+		public void append(Builder other)
+		{
+			if (numberOfEntries + other.numberOfEntries > entryRooms.length)
+			{
+				growEntries(Math.max(entryRooms.length * 2, numberOfEntries + other.numberOfEntries));
+			}
+			if (numberOfDoors + other.numberOfDoors > doors.capacity())
+			{
+				growDoors(Math.max(doors.capacity() * 2, numberOfDoors + other.numberOfDoors));
+			}
+
+			System.arraycopy(other.entryRooms, 0, entryRooms, numberOfEntries, other.numberOfEntries);
+			System.arraycopy(other.entryLengths, 0, entryLengths, numberOfEntries, other.numberOfEntries);
+			for (int e = 0; e < other.numberOfEntries; e++)
+			{
+				entryStarts[numberOfEntries + e] = other.entryStarts[e] + numberOfDoors;
+			}
+			copy(other.doors, 0, doors, numberOfDoors, other.numberOfDoors);
+
+			numberOfEntries += other.numberOfEntries;
+			numberOfDoors += other.numberOfDoors;
+		}
+
+		/**
+		 * @return A compact layout with the doors of every room, on the heap or off it as chosen for this builder
+		 */
+		public RoomLayout build()
+		{
+			//Walk the entries backwards so that the last entry of each room is the one kept
+			long[] roomSeen = new long[(numberOfRooms + 63) / 64];
+			IntBuffer offsets = allocate(numberOfRooms + 1, offHeap);
+			int numberOfHubDoors = 0;
+			for (int e = numberOfEntries - 1; e >= 0; e--)
+			{
+				int room = entryRooms[e];
+				if ((roomSeen[room >>> 6] & (1L << room)) == 0)
+				{
+					roomSeen[room >>> 6] |= 1L << room;
+					offsets.put(room + 1, entryLengths[e]);
+					numberOfHubDoors += (entryLengths[e] > LINEAR_SCAN_LIMIT) ? entryLengths[e] : 0;
+				}
+			}
+			for (int i = 0; i < numberOfRooms; i++)
+			{
+				offsets.put(i + 1, offsets.get(i + 1) + offsets.get(i));
+			}
+
+			IntBuffer targets = allocate(offsets.get(numberOfRooms), offHeap);
+			DoorIndex index = (numberOfHubDoors > 0) ? new DoorIndex(numberOfHubDoors, offHeap) : null;
+			Arrays.fill(roomSeen, 0);
+			for (int e = numberOfEntries - 1; e >= 0; e--)
+			{
+				int room = entryRooms[e];
+				if ((roomSeen[room >>> 6] & (1L << room)) == 0)
+				{
+					roomSeen[room >>> 6] |= 1L << room;
+					copy(doors, entryStarts[e], targets, offsets.get(room), entryLengths[e]);
+					if (entryLengths[e] > LINEAR_SCAN_LIMIT)
+					{
+						index.add(room, doors, entryStarts[e], entryLengths[e]);
+					}
+				}
+			}
+
+			if (offHeap == true)
+			{
+				return new OffHeapRoomLayout(offsets, targets, index);
+			}
+			return new HeapRoomLayout(offsets.array(), targets.array(), index);
+		}
+
+		/**
+		 * Builds a layout where the rooms added to this builder replace the doors
+		 * of the same rooms in an existing layout. The result is a PatchedRoomLayout
+		 * that keeps only the doors of the changed rooms next to the base layout, so the cost
+		 * depends on the rooms changed since the base layout was built, not on the size of the map.
+		 * When more than one in MERGE_DIVISOR rooms has changed, a plain layout is built instead.
+		 *
+		 * @param layout The layout to start from, with the same number of rooms
+		 * @return A new layout, on the heap or off it like the given layout; the given layout is not modified
+		 */
+		public RoomLayout buildOnto(RoomLayout layout)
+		{
+			//Earlier changes come first, so that the doors added to this builder win
+			RoomLayout base = layout;
+			Builder changes = new Builder(numberOfRooms);
+			if (layout instanceof PatchedRoomLayout)
+			{
+				base = ((PatchedRoomLayout)layout).getBase();
+				((PatchedRoomLayout)layout).addChangesTo(changes);
+			}
+			changes.append(this);
+
+			IntIntMap lastEntries = new IntIntMap();
+			int[] changedRooms = new int[changes.numberOfEntries];
+			int numberOfChangedRooms = 0;
+			for (int e = changes.numberOfEntries - 1; e >= 0; e--)
+			{
+				int room = changes.entryRooms[e];
+				if (lastEntries.get(room, -1) == -1)
+				{
+					lastEntries.put(room, e);
+					changedRooms[numberOfChangedRooms++] = room;
+				}
+			}
+			changedRooms = Arrays.copyOf(changedRooms, numberOfChangedRooms);
+			Arrays.sort(changedRooms);
+
+			if (numberOfChangedRooms > numberOfRooms / MERGE_DIVISOR)
+			{
+				Builder merged = new Builder(numberOfRooms, base.isOffHeap());
+				for (int i = 0; i < numberOfRooms; i++)
+				{
+					if (lastEntries.get(i, -1) == -1)
+					{
+						merged.beginRoom(i);
+						for (int d = base.getFirstDoorPosition(i); d < base.getEndDoorPosition(i); d++)
+						{
+							merged.addDoor(base.getDoorAt(d));
+						}
+					}
+				}
+				merged.append(changes);
+				return merged.build();
+			}
+
+			//Number the changed rooms in order, as the rooms of a small layout of their own
+			Builder changedDoors = new Builder(numberOfChangedRooms);
+			for (int k = 0; k < numberOfChangedRooms; k++)
+			{
+				int e = lastEntries.get(changedRooms[k], -1);
+				changedDoors.beginRoom(k);
+				for (int d = changes.entryStarts[e]; d < changes.entryStarts[e] + changes.entryLengths[e]; d++)
+				{
+					changedDoors.addDoor(changes.doors.get(d));
+				}
+			}
+			return new PatchedRoomLayout(base, changedRooms, changedDoors.build());
+		}
+
+		/**
+		 * @return True if no room was added to this builder
+		 */
+		public boolean isEmpty()
+		{
+			return numberOfEntries == 0;
+		}
+
+		/**
+		 * Makes room for more entries
+		 */
+		private void growEntries(int capacity)
+		{
+			entryRooms = Arrays.copyOf(entryRooms, capacity);
+			entryStarts = Arrays.copyOf(entryStarts, capacity);
+			entryLengths = Arrays.copyOf(entryLengths, capacity);
+		}
+
+		/**
+		 * Makes room for more doors, in a buffer of the same kind
+		 */
+		private void growDoors(int capacity)
+		{
+			IntBuffer grown = allocate(capacity, offHeap);
+			copy(doors, 0, grown, 0, numberOfDoors);
+			doors = grown;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package game.logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * An output that encodes text as UTF-8 into a ByteBuffer, for example to be sent
+ * to the client of a network session. The buffer grows as needed; its contents are
+ * taken with writeTo or getBuffer. Plain ASCII text is copied without an encoder,
+ * so printing allocates nothing once the buffer is large enough.
+ */
+public class ByteBufferOutput implements GameOutput
+{
+	private static final Charset OUTPUT_CHARSET = Charset.forName("UTF-8");
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final String NULL_TEXT = "null";
+
+	private ByteBuffer buffer;
+	private final CharsetEncoder encoder = OUTPUT_CHARSET.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * Creates an empty output
+	 *
+	 * @param initialCapacity The initial size of the buffer in bytes
+	 */
+	public ByteBufferOutput(int initialCapacity)
+	{
+		buffer = ByteBuffer.allocate(Math.max(initialCapacity, 16));
+	}
+
+	/**
+	 * Writes text, like PrintStream.print writes "null" for a null String
+	 */
+	@Override
+	public void print(CharSequence text)
+	{
+		if (text == null)
+		{
+			text = NULL_TEXT;
+		}
+
+		int length = text.length();
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c < 0x80)
+			{
+				if (buffer.hasRemaining() == false)
+				{
+					makeRoom(1);
+				}
+				buffer.put((byte)c);
+			}
+			else
+			{
+				int end = i + 1;
+				while (end < length && text.charAt(end) >= 0x80)
+				{
+					end++;
+				}
+				encode(CharBuffer.wrap(text, i, end));
+				i = end - 1;
+			}
+		}
+	}
+
+	/**
+	 * Writes text and a line separator
+	 */
+	@Override
+	public void println(CharSequence text)
+	{
+		print(text);
+		print(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Writes a line separator
+	 */
+	@Override
+	public void println()
+	{
+		print(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Does nothing; the text stays in the buffer until it is taken
+	 */
+	@Override
+	public void flush()
+	{
+	}
+
+	/**
+	 * @return The number of bytes written and not taken yet
+	 */
+	public int size()
+	{
+		return buffer.position();
+	}
+
+	/**
+	 * Returns the written bytes as a buffer that is ready to be read. The buffer is shared with
+	 * this output and is only valid until the next call that writes or clears.
+	 *
+	 * @return A read-only view of the written bytes
+	 */
+	public ByteBuffer getBuffer()
+	{
+		ByteBuffer contents = buffer.duplicate();
+		contents.flip();
+		return contents.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Discards everything written so far
+	 */
+	public void clear()
+	{
+		buffer.clear();
+	}
+
+	/**
+	 * Writes as many of the written bytes to a channel as it accepts and removes them from this output
+	 *
+	 * @param channel The channel to write to, which may be non-blocking
+	 * @return True if every byte has been written
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public boolean writeTo(WritableByteChannel channel) throws IOException
+	{
+		buffer.flip();
+		try
+		{
+			while (buffer.hasRemaining() && channel.write(buffer) > 0)
+			{
+				//Keep writing while the channel accepts bytes
+			}
+			return buffer.hasRemaining() == false;
+		}
+		finally
+		{
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Called when the buffer is full. The buffer is grown by default;
+	 * subclasses may send its contents away instead.
+	 *
+	 * @param needed The number of bytes that have to fit
+	 */
+	protected void makeRoom(int needed)
+	{
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+
+	/**
+	 * Gives subclasses access to the written bytes
+	 *
+	 * @return The buffer, in write mode
+	 */
+	protected ByteBuffer getWriteBuffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Encodes characters that are not ASCII
+	 */
+	private void encode(CharBuffer chars)
+	{
+		encoder.reset();
+		while (encoder.encode(chars, buffer, true).isOverflow())
+		{
+			makeRoom((int)Math.ceil(encoder.maxBytesPerChar()));
+		}
+		while (encoder.flush(buffer).isOverflow())
+		{
+			makeRoom((int)Math.ceil(encoder.maxBytesPerChar()));
+		}
+	}
+}
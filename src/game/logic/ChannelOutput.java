@@ -0,0 +1,70 @@
+package game.logic;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A buffered output to a blocking channel, such as the socket channel of a network session.
+ * Like StreamOutput, text collects in the buffer until flush is called, but the bytes are
+ * written to the channel directly, without the lock of a stream wrapped around it,
+ * so a virtual thread that waits for a slow client does not hold on to its carrier thread.
+ */
+public final class ChannelOutput extends ByteBufferOutput
+{
+	private final WritableByteChannel channel;
+	private boolean failed;
+
+	/**
+	 * Creates an output to the specified channel
+	 *
+	 * @param channel The channel to write to, which must be in blocking mode
+	 * @param bufferSize The size of the buffer in bytes
+	 */
+	public ChannelOutput(WritableByteChannel channel, int bufferSize)
+	{
+		super(bufferSize);
+		this.channel = channel;
+	}
+
+	/**
+	 * Writes the buffered text to the channel. Once the channel has failed, for example
+	 * because the client has disconnected, text is discarded.
+	 */
+	@Override
+	public void flush()
+	{
+		if (failed == false)
+		{
+			try
+			{
+				writeTo(channel);
+			}
+			catch (IOException ex)
+			{
+				failed = true;
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * @return True if writing to the channel has failed
+	 */
+	public boolean hasFailed()
+	{
+		return failed;
+	}
+
+	/**
+	 * Flushes the buffer when it is full, rather than growing it
+	 */
+	@Override
+	protected void makeRoom(int needed)
+	{
+		flush();
+		if (getWriteBuffer().remaining() < needed)
+		{
+			super.makeRoom(needed);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package game.logic;
+
+import game.GameSession;
+
+/**
+ * The action of an in-game command. A handler is registered together with
+ * its Command in a CommandRegistry and is only called with the right number of arguments.
+ * Handlers are shared by every session and keep no state of their own.
+ */
+public interface CommandHandler
+{
+	/**
+	 * Performs the command
+	 * 
+	 * @param session The game to perform the command in
+	 * @param commandTokens The tokenizer that holds the command name followed by its arguments
+	 */
+	void handle(GameSession session, CommandTokenizer commandTokens);
+}
@@ -0,0 +1,154 @@
+package game.logic;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads and parses input lines on a thread of its own, so that waiting for input and
+ * splitting it into commands overlap with the game logic and its output.
+ *
+ * Lines come from a fixed pool. The reader takes a free line, reads and parses it and queues it;
+ * the game thread takes queued lines in batches and gives each line back when it is done with it.
+ * When the game falls behind, the pool runs dry and the reader waits, so no more lines
+ * than the capacity of the pool are ever read ahead.
+ */
+final class CommandReader implements Runnable
+{
+	static final int DEFAULT_CAPACITY = 64;
+
+	private final GameInput input;
+	private final BlockingQueue<InputLine> freeLines;
+	private final BlockingQueue<InputLine> readLines;
+	private final ArrayDeque<InputLine> takenLines;
+	private final InputLine endOfInput = new InputLine();
+	private volatile boolean closed;
+	private Thread thread;
+	private long numberOfLinesTaken;
+
+	/**
+	 * Creates a reader that has not started reading yet
+	 *
+	 * @param input The input to read lines from
+	 * @param capacity The number of lines in the pool
+	 */
+	CommandReader(GameInput input, int capacity)
+	{
+		this.input = input;
+		freeLines = new ArrayBlockingQueue<InputLine>(capacity);
+		readLines = new ArrayBlockingQueue<InputLine>(capacity);
+		takenLines = new ArrayDeque<InputLine>(capacity);
+		endOfInput.setEndOfInput();
+		for (int i = 0; i < capacity; i++)
+		{
+			freeLines.add(new InputLine());
+		}
+	}
+
+	/**
+	 * Starts reading on a background thread
+	 */
+	void start()
+	{
+		thread = GameThreads.start(this, "command-reader");
+	}
+
+	/**
+	 * Stops reading and closes the input. Lines that have been queued are dropped.
+	 */
+	void close()
+	{
+		closed = true;
+		input.close();
+		if (thread != null)
+		{
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Reads lines into free lines from the pool and queues them, until the input ends
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			while (closed == false)
+			{
+				InputLine line = freeLines.take();
+				if (line.read(input) == false)
+				{
+					readLines.put(endOfInput);
+					return;
+				}
+				readLines.put(line);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			//The reader has been closed
+		}
+	}
+
+	/**
+	 * Takes the next line, waiting for it if necessary. All lines that are already
+	 * queued are taken at once, so the queue is locked once per batch rather than once per line.
+	 * Once the input has ended, every call returns a line marked as the end of the input.
+	 *
+	 * @return The next line, which must be given back with release
+	 */
+	InputLine take()
+	{
+		if (takenLines.isEmpty())
+		{
+			try
+			{
+				takenLines.add(readLines.take());
+				readLines.drainTo(takenLines);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				return endOfInput;
+			}
+		}
+
+		InputLine line = takenLines.peek();
+		if (line == endOfInput)
+		{
+			return line;
+		}
+		numberOfLinesTaken++;
+		return takenLines.poll();
+	}
+
+	/**
+	 * @return True if a line can be taken without waiting
+	 */
+	boolean hasLine()
+	{
+		return takenLines.isEmpty() == false || readLines.isEmpty() == false;
+	}
+
+	/**
+	 * Gives a line back to the pool, so that the reader can use it again
+	 *
+	 * @param line A line returned by take
+	 */
+	void release(InputLine line)
+	{
+		if (line != endOfInput)
+		{
+			freeLines.add(line);
+		}
+	}
+
+	/**
+	 * @return The number of lines taken so far, not counting the end of the input
+	 */
+	long getNumberOfLinesTaken()
+	{
+		return numberOfLinesTaken;
+	}
+}
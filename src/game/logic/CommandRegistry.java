@@ -0,0 +1,202 @@
+package game.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import game.models.Command;
+
+/**
+ * Maps command names to commands and their handlers, so that any input is
+ * resolved with one hash lookup no matter how many commands there are.
+ * Commands are listed in the order they were registered.
+ *
+ * The entries are kept in an open-addressing table together with the hash and length of
+ * their names, so that a token of a CommandTokenizer can be looked up without creating a String.
+ * Their names are also kept in a CommandTrie, which resolves abbreviations and lists completions.
+ */
+public final class CommandRegistry
+{
+	private static final int INITIAL_TABLE_SIZE = 32;
+
+	private Entry[] table = new Entry[INITIAL_TABLE_SIZE];
+	private final List<Command> commandsInOrder = new ArrayList<Command>();
+	private final CommandTrie commandTrie = new CommandTrie();
+
+	/**
+	 * Adds a command to the registry
+	 * 
+	 * @param command The command, whose identifier must not be registered yet
+	 * @param handler The action to perform when the command is used
+	 */
+	public void register(Command command, CommandHandler handler)
+	{
+		if (find(command.getCommandIdentifier()) != null)
+		{
+			throw new IllegalArgumentException("Command \'" + command.getCommandIdentifier() + "\' is already registered");
+		}
+		if (2 * (commandsInOrder.size() + 1) > table.length)
+		{
+			Entry[] oldTable = table;
+			table = new Entry[oldTable.length * 2];
+			for (Entry entry : oldTable)
+			{
+				if (entry != null)
+				{
+					insert(entry);
+				}
+			}
+		}
+		Entry entry = new Entry(command, handler);
+		insert(entry);
+		commandTrie.insert(entry);
+		commandsInOrder.add(command);
+	}
+
+	/**
+	 * @param commandIdentifier The name of a command
+	 * @return The registered command with that name and its handler, or null if there is none
+	 */
+	public Entry find(String commandIdentifier)
+	{
+		int mask = table.length - 1;
+		for (int slot = spread(commandIdentifier.hashCode()) & mask; table[slot] != null; slot = (slot + 1) & mask)
+		{
+			if (table[slot].identifier.equals(commandIdentifier))
+			{
+				return table[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Looks up a token of a command line without allocating
+	 *
+	 * @param tokenizer The tokenizer that holds the command line
+	 * @param token The index of the token with the name of the command
+	 * @return The registered command with that name and its handler, or null if there is none
+	 */
+	public Entry find(CommandTokenizer tokenizer, int token)
+	{
+		int hash = tokenizer.getTokenHash(token);
+		int length = tokenizer.getTokenLength(token);
+		int mask = table.length - 1;
+		for (int slot = spread(hash) & mask; table[slot] != null; slot = (slot + 1) & mask)
+		{
+			Entry entry = table[slot];
+			if (entry.hash == hash && entry.identifier.length() == length && tokenizer.tokenEquals(token, entry.identifier) == true)
+			{
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Looks up a token that may be an abbreviated command name, without allocating.
+	 * Full names always match their command and are found with one lookup in the hash table,
+	 * which is how commands are usually typed; only abbreviations walk the trie,
+	 * where they match the only command of the mode that starts with them.
+	 * 
+	 * @param tokenizer The tokenizer that holds the command line
+	 * @param token The index of the token with the name or abbreviation of the command
+	 * @param mode Command.MODE_EXPLORE, Command.MODE_BATTLE, or 0 for any mode
+	 * @return The command and its handler, or null if the token is unknown or ambiguous
+	 */
+	public Entry resolve(CommandTokenizer tokenizer, int token, int mode)
+	{
+		Entry exactMatch = find(tokenizer, token);
+		if (exactMatch != null)
+		{
+			return exactMatch;
+		}
+		return commandTrie.resolve(tokenizer, token, mode);
+	}
+
+	/**
+	 * @param tokenizer The tokenizer that holds the prefix
+	 * @param token The index of the token with the prefix
+	 * @param mode Command.MODE_EXPLORE, Command.MODE_BATTLE, or 0 for any mode
+	 * @return The commands of the mode whose names start with the prefix, in alphabetical order
+	 */
+	public List<Command> complete(CommandTokenizer tokenizer, int token, int mode)
+	{
+		List<Command> completions = new ArrayList<Command>();
+		commandTrie.complete(tokenizer, token, mode, completions);
+		return completions;
+	}
+
+	/**
+	 * @param modes A combination of Command.MODE_EXPLORE and Command.MODE_BATTLE
+	 * @return The commands available in any of the modes, in the order they were registered
+	 */
+	public List<Command> getCommands(int modes)
+	{
+		List<Command> available = new ArrayList<Command>();
+		for (Command command : commandsInOrder)
+		{
+			if (command.isAvailableIn(modes))
+			{
+				available.add(command);
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Puts an entry into the first free slot of its probe sequence
+	 */
+	private void insert(Entry entry)
+	{
+		int mask = table.length - 1;
+		int slot = spread(entry.hash) & mask;
+		while (table[slot] != null)
+		{
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = entry;
+	}
+
+	/**
+	 * @return The hash with its high bits mixed into the low bits that select a slot
+	 */
+	private static int spread(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * A registered command together with its handler
+	 */
+	public static final class Entry
+	{
+		private final Command command;
+		private final CommandHandler handler;
+		private final String identifier;
+		private final int hash;
+
+		private Entry(Command command, CommandHandler handler)
+		{
+			this.command = command;
+			this.handler = handler;
+			this.identifier = command.getCommandIdentifier();
+			this.hash = identifier.hashCode();
+		}
+
+		/**
+		 * @return The registered command
+		 */
+		public Command getCommand()
+		{
+			return command;
+		}
+
+		/**
+		 * @return The action of the command
+		 */
+		public CommandHandler getHandler()
+		{
+			return handler;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package game.logic;
+
+import java.util.Arrays;
+
+/**
+ * Splits command lines into tokens without allocating. The characters of a line are
+ * copied into a reusable buffer and folded to lower case in place, and each token is kept
+ * as a range of that buffer together with its hash, so that it can be matched against
+ * command names and read as a number without creating Strings.
+ *
+ * Lines are split like trim().toLowerCase().split(" "): leading and trailing whitespace is
+ * ignored, every single space separates two tokens, and a blank line has one empty token.
+ * A tokenizer holds one line at a time and is meant to be used by one thread.
+ */
+public final class CommandTokenizer
+{
+	private static final int INITIAL_CAPACITY = 128;
+	private static final int INITIAL_TOKENS = 8;
+
+	private char[] chars = new char[INITIAL_CAPACITY];
+	private int[] tokenStarts = new int[INITIAL_TOKENS];
+	private int[] tokenEnds = new int[INITIAL_TOKENS];
+	private int[] tokenHashes = new int[INITIAL_TOKENS];
+	private int numberOfTokens;
+
+	/**
+	 * Splits a line into tokens, replacing the previous line
+	 *
+	 * @param line The line to split
+	 * @return The number of tokens, at least 1
+	 */
+	public int tokenize(CharSequence line)
+	{
+		return tokenize(line, 0, line.length());
+	}
+
+	/**
+	 * Splits part of a line into tokens, replacing the previous line
+	 *
+	 * @param line The line that holds the part to split
+	 * @param start The index of the first character of the part
+	 * @param end The index after the last character of the part
+	 * @return The number of tokens, at least 1
+	 */
+	public int tokenize(CharSequence line, int start, int end)
+	{
+		if (start < 0 || start > end || end > line.length())
+		{
+			throw new IndexOutOfBoundsException("Range " + start + " to " + end + " of a line of length " + line.length());
+		}
+		while (start < end && line.charAt(start) <= ' ')
+		{
+			start++;
+		}
+		while (end > start && line.charAt(end - 1) <= ' ')
+		{
+			end--;
+		}
+
+		int length = end - start;
+		if (chars.length < length)
+		{
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+
+		numberOfTokens = 0;
+		int tokenStart = 0;
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = line.charAt(start + i);
+			if (c == ' ')
+			{
+				addToken(tokenStart, i, hash);
+				tokenStart = i + 1;
+				hash = 0;
+				continue;
+			}
+
+			if (c >= 'A' && c <= 'Z')
+			{
+				c += 'a' - 'A';
+			}
+			else if (c >= 0x80)
+			{
+				c = Character.toLowerCase(c);
+			}
+			chars[i] = c;
+			hash = 31 * hash + c;
+		}
+		addToken(tokenStart, length, hash);
+		return numberOfTokens;
+	}
+
+	/**
+	 * @return The number of tokens in the current line
+	 */
+	public int getNumberOfTokens()
+	{
+		return numberOfTokens;
+	}
+
+	/**
+	 * @param token The index of a token
+	 * @return The number of characters in the token
+	 */
+	public int getTokenLength(int token)
+	{
+		checkToken(token);
+		return tokenEnds[token] - tokenStarts[token];
+	}
+
+	/**
+	 * @param token The index of a token
+	 * @return The hash of the token, which equals the hashCode of the same text as a String
+	 */
+	public int getTokenHash(int token)
+	{
+		checkToken(token);
+		return tokenHashes[token];
+	}
+
+	/**
+	 * @param token The index of a token
+	 * @param index The position of a character in the token
+	 * @return The character, folded to lower case
+	 */
+	public char charAt(int token, int index)
+	{
+		checkToken(token);
+		if (index < 0 || index >= tokenEnds[token] - tokenStarts[token])
+		{
+			throw new IndexOutOfBoundsException("Character " + index + " of token " + token);
+		}
+		return chars[tokenStarts[token] + index];
+	}
+
+	/**
+	 * @param token The index of a token
+	 * @param text The text to compare with
+	 * @return True if the token consists of exactly the characters of the text
+	 */
+	public boolean tokenEquals(int token, String text)
+	{
+		checkToken(token);
+		int start = tokenStarts[token];
+		int length = tokenEnds[token] - start;
+		if (length != text.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (chars[start + i] != text.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a String with the text of a token. This allocates,
+	 * so it is meant for messages and arguments that are not known in advance.
+	 *
+	 * @param token The index of a token
+	 * @return The text of the token
+	 */
+	public String getToken(int token)
+	{
+		checkToken(token);
+		return new String(chars, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+	}
+
+	/**
+	 * Returns the text of a token, reusing a known String when the token equals one
+	 *
+	 * @param token The index of a token
+	 * @param knownTokens The expected values of the token
+	 * @return The known String that equals the token, or a new String if there is none
+	 */
+	public String getToken(int token, String[] knownTokens)
+	{
+		checkToken(token);
+		int hash = tokenHashes[token];
+		for (String knownToken : knownTokens)
+		{
+			if (knownToken.hashCode() == hash && tokenEquals(token, knownToken) == true)
+			{
+				return knownToken;
+			}
+		}
+		return getToken(token);
+	}
+
+	/**
+	 * Reads a token as a decimal integer, accepting what Integer.parseInt accepts
+	 *
+	 * @param token The index of a token
+	 * @return The value of the token
+	 * @throws NumberFormatException if the token is not a number in the range of int
+	 */
+	public int parseInt(int token)
+	{
+		checkToken(token);
+		int start = tokenStarts[token];
+		int end = tokenEnds[token];
+		boolean negative = false;
+		if (start < end && (chars[start] == '-' || chars[start] == '+'))
+		{
+			negative = chars[start] == '-';
+			start++;
+		}
+		if (start == end)
+		{
+			throw new NumberFormatException("For input string: \"" + getToken(token) + "\"");
+		}
+
+		//Accumulate negatively, so that Integer.MIN_VALUE can be read as well
+		long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+		long value = 0;
+		for (int i = start; i < end; i++)
+		{
+			int digit = Character.digit(chars[i], 10);
+			value = value * 10 - digit;
+			if (digit < 0 || value < limit)
+			{
+				throw new NumberFormatException("For input string: \"" + getToken(token) + "\"");
+			}
+		}
+		return (int)(negative ? value : -value);
+	}
+
+	/**
+	 * Records the token that ends before the specified position
+	 */
+	private void addToken(int start, int end, int hash)
+	{
+		if (numberOfTokens == tokenStarts.length)
+		{
+			int capacity = numberOfTokens * 2;
+			tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+			tokenEnds = Arrays.copyOf(tokenEnds, capacity);
+			tokenHashes = Arrays.copyOf(tokenHashes, capacity);
+		}
+		tokenStarts[numberOfTokens] = start;
+		tokenEnds[numberOfTokens] = end;
+		tokenHashes[numberOfTokens] = hash;
+		numberOfTokens++;
+	}
+
+	/**
+	 * @throws IndexOutOfBoundsException if the token does not exist
+	 */
+	private void checkToken(int token)
+	{
+		if (token < 0 || token >= numberOfTokens)
+		{
+			throw new IndexOutOfBoundsException("Token " + token + " of " + numberOfTokens);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package game.logic;
+
+import java.util.Arrays;
+import java.util.List;
+
+import game.models.Command;
+
+/**
+ * A prefix tree of command names, which resolves abbreviated commands and lists completions.
+ *
+ * Every node keeps its children in an array indexed by character, so following a prefix
+ * takes one step per character. Every node also counts the commands below it in each game mode
+ * and remembers one of them, so that a prefix that is unambiguous in the current mode is
+ * resolved as soon as its last node is reached.
+ */
+final class CommandTrie
+{
+	/** Slot of the per-mode counters that counts commands of every mode */
+	private static final int ANY_MODE = 0;
+	private static final int NUMBER_OF_MODE_SLOTS = 33 - Integer.numberOfLeadingZeros(Command.ALL_MODES);
+
+	private final Node root = new Node();
+
+	/**
+	 * Adds a command name to the tree
+	 *
+	 * @param entry The registered command, whose name must not be in the tree yet
+	 */
+	void insert(CommandRegistry.Entry entry)
+	{
+		Command command = entry.getCommand();
+		String identifier = command.getCommandIdentifier();
+
+		Node node = root;
+		node.count(entry);
+		for (int i = 0; i < identifier.length(); i++)
+		{
+			node = node.getOrAddChild(identifier.charAt(i));
+			node.count(entry);
+		}
+		node.terminal = entry;
+	}
+
+	/**
+	 * Resolves a token that is either the name of a command or an abbreviation of one.
+	 * A full name always resolves to its command. An abbreviation resolves to the only command
+	 * of the specified mode it abbreviates, or, if no command of that mode starts with it,
+	 * to the only command of any mode, so that the caller can say that it is not available.
+	 *
+	 * @param tokenizer The tokenizer that holds the command line
+	 * @param token The index of the token with the name of the command
+	 * @param mode Command.MODE_EXPLORE, Command.MODE_BATTLE, or 0 for any mode
+	 * @return The command, or null if the token is empty, unknown or ambiguous
+	 */
+	CommandRegistry.Entry resolve(CommandTokenizer tokenizer, int token, int mode)
+	{
+		Node node = walk(tokenizer, token);
+		if (node == null || node == root)
+		{
+			return null;
+		}
+		if (node.terminal != null)
+		{
+			return node.terminal;
+		}
+
+		int slot = getModeSlot(mode);
+		if (node.counts[slot] == 1)
+		{
+			return node.examples[slot];
+		}
+		if (node.counts[slot] == 0 && node.counts[ANY_MODE] == 1)
+		{
+			return node.examples[ANY_MODE];
+		}
+		return null;
+	}
+
+	/**
+	 * Collects the commands of a mode whose names start with a token, in alphabetical order
+	 *
+	 * @param tokenizer The tokenizer that holds the prefix
+	 * @param token The index of the token with the prefix
+	 * @param mode Command.MODE_EXPLORE, Command.MODE_BATTLE, or 0 for any mode
+	 * @param completions The list to add the commands to
+	 */
+	void complete(CommandTokenizer tokenizer, int token, int mode, List<Command> completions)
+	{
+		Node node = walk(tokenizer, token);
+		if (node != null)
+		{
+			collect(node, getModeSlot(mode), completions);
+		}
+	}
+
+	/**
+	 * Follows the characters of a token from the root
+	 *
+	 * @return The node of the token, or null if no command starts with it
+	 */
+	private Node walk(CommandTokenizer tokenizer, int token)
+	{
+		Node node = root;
+		int length = tokenizer.getTokenLength(token);
+		for (int i = 0; i < length && node != null; i++)
+		{
+			node = node.getChild(tokenizer.charAt(token, i));
+		}
+		return node;
+	}
+
+	/**
+	 * Adds the commands of a mode below a node, depth first and in character order
+	 */
+	private static void collect(Node node, int slot, List<Command> completions)
+	{
+		if (node.counts[slot] == 0)
+		{
+			return;
+		}
+		if (node.terminal != null && (slot == ANY_MODE || node.terminal.getCommand().isAvailableIn(1 << (slot - 1)) == true))
+		{
+			completions.add(node.terminal.getCommand());
+		}
+		if (node.children != null)
+		{
+			for (Node child : node.children)
+			{
+				if (child != null)
+				{
+					collect(child, slot, completions);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The counter slot of a mode
+	 */
+	private static int getModeSlot(int mode)
+	{
+		if (mode == 0)
+		{
+			return ANY_MODE;
+		}
+		int slot = Integer.numberOfTrailingZeros(mode) + 1;
+		if (Integer.bitCount(mode) != 1 || slot >= NUMBER_OF_MODE_SLOTS)
+		{
+			throw new IllegalArgumentException("Not a single game mode: " + mode);
+		}
+		return slot;
+	}
+
+	/**
+	 * A node of the tree, reached by the characters of a prefix
+	 */
+	private static final class Node
+	{
+		private char firstChild;
+		private Node[] children;
+		private CommandRegistry.Entry terminal;
+		private final int[] counts = new int[NUMBER_OF_MODE_SLOTS];
+		private final CommandRegistry.Entry[] examples = new CommandRegistry.Entry[NUMBER_OF_MODE_SLOTS];
+
+		/**
+		 * @return The child reached by the character, or null if there is none
+		 */
+		private Node getChild(char c)
+		{
+			int index = c - firstChild;
+			return (children != null && index >= 0 && index < children.length) ? children[index] : null;
+		}
+
+		/**
+		 * @return The child reached by the character, which is created if necessary
+		 */
+		private Node getOrAddChild(char c)
+		{
+			if (children == null)
+			{
+				firstChild = c;
+				children = new Node[1];
+			}
+			else if (c < firstChild)
+			{
+				Node[] grown = new Node[children.length + (firstChild - c)];
+				System.arraycopy(children, 0, grown, firstChild - c, children.length);
+				children = grown;
+				firstChild = c;
+			}
+			else if (c - firstChild >= children.length)
+			{
+				children = Arrays.copyOf(children, c - firstChild + 1);
+			}
+
+			int index = c - firstChild;
+			if (children[index] == null)
+			{
+				children[index] = new Node();
+			}
+			return children[index];
+		}
+
+		/**
+		 * Counts a command whose name passes through this node
+		 */
+		private void count(CommandRegistry.Entry entry)
+		{
+			for (int slot = 0; slot < NUMBER_OF_MODE_SLOTS; slot++)
+			{
+				if (slot == ANY_MODE || entry.getCommand().isAvailableIn(1 << (slot - 1)) == true)
+				{
+					counts[slot]++;
+					examples[slot] = entry;
+				}
+			}
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package game.logic;
 
 import game.AdventureGame;
+import game.GameSession;
 import game.models.Command;
+import game.models.Player;
 import game.logic.Printing;
 
-import java.util.Scanner;
+import java.util.List;
 
 /**
  * This class provides the basic infrastructre for services related to command processing.
@@ -15,231 +17,394 @@ import java.util.Scanner;
 public class CommandUtilities 
 {
 	//=====In-game commands=====
-	private final static Command commandHelp = new Command(0, "help",         "HELP            displays available commands in the current context");
-	private final static Command commandRoomInfo = new Command(0, "roominfo", "ROOMINFO        displays information about the current room");
-	private final static Command commandSelfInfo = new Command(0, "selfinfo", "SELFINFO        displays your current health, possessions and room number");
-	private final static Command commandOpen = new Command(1, "open",         "OPEN n          open the door labeled n and enter the room");
-	private final static Command commandPickup = new Command(1, "pickup",     "PICKUP item     pick up an item in the room");
-	private final static Command commandSearch = new Command(0, "search",     "SEARCH          search the room to find the exit");
-	private final static Command commandRest = new Command(0, "rest",         "REST            have a rest and restore your health");
-	private final static Command commandAttack = new Command(0, "attack",     "ATTACK          hit the monster in the room");
-	private final static Command commandRun = new Command(0, "run",           "RUN             run away from the monster going through a randomly selected door");
-	private final static Command commandIgnore = new Command(0, "ignore",     "IGNORE          stand still and wait to see if the monster leaves you in peace");
+	private final static Command commandHelp = new Command(0, "help",         "HELP            displays available commands in the current context", Command.ALL_MODES);
+	private final static Command commandRoomInfo = new Command(0, "roominfo", "ROOMINFO        displays information about the current room", Command.MODE_EXPLORE);
+	private final static Command commandSelfInfo = new Command(0, "selfinfo", "SELFINFO        displays your current health, possessions and room number", Command.MODE_EXPLORE);
+	private final static Command commandOpen = new Command(1, "open",         "OPEN n          open the door labeled n and enter the room", Command.MODE_EXPLORE);
+	private final static Command commandPickup = new Command(1, "pickup",     "PICKUP item     pick up an item in the room", Command.MODE_EXPLORE);
+	private final static Command commandSearch = new Command(0, "search",     "SEARCH          search the room to find the exit", Command.MODE_EXPLORE);
+	private final static Command commandRest = new Command(0, "rest",         "REST            have a rest and restore your health", Command.MODE_EXPLORE);
+	private final static Command commandAttack = new Command(0, "attack",     "ATTACK          hit the monster in the room", Command.MODE_BATTLE);
+	private final static Command commandRun = new Command(0, "run",           "RUN             run away from the monster going through a randomly selected door", Command.MODE_BATTLE);
+	private final static Command commandIgnore = new Command(0, "ignore",     "IGNORE          stand still and wait to see if the monster leaves you in peace", Command.MODE_BATTLE);
+	private final static Command commandRoute = new Command(1, "route",       "ROUTE place     show the doors to the exit, the nearest silver or the nearest weapon", Command.MODE_EXPLORE);
+	private final static Command commandComplete = new Command(1, "complete", "COMPLETE text   lists the available commands that start with text", Command.ALL_MODES);
 	//=========================
 	
-	private final static Command[] availableExploreCommands = new Command[]{commandOpen, commandPickup, commandSearch, commandRoomInfo, commandSelfInfo, commandRest, commandHelp};
-	private final static Command[] availableBattleCommands = new Command[]{commandAttack, commandRun, commandIgnore, commandHelp};
+	private final static CommandRegistry commandRegistry = new CommandRegistry();
+	private final static String[] knownArguments = { Player.IN_GAME_CURRENCY, Player.KEYBOARD, Player.GLASSES, Player.SWORD, Player.SHIELD,
+			AdventureGame.ROUTE_TO_EXIT, AdventureGame.ROUTE_TO_WEAPON };
 	
-	private final static Command[] availableInGameCommands = new Command[]{commandOpen, commandPickup, commandSearch, commandAttack, commandRun, commandIgnore, commandRoomInfo, commandSelfInfo, commandRest, commandHelp};
+	static
+	{
+		registerCommand(commandOpen, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				try
+				{
+					int roomToOpen = commandTokens.parseInt(1);
+					session.setPlayerPosition(roomToOpen);
+				}
+				catch (Exception ex)
+				{
+					session.getOutput().println("Invalid argument \'" + commandTokens.getToken(1) + "\' for command \'" + commandOpen.getCommandIdentifier() + "\'.");
+				}
+			}
+		});
+		registerCommand(commandPickup, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.pickupItem(commandTokens.getToken(1, knownArguments));
+			}
+		});
+		registerCommand(commandSearch, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.searchForExit();
+			}
+		});
+		registerCommand(commandRoute, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.showRoute(commandTokens.getToken(1, knownArguments));
+			}
+		});
+		registerCommand(commandAttack, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.attackMonster();
+			}
+		});
+		registerCommand(commandRun, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.runAway();
+			}
+		});
+		registerCommand(commandIgnore, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.ignoreMonster();
+			}
+		});
+		registerCommand(commandRoomInfo, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.displayRoomInfo();
+			}
+		});
+		registerCommand(commandSelfInfo, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.displaySelfInfo();
+			}
+		});
+		registerCommand(commandRest, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				session.haveRest();
+			}
+		});
+		registerCommand(commandHelp, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				displayAvailableCommands(session.getOutput(), commandRegistry.getCommands(getModeMask(session.getGameMode())));
+			}
+		});
+		registerCommand(commandComplete, new CommandHandler()
+		{
+			@Override
+			public void handle(GameSession session, CommandTokenizer commandTokens)
+			{
+				List<Command> completions = commandRegistry.complete(commandTokens, 1, getModeMask(session.getGameMode()));
+				if (completions.isEmpty())
+				{
+					session.getOutput().println("No available command starts with \'" + commandTokens.getToken(1) + "\'.");
+				}
+				else
+				{
+					displayAvailableCommands(session.getOutput(), completions);
+				}
+			}
+		});
+	}
 	
 	/**
-	 * This method asks the user to type in a command and validates and processes the input.
-	 * Because the game cannot progress any further if the command is invalid, the user is queried until
-	 * a valid command is provided. The game mode parameter ensures that 
-	 * the player cannot use commands that are unavailable in the current context.
+	 * This method takes the next line the user has typed and handles it, waiting for the line if necessary.
+	 * The prompt for the line has already been printed by the session.
+	 * 
+	 * Lines are read and split into tokens ahead of time by a CommandReader, and output is only flushed
+	 * when no line is ready, so the output of all the lines that arrived together is sent at once.
 	 * 
-	 * @param gameMode The mode of game that the player is currently in.
+	 * @param session The game to read a line for and handle it in
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void getCommandFromUser(String gameMode)
+	public static void getCommandFromUser(GameSession session)
 	{
-		Scanner commandScanner = new Scanner(System.in);
-		
-		System.out.print("Command? ");
-		String[] userCommandTokens = commandScanner.nextLine().trim().toLowerCase().split(" ");
-		
-		Command matchingCommand = null;
-		if (browseCommandCollection(userCommandTokens, availableInGameCommands) == null)
+		SessionInput input = session.getInput();
+		InputLine line = input.takeLine(session.getOutput());
+		try
 		{
-			System.out.println("\'" + userCommandTokens[0] + "\' is not a valid in-game command!");
-			return;
+			handleInputLine(session, line);
 		}
-		else if (gameMode.equals(AdventureGame.EXPLORE_MODE))
-		{
-			matchingCommand = browseCommandCollection(userCommandTokens, availableExploreCommands);
-		}
-		else if (gameMode.equals(AdventureGame.BATTLE_MODE))
+		finally
 		{
-			matchingCommand = browseCommandCollection(userCommandTokens, availableBattleCommands);
-		}
-		
-		if (matchingCommand == null)
-		{
-			System.out.println("Command \'" + userCommandTokens[0] + "\' is not available at the moment." );
-		}
-		else if (matchingCommand.numberOfArgsEquals(userCommandTokens, true) == true)
-		{
-			processCommand(userCommandTokens, gameMode);
+			input.release(line);
 		}
 	}
 	
 	/**
-	 * There are cases in the game where the user must choose an item,
-	 * action or an option from the selection menu. The number of options
-	 * may be different and this method allows to get a valid user choice,
-	 * as an integer, from any number of options available.
+	 * Handles a line that has been read elsewhere, such as by the event loop of a non-blocking server.
+	 * Nothing waits for input here: the line drives the session one step, and the
+	 * session prints the prompt for the next line unless the game has ended.
 	 * 
-	 * @param numberOfOptions The number of options available for the
-	 * user to choose from
-	 * @param queryPhrase A string value that will be used to 
-	 * query the user until a valid option is chosen
-	 * @return An integer corresponding to a valid option, chosen
-	 * by the user
-	 * @author Nikolai Kolbenev 15897074
+	 * @param session The game the line is for
+	 * @param text The text of the line, without its line terminator
+	 */
+	public static void handleLine(GameSession session, CharSequence text)
+	{
+		handleInputLine(session, session.getInput().setLine(text));
+	}
+	
+	/**
+	 * Handles one line of input according to what the session waits for.
+	 * While a menu is open, the line must hold the number of an option; the user is asked again
+	 * until a valid option is chosen. Otherwise, the line holds commands. Because the game cannot
+	 * progress any further if a command is invalid, the user is queried until a valid command is provided.
+	 * The game mode of the session ensures that the player cannot use commands
+	 * that are unavailable in the current context. A command may be abbreviated to any prefix
+	 * that only one command of the current mode starts with.
+	 * 
+	 * Several commands may be given on one line, separated by InputLine.COMMAND_SEPARATOR. They are performed
+	 * in order, each in the game mode left by the previous one, until the line ends or the game does.
+	 * If a command opens a menu, the commands after it are performed once the menu has been answered.
+	 * 
+	 * @param session The game the line is for
+	 * @param line The line, or the end of the input, which ends the game
 	 */
-	public static int getSelectionFromUser(int numberOfOptions, String queryPhrase)
+	private static void handleInputLine(GameSession session, InputLine line)
 	{
-		if (numberOfOptions < 1)
+		if (line.isEndOfInput() == true)
 		{
-			return 0;
+			session.endGame();
+			return;
 		}
 		
-		int selectedOption = 0;
-		
-		Scanner scan = new Scanner(System.in);
-		boolean optionSelected = false;
-		while (optionSelected == false)
+		int numberOfOptions = session.getNumberOfOptions();
+		if (numberOfOptions > 0)
 		{
-			System.out.print(queryPhrase);
-			String userChoice = scan.nextLine().trim();
-			
-			try
+			int selectedOption = parseSelection(session, line.getText(), numberOfOptions);
+			if (selectedOption == 0)
 			{
-				selectedOption = Integer.parseInt(userChoice);
-				if (selectedOption > 0 && selectedOption <= numberOfOptions)
-				{
-					optionSelected = true;
-				}
-			}
-			catch (Exception ex)
-			{
-				//Do nothing...
+				session.getOutput().println("Invalid input. Please enter a number between 1 and " + numberOfOptions + " inclusive.");
 			}
-			
-			if (optionSelected == false)
+			else
 			{
-				System.out.println("Invalid input. Please enter a number between 1 and " + numberOfOptions + " inclusive.");
+				session.selectOption(selectedOption);
+				if (session.getNumberOfOptions() == 0 && session.isGameOver() == false)
+				{
+					InputLine pendingCommands = session.getInput().takePendingCommands();
+					if (pendingCommands != null)
+					{
+						performCommands(session, pendingCommands);
+					}
+				}
 			}
 		}
+		else
+		{
+			performCommands(session, line);
+		}
 		
-		return selectedOption;
+		if (session.isGameOver() == false)
+		{
+			session.printPrompt();
+		}
 	}
 	
 	/**
-	 * Checks whether the name of a command (the first element of commandTokens array) 
-	 * matches the name of any command in the specified command collection and returns that
-	 * particular Command object with the same name. A command collection is usually a collection
-	 * of all in-game commands, all battle-mode commands or all explore-mode commands.
-	 * The method checks if command is available in the current context
+	 * Performs the commands of a line, until the line ends, the game ends or a command opens a menu
 	 * 
-	 * @param commandTokens An array of string values, or command tokens, such as the command name and arguments.
-	 * @param commandCollection An array of Command objects that will be searched for 
-	 * a particular command name
-	 * @return The Command object with the same name as the 
-	 * first element of commandTokens parameter
-	 * @author Nikolai Kolbenev 15897074
+	 * @param session The game to perform the commands in
+	 * @param line The commands
 	 */
-	private static Command browseCommandCollection(String[] commandTokens, Command[] commandCollection)
+	private static void performCommands(GameSession session, InputLine line)
 	{
-		Command matchingCommand = null;
-		
-		for (int i = 0; i < commandCollection.length; i++)
+		for (int c = 0; c < line.getNumberOfCommands(); c++)
 		{
-			if (commandCollection[i].matches(commandTokens[0]))
+			performCommand(session, line.getCommand(c));
+			if (session.isGameOver() == true)
+			{
+				return;
+			}
+			if (session.getNumberOfOptions() > 0)
 			{
-				matchingCommand = commandCollection[i];
-				break;
+				if (c + 1 < line.getNumberOfCommands())
+				{
+					session.getInput().keepCommands(line, c + 1);
+				}
+				return;
 			}
 		}
-		
-		return matchingCommand;
 	}
 	
 	/**
-	 * Allows to call AdventureGame class methods that correspond
-	 * to a particular command. The command is identified and a matching 
-	 * method is called from AdventureGame class. 
-	 * Not all commands require a method from the AdventureGame class!
+	 * Validates and performs a single command in the current game mode of the session
 	 * 
-	 * @param commandTokens An array of string values, or command tokens, such as the command name and arguments.
-	 * @param gameMode The mode of game that the player is currently in.
-	 * @author Nikolai Kolbenev 15897074
+	 * @param session The game to perform the command in
+	 * @param commandTokens The tokens of the command
 	 */
-	private static void processCommand(String[] commandTokens, String gameMode)
+	private static void performCommand(GameSession session, CommandTokenizer commandTokens)
 	{
-		if (commandTokens[0].equals(commandOpen.getCommandIdentifier()))
+		GameOutput output = session.getOutput();
+		int numberOfTokens = commandTokens.getNumberOfTokens();
+		
+		int modeMask = getModeMask(session.getGameMode());
+		CommandRegistry.Entry matchingEntry = commandRegistry.resolve(commandTokens, 0, modeMask);
+		if (matchingEntry == null)
 		{
-			try
+			List<Command> completions = commandRegistry.complete(commandTokens, 0, modeMask);
+			if (completions.size() > 1 && commandTokens.getTokenLength(0) > 0)
 			{
-				int roomToOpen = Integer.parseInt(commandTokens[1]);
-				AdventureGame.setPlayerPosition(roomToOpen);
+				output.println("\'" + commandTokens.getToken(0) + "\' is ambiguous. It may stand for " + listCommandNames(completions) + ".");
 			}
-			catch (Exception ex)
+			else
 			{
-				System.out.println("Invalid argument \'" + commandTokens[1] + "\' for command \'" + commandTokens[0] + "\'.");
+				output.println("\'" + commandTokens.getToken(0) + "\' is not a valid in-game command!");
 			}
 		}
-		else if (commandTokens[0].equals(commandPickup.getCommandIdentifier()))
-		{
-			AdventureGame.pickupItem(commandTokens[1]);
-		}
-		else if (commandTokens[0].equals(commandSearch.getCommandIdentifier()))
-		{
-			AdventureGame.searchForExit();
-		}
-		else if (commandTokens[0].equals(commandHelp.getCommandIdentifier()))
+		else if (matchingEntry.getCommand().isAvailableIn(modeMask) == false)
 		{
-			if (gameMode.equals(AdventureGame.EXPLORE_MODE))
-			{
-				displayAvailableCommands(availableExploreCommands);
-			}
-			else if (gameMode.equals(AdventureGame.BATTLE_MODE))
-			{
-				displayAvailableCommands(availableBattleCommands);
-			}
+			output.println("Command \'" + matchingEntry.getCommand().getCommandIdentifier() + "\' is not available at the moment." );
 		}
-		else if (commandTokens[0].equals(commandRoomInfo.getCommandIdentifier()))
+		else if (matchingEntry.getCommand().numberOfArgsEquals(numberOfTokens, output) == true)
 		{
-			AdventureGame.displayRoomInfo();
+			matchingEntry.getHandler().handle(session, commandTokens);
 		}
-		else if (commandTokens[0].equals(commandSelfInfo.getCommandIdentifier()))
+	}
+	
+	/**
+	 * Adds a command to the game. The command becomes available in the
+	 * game modes it specifies and is listed by the help command.
+	 * Commands are shared by every session, so they should be added before any session starts.
+	 * 
+	 * @param command The command, whose identifier must not be used by another command
+	 * @param handler The action to perform when the command is used
+	 */
+	public static void registerCommand(Command command, CommandHandler handler)
+	{
+		commandRegistry.register(command, handler);
+	}
+	
+	/**
+	 * @param gameMode AdventureGame.EXPLORE_MODE or AdventureGame.BATTLE_MODE
+	 * @return The Command mode bit of the specified game mode
+	 */
+	private static int getModeMask(String gameMode)
+	{
+		if (gameMode.equals(AdventureGame.BATTLE_MODE))
 		{
-			AdventureGame.displaySelfInfo();
+			return Command.MODE_BATTLE;
 		}
-		else if (commandTokens[0].equals(commandRest.getCommandIdentifier()))
+		else if (gameMode.equals(AdventureGame.EXPLORE_MODE))
 		{
-			AdventureGame.haveRest();
+			return Command.MODE_EXPLORE;
 		}
-		else if (commandTokens[0].equals(commandAttack.getCommandIdentifier()))
+		return 0;
+	}
+	
+	/**
+	 * There are cases in the game where the user must choose an item,
+	 * action or an option from the selection menu. The number of options
+	 * may be different and this method reads a valid user choice,
+	 * as an integer, from any number of options available.
+	 * 
+	 * @param session The game whose user chooses
+	 * @param text The line the user has typed
+	 * @param numberOfOptions The number of options available for the
+	 * user to choose from
+	 * @return An integer corresponding to a valid option, chosen
+	 * by the user, or 0 if the line does not hold one
+	 * @author Nikolai Kolbenev 15897074
+	 */
+	private static int parseSelection(GameSession session, CharSequence text, int numberOfOptions)
+	{
+		CommandTokenizer selectionTokenizer = session.getInput().getSelectionTokenizer();
+		try
 		{
-			AdventureGame.attackMonster();
+			if (selectionTokenizer.tokenize(text) == 1)
+			{
+				int selectedOption = selectionTokenizer.parseInt(0);
+				if (selectedOption > 0 && selectedOption <= numberOfOptions)
+				{
+					return selectedOption;
+				}
+			}
 		}
-		else if (commandTokens[0].equals(commandRun.getCommandIdentifier()))
+		catch (NumberFormatException ex)
 		{
-			AdventureGame.runAway();
+			//Do nothing...
 		}
-		else if (commandTokens[0].equals(commandIgnore.getCommandIdentifier()))
+		return 0;
+	}
+	
+	/**
+	 * @param commands The commands to list
+	 * @return The names of the commands, separated by commas and "or"
+	 */
+	private static String listCommandNames(List<Command> commands)
+	{
+		StringBuilder names = new StringBuilder();
+		for (int i = 0; i < commands.size(); i++)
 		{
-			AdventureGame.ignoreMonster();
+			if (i > 0)
+			{
+				names.append((i == commands.size() - 1) ? " or " : ", ");
+			}
+			names.append('\'').append(commands.get(i).getCommandIdentifier()).append('\'');
 		}
+		return names.toString();
 	}
-
+	
 	/**
 	 * Displayes all commands in the specified command collection.
 	 * A command collection is usually a collection
 	 * of all in-game commands, all battle-mode commands or all explore-mode commands.
 	 * 
+	 * @param output The output to print to
 	 * @param commandCollection A collection of Command objects
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	private static void displayAvailableCommands(Command[] commandCollection)
+	private static void displayAvailableCommands(GameOutput output, List<Command> commandCollection)
 	{
-		Printing.printSeparator();
-		System.out.println("At the moment, the following commands are available:");
-		for (int i = 0; i < commandCollection.length; i++)
+		Printing.printSeparator(output);
+		output.println("At the moment, the following commands are available:");
+		for (int i = 0; i < commandCollection.size(); i++)
 		{
-			System.out.println(commandCollection[i].getCommandDescription());
+			output.println(commandCollection.get(i).getCommandDescription());
 		}
-		System.out.println();
+		output.println();
 	}
 }
@@ -0,0 +1,185 @@
+package game.logic;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Formats the numbers shown in the game: rounded health and damage points, percentages and currency.
+ * The text is the same as that of DecimalFormat("0"), NumberFormat.getPercentInstance() and
+ * DecimalFormat("$0") in the default locale, including half-even rounding and "-0" for small negative
+ * numbers, but it is appended to a StringBuilder supplied by the caller.
+ *
+ * Unlike the format objects, the methods keep no state, so they can be called from any number of
+ * threads at once, and they allocate nothing beyond what the StringBuilder needs to grow.
+ * The symbols of the locale are read once, when the class is loaded.
+ */
+public final class Formatting
+{
+	private static final String CURRENCY_SYMBOL = "$";
+	private static final double FIRST_INEXACT_VALUE = 1L << 53;
+
+	private static final DecimalFormatSymbols SYMBOLS = DecimalFormatSymbols.getInstance();
+	private static final char ZERO_DIGIT = SYMBOLS.getZeroDigit();
+	private static final char GROUPING_SEPARATOR = SYMBOLS.getGroupingSeparator();
+	private static final String NAN = SYMBOLS.getNaN();
+	private static final String INFINITY = SYMBOLS.getInfinity();
+	private static final String MINUS = new DecimalFormat("0").getNegativePrefix();
+
+	private static final DecimalFormat PERCENT = (DecimalFormat)NumberFormat.getPercentInstance();
+	private static final String PERCENT_POSITIVE_PREFIX = PERCENT.getPositivePrefix();
+	private static final String PERCENT_POSITIVE_SUFFIX = PERCENT.getPositiveSuffix();
+	private static final String PERCENT_NEGATIVE_PREFIX = PERCENT.getNegativePrefix();
+	private static final String PERCENT_NEGATIVE_SUFFIX = PERCENT.getNegativeSuffix();
+	private static final int PERCENT_MULTIPLIER = PERCENT.getMultiplier();
+	private static final int PERCENT_GROUPING_SIZE = PERCENT.isGroupingUsed() ? PERCENT.getGroupingSize() : 0;
+
+	/**
+	 * Prevents instantiation
+	 */
+	private Formatting()
+	{
+	}
+
+	/**
+	 * Appends a number rounded to a whole number, like DecimalFormat("0"), for example 749.5 as "750"
+	 *
+	 * @param text The text to append to
+	 * @param value The number
+	 * @return The text
+	 */
+	public static StringBuilder appendRounded(StringBuilder text, double value)
+	{
+		return appendNumber(text, value, MINUS, "", "", "", 0);
+	}
+
+	/**
+	 * Appends a fraction as a rounded percentage, like NumberFormat.getPercentInstance(), for example 0.125 as "12%"
+	 *
+	 * @param text The text to append to
+	 * @param fraction The fraction, 1 being 100%
+	 * @return The text
+	 */
+	public static StringBuilder appendPercent(StringBuilder text, double fraction)
+	{
+		return appendNumber(text, fraction * PERCENT_MULTIPLIER, PERCENT_NEGATIVE_PREFIX, PERCENT_NEGATIVE_SUFFIX,
+				PERCENT_POSITIVE_PREFIX, PERCENT_POSITIVE_SUFFIX, PERCENT_GROUPING_SIZE);
+	}
+
+	/**
+	 * Appends an amount of currency, like DecimalFormat("$0"), for example 1000 as "$1000"
+	 *
+	 * @param text The text to append to
+	 * @param amount The amount
+	 * @return The text
+	 */
+	public static StringBuilder appendCurrency(StringBuilder text, long amount)
+	{
+		if (amount < 0)
+		{
+			text.append(MINUS).append(CURRENCY_SYMBOL);
+			if (amount == Long.MIN_VALUE)
+			{
+				return appendDigits(text, Long.toString(amount).substring(1), 0);
+			}
+			return appendDigits(text, -amount, 0);
+		}
+		text.append(CURRENCY_SYMBOL);
+		return appendDigits(text, amount, 0);
+	}
+
+	/**
+	 * @param amount An amount of currency
+	 * @return The amount as appendCurrency writes it
+	 */
+	public static String formatCurrency(long amount)
+	{
+		return appendCurrency(new StringBuilder(), amount).toString();
+	}
+
+	/**
+	 * Appends a number rounded half-even to a whole number, with the prefix and suffix of its sign.
+	 * Like DecimalFormat, negative numbers that round to zero keep their sign.
+	 */
+	private static StringBuilder appendNumber(StringBuilder text, double value, String negativePrefix, String negativeSuffix,
+			String positivePrefix, String positiveSuffix, int groupingSize)
+	{
+		if (Double.isNaN(value))
+		{
+			return text.append(NAN);
+		}
+
+		boolean negative = Double.doubleToRawLongBits(value) < 0;
+		text.append(negative ? negativePrefix : positivePrefix);
+		double magnitude = Math.abs(value);
+		if (Double.isInfinite(magnitude))
+		{
+			text.append(INFINITY);
+		}
+		else
+		{
+			double rounded = Math.rint(magnitude);
+			if (rounded < FIRST_INEXACT_VALUE)
+			{
+				appendDigits(text, (long)rounded, groupingSize);
+			}
+			else
+			{
+				//Beyond 2^53, DecimalFormat shows the shortest digits that identify the double, padded with zeros
+				appendDigits(text, new BigDecimal(Double.toString(rounded)).toBigInteger().toString(), groupingSize);
+			}
+		}
+		return text.append(negative ? negativeSuffix : positiveSuffix);
+	}
+
+	/**
+	 * Appends the digits of a number that is not negative
+	 *
+	 * @param groupingSize The number of digits between grouping separators, or 0 for none
+	 */
+	private static StringBuilder appendDigits(StringBuilder text, long value, int groupingSize)
+	{
+		int numberOfDigits = 1;
+		long divisor = 1;
+		while (value / divisor >= 10)
+		{
+			divisor *= 10;
+			numberOfDigits++;
+		}
+
+		for (int remaining = numberOfDigits; remaining > 0; remaining--)
+		{
+			text.append((char)(ZERO_DIGIT + (value / divisor) % 10));
+			appendGroupingSeparator(text, remaining, groupingSize);
+			divisor /= 10;
+		}
+		return text;
+	}
+
+	/**
+	 * Appends decimal digits given as ASCII text, in the digits of the locale
+	 *
+	 * @param groupingSize The number of digits between grouping separators, or 0 for none
+	 */
+	private static StringBuilder appendDigits(StringBuilder text, String digits, int groupingSize)
+	{
+		for (int i = 0; i < digits.length(); i++)
+		{
+			text.append((char)(ZERO_DIGIT + digits.charAt(i) - '0'));
+			appendGroupingSeparator(text, digits.length() - i, groupingSize);
+		}
+		return text;
+	}
+
+	/**
+	 * Appends a grouping separator if one follows the digit with the specified number of digits left including itself
+	 */
+	private static void appendGroupingSeparator(StringBuilder text, int remainingDigits, int groupingSize)
+	{
+		if (groupingSize > 0 && remainingDigits > 1 && (remainingDigits - 1) % groupingSize == 0)
+		{
+			text.append(GROUPING_SEPARATOR);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package game.logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A source of input lines for the game, read from any NIO channel through one large buffer.
+ * Unlike a new Scanner per prompt, nothing that has been read ahead is ever lost, so input
+ * can be piped in any amount. Lines are decoded as UTF-8 into a caller's StringBuilder,
+ * so reading a line allocates nothing.
+ *
+ * Lines may end with "\n", "\r\n" or "\r". The channel must be in blocking mode,
+ * and a GameInput is meant to be used by one thread.
+ */
+public final class GameInput
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset INPUT_CHARSET = Charset.forName("UTF-8");
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	private boolean endOfInput;
+	private boolean skipLineFeed;
+	private long numberOfLinesRead;
+
+	private ByteBuffer lineBytes = ByteBuffer.allocate(256);
+	private final CharBuffer lineChars = CharBuffer.allocate(256);
+	private final CharsetDecoder decoder = INPUT_CHARSET.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * Creates an input that reads from the specified channel, for example a file or socket channel
+	 *
+	 * @param channel The channel to read from
+	 */
+	public GameInput(ReadableByteChannel channel)
+	{
+		this(channel, BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates an input with a read buffer of a chosen size. Network sessions use small
+	 * buffers, since players type far less than a buffer holds and there may be thousands of them.
+	 *
+	 * @param channel The channel to read from
+	 * @param bufferSize The size of the read buffer in bytes
+	 */
+	public GameInput(ReadableByteChannel channel, int bufferSize)
+	{
+		this.channel = channel;
+		buffer = ByteBuffer.allocate(bufferSize);
+		buffer.flip();
+	}
+
+	/**
+	 * @param stream The stream to read from, such as System.in
+	 * @return An input that reads from the stream
+	 */
+	public static GameInput fromStream(InputStream stream)
+	{
+		return new GameInput(Channels.newChannel(stream));
+	}
+
+	/**
+	 * @param filePath The path to a file with one input line per line
+	 * @return An input that reads from the file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static GameInput fromFile(String filePath) throws IOException
+	{
+		return new GameInput(new FileInputStream(filePath).getChannel());
+	}
+
+	/**
+	 * @param bytes The UTF-8 text to read
+	 * @return An input that reads the specified bytes
+	 */
+	public static GameInput fromBytes(byte[] bytes)
+	{
+		return fromStream(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Reads the next line, without its line terminator
+	 *
+	 * @param line The builder to write the line to; it is cleared first
+	 * @return True if a line was read, false if the input has ended
+	 */
+	public boolean readLine(StringBuilder line)
+	{
+		line.setLength(0);
+		lineBytes.clear();
+
+		while (true)
+		{
+			if (buffer.hasRemaining() == false && fill() == false)
+			{
+				break;
+			}
+
+			byte b = buffer.get();
+			if (skipLineFeed == true)
+			{
+				skipLineFeed = false;
+				if (b == '\n')
+				{
+					continue;
+				}
+			}
+
+			if (b == '\n')
+			{
+				decodeLine(line);
+				numberOfLinesRead++;
+				return true;
+			}
+			if (b == '\r')
+			{
+				skipLineFeed = true;
+				decodeLine(line);
+				numberOfLinesRead++;
+				return true;
+			}
+			appendByte(b);
+		}
+
+		if (lineBytes.position() > 0)
+		{
+			decodeLine(line);
+			numberOfLinesRead++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next line, without its line terminator
+	 *
+	 * @return The line, or null if the input has ended
+	 */
+	public String readLine()
+	{
+		StringBuilder line = new StringBuilder();
+		return (readLine(line) == true) ? line.toString() : null;
+	}
+
+	/**
+	 * @return True if the end of the input has been reached and everything before it has been read
+	 */
+	public boolean isAtEnd()
+	{
+		return endOfInput == true && buffer.hasRemaining() == false;
+	}
+
+	/**
+	 * @return The number of lines read so far
+	 */
+	public long getNumberOfLinesRead()
+	{
+		return numberOfLinesRead;
+	}
+
+	/**
+	 * Closes the underlying channel
+	 */
+	public void close()
+	{
+		try
+		{
+			channel.close();
+		}
+		catch (IOException ex)
+		{
+			//Nothing more can be read either way
+		}
+	}
+
+	/**
+	 * Reads more bytes from the channel into the empty buffer
+	 *
+	 * @return False if the end of the input has been reached
+	 */
+	private boolean fill()
+	{
+		if (endOfInput == true)
+		{
+			return false;
+		}
+
+		buffer.clear();
+		try
+		{
+			int read = 0;
+			while (read == 0)
+			{
+				read = channel.read(buffer);
+			}
+			if (read < 0)
+			{
+				endOfInput = true;
+			}
+		}
+		catch (IOException ex)
+		{
+			endOfInput = true;
+		}
+		buffer.flip();
+		return buffer.hasRemaining();
+	}
+
+	/**
+	 * Adds a byte to the current line
+	 */
+	private void appendByte(byte b)
+	{
+		if (lineBytes.hasRemaining() == false)
+		{
+			ByteBuffer larger = ByteBuffer.allocate(lineBytes.capacity() * 2);
+			lineBytes.flip();
+			larger.put(lineBytes);
+			lineBytes = larger;
+		}
+		lineBytes.put(b);
+	}
+
+	/**
+	 * Decodes the bytes of the current line into the specified builder
+	 */
+	private void decodeLine(StringBuilder line)
+	{
+		lineBytes.flip();
+
+		//Plain ASCII needs no decoder
+		boolean ascii = true;
+		for (int i = 0; i < lineBytes.limit() && ascii == true; i++)
+		{
+			ascii = lineBytes.get(i) >= 0;
+		}
+		if (ascii == true)
+		{
+			for (int i = 0; i < lineBytes.limit(); i++)
+			{
+				line.append((char)lineBytes.get(i));
+			}
+			return;
+		}
+
+		decoder.reset();
+		while (true)
+		{
+			lineChars.clear();
+			boolean done = decoder.decode(lineBytes, lineChars, true).isUnderflow();
+			if (done == true)
+			{
+				decoder.flush(lineChars);
+			}
+			lineChars.flip();
+			line.append(lineChars);
+			if (done == true)
+			{
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package game.logic;
+
+/**
+ * The destination of everything the game prints. The game writes its text to a GameOutput
+ * instead of System.out, so that the text can be buffered and flushed once per command,
+ * thrown away in simulations or collected in a buffer for a network session.
+ *
+ * Implementations are not thread safe; each game writes to an output of its own.
+ */
+public interface GameOutput
+{
+	/**
+	 * Writes text without a line separator
+	 *
+	 * @param text The text to write
+	 */
+	void print(CharSequence text);
+
+	/**
+	 * Writes text followed by a line separator
+	 *
+	 * @param text The text to write
+	 */
+	void println(CharSequence text);
+
+	/**
+	 * Writes a line separator
+	 */
+	void println();
+
+	/**
+	 * Sends everything written so far to its destination
+	 */
+	void flush();
+}
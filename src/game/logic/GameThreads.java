@@ -0,0 +1,72 @@
+package game.logic;
+
+import java.lang.reflect.Method;
+
+/**
+ * Starts the background threads of the game. On Java 21 and later, threads are virtual,
+ * so that a thread blocked on input costs no more than a small object; on older versions,
+ * they are daemon platform threads. Either way, they never keep the program running.
+ */
+public final class GameThreads
+{
+	private static final Method START_VIRTUAL_THREAD = findStartVirtualThread();
+
+	/**
+	 * Prevents instantiation
+	 */
+	private GameThreads()
+	{
+	}
+
+	/**
+	 * Starts a thread
+	 *
+	 * @param task The work of the thread
+	 * @param name The name of the thread
+	 * @return The started thread
+	 */
+	public static Thread start(Runnable task, String name)
+	{
+		if (START_VIRTUAL_THREAD != null)
+		{
+			try
+			{
+				Thread thread = (Thread)START_VIRTUAL_THREAD.invoke(null, task);
+				thread.setName(name);
+				return thread;
+			}
+			catch (ReflectiveOperationException ex)
+			{
+				//Fall back to a platform thread
+			}
+		}
+
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * @return True if threads are started as virtual threads
+	 */
+	public static boolean isVirtual()
+	{
+		return START_VIRTUAL_THREAD != null;
+	}
+
+	/**
+	 * @return Thread.startVirtualThread, or null if this Java version has no virtual threads
+	 */
+	private static Method findStartVirtualThread()
+	{
+		try
+		{
+			return Thread.class.getMethod("startVirtualThread", Runnable.class);
+		}
+		catch (NoSuchMethodException ex)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package game.logic;
+
+import java.util.Arrays;
+
+/**
+ * A line of input together with the commands it holds, already split into tokens.
+ * Lines are reused by a CommandReader, so that reading and parsing allocate nothing
+ * once the pool of lines has been created. A line can also be set from text that has
+ * been read elsewhere, for example by the event loop of a server.
+ *
+ * Several commands may be given on one line, separated by COMMAND_SEPARATOR.
+ * Empty commands between separators are skipped, but a line without separators
+ * always holds one command, even if it is blank.
+ */
+final class InputLine
+{
+	static final char COMMAND_SEPARATOR = ';';
+
+	private final StringBuilder text = new StringBuilder();
+	private CommandTokenizer[] commands = { new CommandTokenizer() };
+	private int[] commandStarts = new int[1];
+	private int numberOfCommands;
+	private boolean endOfInput;
+
+	/**
+	 * Reads the next line and splits it into commands
+	 *
+	 * @param input The input to read from
+	 * @return False if the input has ended
+	 */
+	boolean read(GameInput input)
+	{
+		numberOfCommands = 0;
+		endOfInput = input.readLine(text) == false;
+		if (endOfInput == true)
+		{
+			return false;
+		}
+		split();
+		return true;
+	}
+
+	/**
+	 * Replaces this line with the specified text and splits it into commands
+	 *
+	 * @param line The text of the line, without its line terminator
+	 */
+	void set(CharSequence line)
+	{
+		text.setLength(0);
+		text.append(line);
+		endOfInput = false;
+		split();
+	}
+
+	/**
+	 * Splits the text into commands
+	 */
+	private void split()
+	{
+		numberOfCommands = 0;
+		int commandStart = 0;
+		int lineLength = text.length();
+		while (commandStart <= lineLength)
+		{
+			int commandEnd = commandStart;
+			while (commandEnd < lineLength && text.charAt(commandEnd) != COMMAND_SEPARATOR)
+			{
+				commandEnd++;
+			}
+
+			boolean pipelined = commandStart > 0 || commandEnd < lineLength;
+			if (pipelined == false || isBlank(commandStart, commandEnd) == false)
+			{
+				if (numberOfCommands == commands.length)
+				{
+					commands = Arrays.copyOf(commands, numberOfCommands * 2);
+					commandStarts = Arrays.copyOf(commandStarts, numberOfCommands * 2);
+				}
+				if (commands[numberOfCommands] == null)
+				{
+					commands[numberOfCommands] = new CommandTokenizer();
+				}
+				commandStarts[numberOfCommands] = commandStart;
+				commands[numberOfCommands++].tokenize(text, commandStart, commandEnd);
+			}
+			commandStart = commandEnd + 1;
+		}
+	}
+
+	/**
+	 * Marks this line as the end of the input
+	 */
+	void setEndOfInput()
+	{
+		text.setLength(0);
+		numberOfCommands = 0;
+		endOfInput = true;
+	}
+
+	/**
+	 * @return True if there was no line to read because the input has ended
+	 */
+	boolean isEndOfInput()
+	{
+		return endOfInput;
+	}
+
+	/**
+	 * @return The text of the line, without its line terminator
+	 */
+	CharSequence getText()
+	{
+		return text;
+	}
+
+	/**
+	 * @return The number of commands on the line
+	 */
+	int getNumberOfCommands()
+	{
+		return numberOfCommands;
+	}
+
+	/**
+	 * @param command The index of a command on the line
+	 * @return The tokens of the command
+	 */
+	CommandTokenizer getCommand(int command)
+	{
+		if (command < 0 || command >= numberOfCommands)
+		{
+			throw new IndexOutOfBoundsException("Command " + command + " of " + numberOfCommands);
+		}
+		return commands[command];
+	}
+
+	/**
+	 * @param command The index of a command on the line
+	 * @return The position in the text where the command starts
+	 */
+	int getCommandStart(int command)
+	{
+		getCommand(command);
+		return commandStarts[command];
+	}
+
+	/**
+	 * @return True if the specified part of the line holds nothing but whitespace
+	 */
+	private boolean isBlank(int start, int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			if (text.charAt(i) > ' ')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,49 @@
+package game.logic;
+
+/**
+ * An output that discards everything, for simulations and load tests
+ * where only the outcome of the game matters.
+ */
+public final class NullOutput implements GameOutput
+{
+	public static final NullOutput INSTANCE = new NullOutput();
+
+	/**
+	 * Use INSTANCE instead
+	 */
+	private NullOutput()
+	{
+	}
+
+	/**
+	 * Discards the text
+	 */
+	@Override
+	public void print(CharSequence text)
+	{
+	}
+
+	/**
+	 * Discards the text
+	 */
+	@Override
+	public void println(CharSequence text)
+	{
+	}
+
+	/**
+	 * Does nothing
+	 */
+	@Override
+	public void println()
+	{
+	}
+
+	/**
+	 * Does nothing
+	 */
+	@Override
+	public void flush()
+	{
+	}
+}
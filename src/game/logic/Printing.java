@@ -1,26 +1,23 @@
 package game.logic;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-
 import game.AdventureGame;
 import game.data.MapData;
+import game.data.RoomItems;
+import game.data.RoomLayout;
 import game.models.Player;
 import game.models.Monster;
 
 /**
  * This class offers a bunch of methods that print
- * data to stdout in a variety of formats. The formats are accessible from outside
- * of this class. All methods tend to be called mostly from the AventureGame class
+ * data to a GameOutput in a variety of formats. Numbers are formatted with the Formatting class.
+ * All methods tend to be called mostly from the AventureGame class
  * 
  * @author Nikolai Kolbenev 15897074
  */
 
 public class Printing 
 {
-	public static final NumberFormat PERCENT_FORMAT = NumberFormat.getPercentInstance();
-	public static final DecimalFormat CURRENCY_FORMAT = new DecimalFormat("$0");
-	public static final DecimalFormat HEALTH_FORMAT = new DecimalFormat("0");
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 	
 	/**
 	 * 
@@ -28,58 +25,89 @@ public class Printing
 	 * and the presence of a monster. This method is called each time
 	 * the player enters a new room.
 	 * 
+	 * The description, doors and items are taken from the cache,
+	 * as they stay the same until an item is taken or dropped in the room.
+	 * 
+	 * @param output The output to print to
+	 * @param cache The rendered rooms of the game
 	 * @param roomIndex The room to display information for
 	 * @param mapData The MapData object that contains
 	 * necessary information about rooms, connections and items
 	 * @param playerData The Player object that will
 	 * take part in displaying some of the attributes
+	 * @param gameMode The mode of the game, which is AdventureGame.BATTLE_MODE if a monster is in the room
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printRoomInformation(int roomIndex, MapData mapData, Player playerData)
+	public static void printRoomInformation(GameOutput output, RoomInfoCache cache, int roomIndex, MapData mapData, Player playerData, String gameMode)
 	{
-		printRoomDescription(roomIndex, mapData);
-		printConnectedDoors(roomIndex, mapData);
-		printRoomItems(roomIndex, mapData, playerData.getPlayerClass());
-		printPlayerHealth(playerData);
+		output.print(cache.getRoomInformation(roomIndex, mapData, playerData.getPlayerClass()));
+		printPlayerHealth(output, playerData);
 		
-		if (AdventureGame.getGameMode() == AdventureGame.BATTLE_MODE)
+		if (gameMode == AdventureGame.BATTLE_MODE)
 		{
-			printMonsterAction();
+			printMonsterAction(output);
 		}
 	}
 	
 	/**
 	 * Prints description of the specified room
 	 * 
+	 * @param output The output to print to
 	 * @param roomIndex The room to display information for
 	 * @param mapData The MapData object containing
 	 * room descriptions for printing
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printRoomDescription(int roomIndex, MapData mapData)
+	public static void printRoomDescription(GameOutput output, int roomIndex, MapData mapData)
 	{
-		System.out.println(mapData.roomDescriptions[roomIndex]);
+		output.println(mapData.getRoomDescription(roomIndex));
+	}
+	
+	/**
+	 * Appends the line printed by printRoomDescription
+	 * 
+	 * @param text The text to append to
+	 * @param roomIndex The room to describe
+	 * @param mapData The MapData object containing room descriptions
+	 */
+	static void appendRoomDescription(StringBuilder text, int roomIndex, MapData mapData)
+	{
+		text.append(mapData.getRoomDescription(roomIndex)).append(LINE_SEPARATOR);
 	}
 	
 	/**
 	 * Prints the number of each room which is adjacent to
 	 * the room with the specified number.
 	 * 
+	 * @param output The output to print to
 	 * @param roomIndex The room to display information for
 	 * @param mapData The MapData object containing
 	 * room layout for printing
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printConnectedDoors(int roomIndex, MapData mapData)
+	public static void printConnectedDoors(GameOutput output, int roomIndex, MapData mapData)
+	{
+		StringBuilder info = new StringBuilder();
+		appendConnectedDoors(info, roomIndex, mapData);
+		output.print(info);
+	}
+	
+	/**
+	 * Appends the line printed by printConnectedDoors
+	 * 
+	 * @param text The text to append to
+	 * @param roomIndex The room whose doors to list
+	 * @param mapData The MapData object containing the room layout
+	 */
+	static void appendConnectedDoors(StringBuilder text, int roomIndex, MapData mapData)
 	{
-		int[][] roomLayout = mapData.roomLayout;
-		String info = (roomLayout[roomIndex].length == 1) ? "There is a door labeled with the number " : "There are doors labeled with numbers ";
-		for(int i = 0; i < roomLayout[roomIndex].length; i++)
+		RoomLayout roomLayout = mapData.getRoomLayout();
+		text.append((roomLayout.getNumberOfDoors(roomIndex) == 1) ? "There is a door labeled with the number " : "There are doors labeled with numbers ");
+		for(int d = roomLayout.getFirstDoorPosition(roomIndex); d < roomLayout.getEndDoorPosition(roomIndex); d++)
 		{
-			info += " "+roomLayout[roomIndex][i];
+			text.append(' ').append(roomLayout.getDoorAt(d));
 		}
-
-		System.out.println(info);
+		text.append(LINE_SEPARATOR);
 	}
 	
 	/**
@@ -87,6 +115,7 @@ public class Printing
 	 *  Item names may appear differently in game, depending on the class
 	 *  of player
 	 * 
+	 * @param output The output to print to
 	 * @param roomIndex The room to display information for
 	 * @param mapData The MapData object containing
 	 * room details for printing
@@ -94,114 +123,168 @@ public class Printing
 	 * the player's class
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printRoomItems(int roomIndex, MapData mapData, String playerClass)
+	public static void printRoomItems(GameOutput output, int roomIndex, MapData mapData, String playerClass)
 	{
-		if (mapData.currencyInRooms[roomIndex] > 0)
+		StringBuilder items = new StringBuilder();
+		appendRoomItems(items, roomIndex, mapData, playerClass);
+		output.print(items);
+	}
+	
+	/**
+	 * Appends the lines printed by printRoomItems
+	 * 
+	 * @param text The text to append to
+	 * @param roomIndex The room whose items to list
+	 * @param mapData The MapData object containing the room items
+	 * @param playerClass The player's class, which decides the names of the items
+	 */
+	static void appendRoomItems(StringBuilder text, int roomIndex, MapData mapData, String playerClass)
+	{
+		RoomItems roomItems = mapData.getRoomItems();
+		int currency = roomItems.getCurrency(roomIndex);
+		if (currency > 0)
 		{
-			System.out.println("There is " + CURRENCY_FORMAT.format(mapData.currencyInRooms[roomIndex]) + " of " + Player.IN_GAME_CURRENCY + " on the floor in front of you.");
+			text.append("There is ");
+			Formatting.appendCurrency(text, currency).append(" of ").append(Player.IN_GAME_CURRENCY).append(" on the floor in front of you.").append(LINE_SEPARATOR);
 		}
 		
-		if (mapData.roomsWithPrimaryWeapon[roomIndex] == true)
+		if (roomItems.hasPrimaryWeapon(roomIndex) == true)
 		{
 			if (playerClass == Player.CLASS_PROGRAMMER)
 			{
-				System.out.println("There is a " + Player.KEYBOARD + " on the floor in front of you.");
+				text.append("There is a ").append(Player.KEYBOARD).append(" on the floor in front of you.").append(LINE_SEPARATOR);
 			}
 			else if (playerClass == Player.CLASS_WARRIOR)
 			{
-				System.out.println("There is a " + Player.SWORD + " on the floor in front of you.");
+				text.append("There is a ").append(Player.SWORD).append(" on the floor in front of you.").append(LINE_SEPARATOR);
 			}
 		}
 		
-		if (mapData.roomsWithSecondaryWeapon[roomIndex] == true)
+		if (roomItems.hasSecondaryWeapon(roomIndex) == true)
 		{
 			if (playerClass == Player.CLASS_PROGRAMMER)
 			{
-				System.out.println("There are " + Player.GLASSES + " on the floor in front of you.");
+				text.append("There are ").append(Player.GLASSES).append(" on the floor in front of you.").append(LINE_SEPARATOR);
 			}
 			else if (playerClass == Player.CLASS_WARRIOR)
 			{
-				System.out.println("There is a " + Player.SHIELD + " on the floor in front of you.");
+				text.append("There is a ").append(Player.SHIELD).append(" on the floor in front of you.").append(LINE_SEPARATOR);
+			}
+		}
+	}
+	
+	/**
+	 * Prints the doors to go through to reach a destination
+	 * 
+	 * @param output The output to print to
+	 * @param targetName The name of the destination as it should appear in the text
+	 * @param route The door numbers in the order they should be opened,
+	 * or null if the destination cannot be reached
+	 */
+	public static void printRoute(GameOutput output, String targetName, int[] route)
+	{
+		if (route == null)
+		{
+			output.println("There is no way to reach " + targetName + " from here.");
+		}
+		else if (route.length == 0)
+		{
+			output.println("You are already in the room with " + targetName + ".");
+		}
+		else
+		{
+			StringBuilder info = new StringBuilder(64 + targetName.length() + route.length * 8);
+			info.append("The shortest way to ").append(targetName).append(" is ").append(route.length)
+					.append((route.length == 1) ? " door" : " doors").append(" away. Open doors");
+			for (int i = 0; i < route.length; i++)
+			{
+				info.append(' ').append(route[i]);
 			}
+			output.println(info);
 		}
 	}
 	
 	/**
 	 * Prints what monster does when it attacks
 	 * 
+	 * @param output The output to print to
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printMonsterAction()
+	public static void printMonsterAction(GameOutput output)
 	{
-		System.out.println("\nA monster rushes towards you!");
-		System.out.println("Prepare for battle!");
+		output.println("\nA monster rushes towards you!");
+		output.println("Prepare for battle!");
 	}
 	
 	/**
 	 * Prints the health status of the player
 	 * 
+	 * @param output The output to print to
 	 * @param playerData The Player object containing its health status
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printPlayerHealth(Player playerData)
+	public static void printPlayerHealth(GameOutput output, Player playerData)
 	{
-		System.out.println("Your health status: " + playerData.getHealthStatus());
+		output.println(playerData.appendHealthStatus(new StringBuilder("Your health status: ")));
 	}
 	
 	/**
 	 * Prints the health status of the monster
 	 * 
+	 * @param output The output to print to
 	 * @param monsterData The Monster object with its health status
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printMonsterHealth(Monster monsterData)
+	public static void printMonsterHealth(GameOutput output, Monster monsterData)
 	{
-		System.out.println("Monster's health status: " + monsterData.getHealthStatus());
+		output.println(monsterData.appendHealthStatus(new StringBuilder("Monster's health status: ")));
 	}
 	
 	/**
 	 * Prints a separator to separate distinct events or
 	 * outputs in the console
 	 * 
+	 * @param output The output to print to
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printSeparator()
+	public static void printSeparator(GameOutput output)
 	{
-		System.out.println("-------------------------------------------------------------");
+		output.println("-------------------------------------------------------------");
 	}
 	
 	/**
 	 * Prints information about the player, in particular
 	 * the health status, location and possessions
 	 * 
+	 * @param output The output to print to
 	 * @param playerData The Player object containing
 	 * attributes for printing
 	 * @author Nikolai Kolbenev 15897074
 	 */
-	public static void printPlayerInfo(Player playerData)
+	public static void printPlayerInfo(GameOutput output, Player playerData)
 	{
-		printSeparator();
-		printPlayerHealth(playerData);
+		printSeparator(output);
+		printPlayerHealth(output, playerData);
 		
-		String possessions = "You have:";
+		StringBuilder possessions = new StringBuilder("You have:");
 		
-		possessions += " ";
-		possessions += CURRENCY_FORMAT.format(playerData.getCurrencyInPossession()) + " " + Player.IN_GAME_CURRENCY;
+		possessions.append(' ');
+		Formatting.appendCurrency(possessions, playerData.getCurrencyInPossession()).append(' ').append(Player.IN_GAME_CURRENCY);
 		
 		if (playerData.getHasPrimaryWeapon())
 		{
-			possessions += ", ";
-			possessions += (playerData.getPlayerClass() == Player.CLASS_PROGRAMMER) ? Player.KEYBOARD : Player.SWORD;
+			possessions.append(", ");
+			possessions.append((playerData.getPlayerClass() == Player.CLASS_PROGRAMMER) ? Player.KEYBOARD : Player.SWORD);
 
 		}
 		if (playerData.getHasSecondaryWeapon())
 		{
-			possessions += ", ";
-			possessions += (playerData.getPlayerClass() == Player.CLASS_PROGRAMMER) ? Player.GLASSES : Player.SHIELD;
+			possessions.append(", ");
+			possessions.append((playerData.getPlayerClass() == Player.CLASS_PROGRAMMER) ? Player.GLASSES : Player.SHIELD);
 		}
 
-		possessions += "\nYou are in room " + playerData.getRoomNumber();
+		possessions.append("\nYou are in room ").append(playerData.getRoomNumber());
 		
-		System.out.println(possessions + "\n");
+		output.println(possessions.append('\n'));
 	}
 }
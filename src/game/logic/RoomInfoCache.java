@@ -0,0 +1,106 @@
+package game.logic;
+
+import java.util.Arrays;
+
+import game.data.MapData;
+import game.data.RoomItems;
+import game.data.RoomLayout;
+
+/**
+ * Keeps the rendered description, doors and items of recently shown rooms, so that showing
+ * a room again, for example a hub with hundreds of doors, costs a lookup instead of a rendering.
+ *
+ * The cache is direct-mapped: each room has one slot, shared with the rooms whose indexes
+ * are equal modulo the number of slots. There is a slot for every room of small maps and
+ * MAXIMUM_SLOTS for larger ones, which is plenty for the rooms around a player and keeps the
+ * cache small enough for a server with thousands of sessions. A slot is reused while the version of the items of its room
+ * is unchanged (see RoomItems.getVersion) and the player class is the same. Everything is dropped
+ * when the map, its layout or its items are replaced, and on clear, which the game calls
+ * whenever the map file changes, since that may change descriptions in place.
+ *
+ * A cache belongs to one game and must not be used by several threads at once.
+ */
+public final class RoomInfoCache
+{
+	private static final int MAXIMUM_SLOTS = 64;
+
+	private int[] roomIndexes;
+	private int[] versions;
+	private String[] playerClasses;
+	private String[] texts;
+	private final StringBuilder builder = new StringBuilder();
+	private MapData mapData;
+	private RoomLayout roomLayout;
+	private RoomItems roomItems;
+
+	/**
+	 * Drops every cached room
+	 */
+	public void clear()
+	{
+		if (texts != null)
+		{
+			Arrays.fill(texts, null);
+			Arrays.fill(playerClasses, null);
+		}
+		mapData = null;
+		roomLayout = null;
+		roomItems = null;
+	}
+
+	/**
+	 * Returns the description, doors and items of a room as printed by Printing.printRoomDescription,
+	 * printConnectedDoors and printRoomItems, rendering them only if the cached text is out of date
+	 *
+	 * @param roomIndex The room number minus one
+	 * @param mapData The map the room is in
+	 * @param playerClass The class of the player, which decides the names of the items
+	 * @return The text, ending with a line separator
+	 */
+	public String getRoomInformation(int roomIndex, MapData mapData, String playerClass)
+	{
+		RoomItems items = mapData.getRoomItems();
+		if (mapData != this.mapData || mapData.getRoomLayout() != roomLayout || items != roomItems)
+		{
+			clear();
+			allocateSlots(mapData.numberOfRooms);
+			this.mapData = mapData;
+			roomLayout = mapData.getRoomLayout();
+			roomItems = items;
+		}
+
+		int slot = roomIndex & (texts.length - 1);
+		int version = items.getVersion(roomIndex);
+		if (texts[slot] != null && roomIndexes[slot] == roomIndex && versions[slot] == version && playerClasses[slot] == playerClass)
+		{
+			return texts[slot];
+		}
+
+		builder.setLength(0);
+		Printing.appendRoomDescription(builder, roomIndex, mapData);
+		Printing.appendConnectedDoors(builder, roomIndex, mapData);
+		Printing.appendRoomItems(builder, roomIndex, mapData, playerClass);
+		String text = builder.toString();
+
+		roomIndexes[slot] = roomIndex;
+		versions[slot] = version;
+		playerClasses[slot] = playerClass;
+		texts[slot] = text;
+		return text;
+	}
+
+	/**
+	 * Makes sure there are as many slots as the map has rooms, up to MAXIMUM_SLOTS
+	 */
+	private void allocateSlots(int numberOfRooms)
+	{
+		int numberOfSlots = Math.min(MAXIMUM_SLOTS, Integer.highestOneBit(Math.max(numberOfRooms - 1, 1)) << 1);
+		if (texts == null || texts.length < numberOfSlots)
+		{
+			roomIndexes = new int[numberOfSlots];
+			versions = new int[numberOfSlots];
+			playerClasses = new String[numberOfSlots];
+			texts = new String[numberOfSlots];
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package game.logic;
+
+import game.data.MapData;
+import game.data.ReverseLayout;
+import game.data.RoomLayout;
+
+/**
+ * This class answers shortest route questions on a map: how many doors away
+ * the exit, the nearest currency or the nearest weapon is, and which doors lead there.
+ *
+ * Distances are found with a breadth-first search over the reversed doors of the map, from all
+ * rooms that hold the target at once. The reversed doors and the distances to the exit depend only on
+ * the map, so they are kept by its RoomLayout and shared by all route finders. Distances to items are kept
+ * by each route finder until invalidateItems is called or, in a shared world, the item epoch of the map changes.
+ * After that, a query costs one array read for a distance and one scan of the doors per step for a route.
+ */
+public class RouteFinder
+{
+	public static final int TARGET_EXIT = 0;
+	public static final int TARGET_CURRENCY = 1;
+	public static final int TARGET_WEAPON = 2;
+	private static final int NUMBER_OF_TARGETS = 3;
+
+	public static final int UNREACHABLE = ReverseLayout.UNREACHABLE;
+
+	private final MapData mapData;
+	private final RoomLayout roomLayout;
+	private final ReverseLayout reverseLayout;
+
+	private final int[][] distances = new int[NUMBER_OF_TARGETS][];
+	private final boolean[] upToDate = new boolean[NUMBER_OF_TARGETS];
+	private long itemEpoch;
+	private int[] queue;
+
+	/**
+	 * Prepares to answer questions about a map. Nothing is computed until the first question.
+	 *
+	 * @param mapData The MapData object to answer questions about
+	 */
+	public RouteFinder(MapData mapData)
+	{
+		this.mapData = mapData;
+		this.roomLayout = mapData.getRoomLayout();
+		this.reverseLayout = roomLayout.getReverseLayout();
+		this.itemEpoch = mapData.getSharedItemEpoch();
+	}
+
+	/**
+	 * Marks distances to currency and weapons as outdated. Must be called
+	 * whenever an item is picked up or dropped. In a shared world, changes made by
+	 * other games are noticed through the item epoch of the map without this call.
+	 */
+	public void invalidateItems()
+	{
+		upToDate[TARGET_CURRENCY] = false;
+		upToDate[TARGET_WEAPON] = false;
+	}
+
+	/**
+	 * @param roomNumber The room to start from
+	 * @param target One of TARGET_EXIT, TARGET_CURRENCY and TARGET_WEAPON
+	 * @return The number of doors to go through to reach the nearest room with the target,
+	 * or UNREACHABLE if there is no way to reach it
+	 */
+	public int getDistance(int roomNumber, int target)
+	{
+		return getDistances(target)[roomNumber - 1];
+	}
+
+	/**
+	 * Writes the shortest sequence of doors from a room to the nearest room with the target
+	 * into the specified array
+	 *
+	 * @param roomNumber The room to start from
+	 * @param target One of TARGET_EXIT, TARGET_CURRENCY and TARGET_WEAPON
+	 * @param route An array to write door numbers to, with at least getDistance(roomNumber, target) elements
+	 * @return The number of doors written, or UNREACHABLE if there is no way to reach the target
+	 */
+	public int findRoute(int roomNumber, int target, int[] route)
+	{
+		int[] distance = getDistances(target);
+		int room = roomNumber - 1;
+		if (distance[room] == UNREACHABLE)
+		{
+			return UNREACHABLE;
+		}
+
+		int length = distance[room];
+		for (int step = 0; step < length; step++)
+		{
+			for (int d = roomLayout.getFirstDoorPosition(room); d < roomLayout.getEndDoorPosition(room); d++)
+			{
+				int next = roomLayout.getDoorAt(d) - 1;
+				if (next >= 0 && next < distance.length && distance[next] == distance[room] - 1)
+				{
+					route[step] = next + 1;
+					room = next;
+					break;
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @param roomNumber The room to start from
+	 * @param target One of TARGET_EXIT, TARGET_CURRENCY and TARGET_WEAPON
+	 * @return The shortest sequence of doors to the nearest room with the target,
+	 * or null if there is no way to reach it
+	 */
+	public int[] findRoute(int roomNumber, int target)
+	{
+		int length = getDistance(roomNumber, target);
+		if (length == UNREACHABLE)
+		{
+			return null;
+		}
+
+		int[] route = new int[length];
+		findRoute(roomNumber, target, route);
+		return route;
+	}
+
+	/**
+	 * Returns the distances to the target, computing them first if they are outdated
+	 */
+	private int[] getDistances(int target)
+	{
+		if (target == TARGET_EXIT)
+		{
+			return reverseLayout.getDistancesTo(mapData.exitRoomNumber - 1);
+		}
+
+		//The epoch is read before the items, so a change made while the distances are computed is noticed next time
+		long epoch = mapData.getSharedItemEpoch();
+		if (epoch != itemEpoch)
+		{
+			invalidateItems();
+			itemEpoch = epoch;
+		}
+
+		if (upToDate[target] == false)
+		{
+			if (distances[target] == null)
+			{
+				distances[target] = new int[mapData.numberOfRooms];
+			}
+			if (queue == null)
+			{
+				queue = new int[mapData.numberOfRooms];
+			}
+			int numberOfSources = 0;
+			for (int room = nextTarget(0, target); room != -1; room = nextTarget(room + 1, target))
+			{
+				queue[numberOfSources++] = room;
+			}
+			reverseLayout.computeDistances(queue, numberOfSources, distances[target]);
+			upToDate[target] = true;
+		}
+		return distances[target];
+	}
+
+	/**
+	 * @param fromIndex The index of the first room to look at
+	 * @param target TARGET_CURRENCY or TARGET_WEAPON
+	 * @return The index of the first room at or after fromIndex that holds the target, or -1 if there is none
+	 */
+	private int nextTarget(int fromIndex, int target)
+	{
+		switch (target)
+		{
+			case TARGET_CURRENCY:
+				return mapData.getRoomItems().nextRoomWithCurrency(fromIndex);
+			case TARGET_WEAPON:
+				return mapData.getRoomItems().nextRoomWithWeapon(fromIndex);
+			default:
+				return -1;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package game.logic;
+
+/**
+ * The input of one game session: the source of its lines, the CommandReader that reads
+ * them ahead of the game, which is started on first use, and the tokenizer for menu choices.
+ *
+ * A session of a non-blocking server has no source; its lines are pushed in with
+ * CommandUtilities.handleLine and parsed into a line kept here. The commands that follow
+ * a command that opened a menu, on the same line, are kept here too until the menu is answered.
+ */
+public final class SessionInput
+{
+	private final GameInput input;
+	private final int readAhead;
+	private final CommandTokenizer selectionTokenizer = new CommandTokenizer();
+	private CommandReader commandReader;
+	private InputLine pushedLine;
+	private InputLine pendingCommands;
+	private boolean hasPendingCommands;
+
+	/**
+	 * Creates the input of a session
+	 *
+	 * @param input The source of commands and choices, for example GameInput.fromStream(System.in),
+	 * or null if lines are pushed in with CommandUtilities.handleLine
+	 */
+	public SessionInput(GameInput input)
+	{
+		this(input, CommandReader.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates the input of a session that reads a limited number of lines ahead.
+	 * Each line read ahead keeps its own buffers, so sessions of a server read few lines ahead.
+	 *
+	 * @param input The source of commands and choices
+	 * @param readAhead The largest number of lines read before the game takes them, at least 1
+	 */
+	public SessionInput(GameInput input, int readAhead)
+	{
+		this.input = input;
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Takes the next line. If the line has not arrived yet, the output is flushed first,
+	 * so that everything up to the prompt is shown while waiting.
+	 *
+	 * @param output The output of the session
+	 * @return The next line, which must be given back with release
+	 */
+	InputLine takeLine(GameOutput output)
+	{
+		if (commandReader == null)
+		{
+			commandReader = new CommandReader(input, readAhead);
+			commandReader.start();
+		}
+		if (commandReader.hasLine() == false)
+		{
+			output.flush();
+		}
+		return commandReader.take();
+	}
+
+	/**
+	 * Gives a line back to the reader
+	 *
+	 * @param line A line returned by takeLine
+	 */
+	void release(InputLine line)
+	{
+		commandReader.release(line);
+	}
+
+	/**
+	 * Parses a line that has been read elsewhere
+	 *
+	 * @param text The text of the line, without its line terminator
+	 * @return The parsed line, which is valid until the next call
+	 */
+	InputLine setLine(CharSequence text)
+	{
+		if (pushedLine == null)
+		{
+			pushedLine = new InputLine();
+		}
+		pushedLine.set(text);
+		return pushedLine;
+	}
+
+	/**
+	 * Keeps the commands of a line from the specified one on, to be performed later
+	 *
+	 * @param line The line, which may be the line returned by takePendingCommands
+	 * @param firstCommand The index of the first command to keep
+	 */
+	void keepCommands(InputLine line, int firstCommand)
+	{
+		String remainingText = line.getText().subSequence(line.getCommandStart(firstCommand), line.getText().length()).toString();
+		if (pendingCommands == null)
+		{
+			pendingCommands = new InputLine();
+		}
+		pendingCommands.set(remainingText);
+		hasPendingCommands = true;
+	}
+
+	/**
+	 * @return The commands kept by keepCommands, or null if there are none
+	 */
+	InputLine takePendingCommands()
+	{
+		if (hasPendingCommands == false)
+		{
+			return null;
+		}
+		hasPendingCommands = false;
+		return pendingCommands;
+	}
+
+	/**
+	 * @return The tokenizer for the answers to menus
+	 */
+	CommandTokenizer getSelectionTokenizer()
+	{
+		return selectionTokenizer;
+	}
+
+	/**
+	 * @return The number of lines the session has taken so far
+	 */
+	public long getNumberOfLinesRead()
+	{
+		return (commandReader == null) ? 0 : commandReader.getNumberOfLinesTaken();
+	}
+
+	/**
+	 * Stops reading and closes the source of the lines
+	 */
+	public void close()
+	{
+		if (commandReader != null)
+		{
+			commandReader.close();
+		}
+		else if (input != null)
+		{
+			input.close();
+		}
+	}
+}
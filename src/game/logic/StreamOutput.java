@@ -0,0 +1,61 @@
+package game.logic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffered output to a stream such as standard output. Unlike System.out, it neither
+ * locks nor flushes on every line: text collects in the buffer until flush is called,
+ * which the game does once it has handled the commands that were ready.
+ */
+public final class StreamOutput extends ByteBufferOutput
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final OutputStream stream;
+
+	/**
+	 * Creates an output to the specified stream
+	 *
+	 * @param stream The stream to write to, for example new FileOutputStream(FileDescriptor.out)
+	 */
+	public StreamOutput(OutputStream stream)
+	{
+		super(BUFFER_SIZE);
+		this.stream = stream;
+	}
+
+	/**
+	 * Writes the buffered text to the stream. Like System.out,
+	 * this output does not report errors of the stream.
+	 */
+	@Override
+	public void flush()
+	{
+		ByteBuffer buffer = getWriteBuffer();
+		try
+		{
+			stream.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			stream.flush();
+		}
+		catch (IOException ex)
+		{
+			//There is nowhere left to report the error
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Flushes the buffer when it is full, rather than growing it
+	 */
+	@Override
+	protected void makeRoom(int needed)
+	{
+		flush();
+		if (getWriteBuffer().remaining() < needed)
+		{
+			super.makeRoom(needed);
+		}
+	}
+}
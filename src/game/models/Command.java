@@ -1,5 +1,7 @@
 package game.models;
 
+import game.logic.GameOutput;
+
 /**
  * This class is for convenience of adding and maintaing new commands in the game
  * It contains attributes and methods that are common to all commands
@@ -8,13 +10,17 @@ package game.models;
  */
 public class Command 
 {
+	public static final int MODE_EXPLORE = 1;
+	public static final int MODE_BATTLE = 1 << 1;
+	public static final int ALL_MODES = MODE_EXPLORE | MODE_BATTLE;
+	
 	private final int numberOfArgs;
 	private final String commandIdentifier;
 	private final String commandDescription;
+	private final int availableModes;
 	
 	/**
-	 * Instanciates a new Command object. Each command must have an
-	 * identifier, description and the number of arguments it requires
+	 * Instanciates a new Command object that is available in every game mode
 	 * 
 	 * @param numberOfArgs The number of arguments that this command requires
 	 * @param commandIdentifier The name of a command
@@ -23,10 +29,27 @@ public class Command
 	 * @author Nikolai Kolbenev 15897074
 	 */
 	public Command(int numberOfArgs, String commandIdentifier, String commandDescription)
+	{
+		this(numberOfArgs, commandIdentifier, commandDescription, ALL_MODES);
+	}
+	
+	/**
+	 * Instanciates a new Command object. Each command must have an
+	 * identifier, description, the number of arguments it requires and
+	 * the game modes it can be used in
+	 * 
+	 * @param numberOfArgs The number of arguments that this command requires
+	 * @param commandIdentifier The name of a command
+	 * @param commandDescription The description that will appear in the list of 
+	 * available commands
+	 * @param availableModes A combination of MODE_EXPLORE and MODE_BATTLE
+	 */
+	public Command(int numberOfArgs, String commandIdentifier, String commandDescription, int availableModes)
 	{
 		this.numberOfArgs = numberOfArgs;
 		this.commandIdentifier = commandIdentifier;
 		this.commandDescription = commandDescription;
+		this.availableModes = availableModes;
 	}
 	
 	/**
@@ -50,25 +73,12 @@ public class Command
 	
 	
 	/**
-	 * This method is used to quickly identify a possibly valid command that
-	 * the user types in. It is also used to reject commands that do not exist in the game or 
-	 * are not available in the current context
-	 * 
-	 * @param commandIdentifier The name of a command that this instance will be
-	 * checked against
-	 * @return True if the name of this command matches with the name of the specified command
-	 * @author Nikolai Kolbenev 15897074
+	 * @param modes A combination of MODE_EXPLORE and MODE_BATTLE
+	 * @return True if this command can be used in any of the specified game modes
 	 */
-	public final boolean matches(String commandIdentifier)
+	public final boolean isAvailableIn(int modes)
 	{
-		boolean matches = false;
-		
-		if (commandIdentifier.equals(this.commandIdentifier))
-		{
-			matches = true;
-		}
-		
-		return matches;
+		return (availableModes & modes) != 0;
 	}
 	
 	/**
@@ -76,32 +86,45 @@ public class Command
 	 * 		arguments in the specified command and optionally provides feedback about the mismatch.
 	 * 
 	 * @param commandTokens An array of string values, or command tokens, such as the command name and arguments.
-	 * @param giveFeedback True to print feedback to stdout. False to remain silent
+	 * @param feedback The output to print feedback to, or null to remain silent
 	 * @return true if commandTokens parameter has the length that is one less than the number
 	 * of arguments required for this instance; otherwise, false.
 	 * @author nkolbenev 15897074 
 	 */
-	public final boolean numberOfArgsEquals(String[] commandTokens, boolean giveFeedback)
+	public final boolean numberOfArgsEquals(String[] commandTokens, GameOutput feedback)
+	{
+		return numberOfArgsEquals(commandTokens.length, feedback);
+	}
+	
+	/**
+	 * Like numberOfArgsEquals(String[], GameOutput), for a command whose tokens
+	 * have been counted without splitting it into Strings
+	 * 
+	 * @param numberOfTokens The number of tokens in the command, including its name
+	 * @param feedback The output to print feedback to, or null to remain silent
+	 * @return true if there is one token more than the number of arguments required for this instance; otherwise, false.
+	 */
+	public final boolean numberOfArgsEquals(int numberOfTokens, GameOutput feedback)
 	{
 		boolean sameNumOfArgs = true;
 
-		if (commandTokens.length - 1 != this.numberOfArgs)
+		if (numberOfTokens - 1 != this.numberOfArgs)
 		{
 			sameNumOfArgs = false;
 
-			if (giveFeedback)
+			if (feedback != null)
 			{
 				if (this.numberOfArgs == 0)
 				{
-					System.out.println("No arguments for command \'" + commandIdentifier + "\' are required.");
+					feedback.println("No arguments for command \'" + commandIdentifier + "\' are required.");
 				}
 				else if (this.numberOfArgs == 1)
 				{
-					System.out.println("Invalid number of arguments. Please enter command \'" + commandIdentifier + "\' followed by a space and one argument.");
+					feedback.println("Invalid number of arguments. Please enter command \'" + commandIdentifier + "\' followed by a space and one argument.");
 				}
 				else
 				{
-					System.out.println("Invalid number of arguments for command \'" + commandIdentifier + "\'");
+					feedback.println("Invalid number of arguments for command \'" + commandIdentifier + "\'");
 				}
 			}
 		}
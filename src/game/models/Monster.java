@@ -1,7 +1,8 @@
 package game.models;
 
-import game.AdventureGame;
 import game.models.Player;
+import game.logic.Formatting;
+import game.logic.GameOutput;
 import game.logic.Printing;
 
 /**
@@ -73,20 +74,21 @@ public class Monster
 	/**
 	 * Performs an attack on a particular player.
 	 * The amount of damage is calculated from this instance attributes.
-	 * The result of this attack is printed to stdout and may cause end
-	 * of game.
+	 * The result of this attack is printed to the output of the player. The attack may
+	 * leave the player without health; ending the game is left to the session.
 	 * 
 	 * @param player The Player object to attack
 	 * @author Nikolai Kolbenev 15897074
 	 */
 	public void performAttack(Player player)
 	{
+		GameOutput output = player.getOutput();
 		if (player.getPlayerClass() == Player.CLASS_WARRIOR && player.getHasSecondaryWeapon() == true)
 		{
 			double chanceOfMissing = Math.random() * 100;
 			if (chanceOfMissing <= 40)
 			{
-				System.out.println("You block the monster's attack!");
+				output.println("You block the monster's attack!");
 				return;
 			}
 		}
@@ -99,16 +101,14 @@ public class Monster
 		}
 		
 		double healthLost = player.setHealth(player.getHealth() - damageToDeal);
-		System.out.println("The monster deals " + Printing.HEALTH_FORMAT.format(damageToDeal) + " damage points!");
-		System.out.print("You lose " + Printing.PERCENT_FORMAT.format(healthLost / Player.PLAYER_MAX_HEALTH) + " Health. ");
-		Printing.printPlayerHealth(player);
-		
-		if (player.getHealth() <= 0.0)
-		{
-			Printing.printSeparator();
-			System.out.println("You did not survive.\nEnd of game :)");
-			AdventureGame.endGame();
-		}
+		StringBuilder damageStatus = new StringBuilder("The monster deals ");
+		Formatting.appendRounded(damageStatus, damageToDeal).append(" damage points!");
+		output.println(damageStatus);
+		damageStatus.setLength(0);
+		damageStatus.append("You lose ");
+		Formatting.appendPercent(damageStatus, healthLost / Player.PLAYER_MAX_HEALTH).append(" Health. ");
+		output.print(damageStatus);
+		Printing.printPlayerHealth(output, player);
 	}
 	
 	/**
@@ -122,11 +122,22 @@ public class Monster
 	 * @author Nikolai Kolbenev 15897074
 	 */
 	public String getHealthStatus()
+	{
+		return appendHealthStatus(new StringBuilder()).toString();
+	}
+	
+	/**
+	 * Appends the text returned by getHealthStatus
+	 * 
+	 * @param text The text to append to
+	 * @return The text
+	 */
+	public StringBuilder appendHealthStatus(StringBuilder text)
 	{
 		double healthPercentage = (health / fullHealth);
-		String healthStatus = Printing.HEALTH_FORMAT.format(health) + "/" + Printing.HEALTH_FORMAT.format(fullHealth) + 
-		" (" + Printing.PERCENT_FORMAT.format(healthPercentage) + ")";
-		return healthStatus;
+		Formatting.appendRounded(text, health).append('/');
+		Formatting.appendRounded(text, fullHealth).append(" (");
+		return Formatting.appendPercent(text, healthPercentage).append(')');
 	}
 	
 	/**
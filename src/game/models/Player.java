@@ -2,6 +2,8 @@ package game.models;
 
 import java.util.Random;
 
+import game.logic.Formatting;
+import game.logic.GameOutput;
 import game.logic.Printing;
 
 /**
@@ -45,6 +47,7 @@ public class Player
 	private int currencyInPossession;
 	private double health;
 	private double damageWithHands;
+	private final GameOutput output;
 	
 	/**
 	 * Creats a new instance of Player. The class and room position
@@ -52,11 +55,13 @@ public class Player
 	 * 
 	 * @param playerClass The class of a player
 	 * @param roomPosition The room number where this player should appear
+	 * @param output The output to print the player's actions to
 	 * @author Nikolai Kolbenev
 	 */
-	public Player(String playerClass, int roomPosition)
+	public Player(String playerClass, int roomPosition, GameOutput output)
 	{
 		this.playerClass = playerClass;
+		this.output = output;
 		currencyInPossession = 0;
 		health = PLAYER_MAX_HEALTH;
 		
@@ -78,7 +83,7 @@ public class Player
 	 * The player attacks the monster.
 	 * The player's class, attributes and other parameters are considered when
 	 * making attacks and calculating the amount of damage. The result of attack
-	 * is displayed to stdout.
+	 * is printed to the output of this player.
 	 * 
 	 * @param monster A monster object that will receive the damage from this player.
 	 */
@@ -89,7 +94,7 @@ public class Player
 			double chanceOfMissing = Math.random() * 100;
 			if (chanceOfMissing >= 50)
 			{
-				System.out.println("Your weak sight prevents you from hitting the monster.");
+				output.println("Your weak sight prevents you from hitting the monster.");
 				return;
 			}
 		}
@@ -113,20 +118,22 @@ public class Player
 			generateKeyboardSymbols();
 		}
 		
-		String damageStatus = "You struck the monster with your ";
+		StringBuilder damageStatus = new StringBuilder("You struck the monster with your ");
 		if (this.hasPrimaryWeapon)
 		{
-			damageStatus += (this.playerClass == Player.CLASS_PROGRAMMER) ? Player.KEYBOARD : Player.SWORD;
+			damageStatus.append((this.playerClass == Player.CLASS_PROGRAMMER) ? Player.KEYBOARD : Player.SWORD);
 		}
 		else
 		{
-			damageStatus += "bare hands";
+			damageStatus.append("bare hands");
 		}
-		damageStatus += ", dealing " + Printing.HEALTH_FORMAT.format(damageToDeal) + " damage points!\n";
-		damageStatus += "The monster loses " + Printing.PERCENT_FORMAT.format(healthLost/monster.getFullHealth()) + " Health. ";
+		damageStatus.append(", dealing ");
+		Formatting.appendRounded(damageStatus, damageToDeal).append(" damage points!\n");
+		damageStatus.append("The monster loses ");
+		Formatting.appendPercent(damageStatus, healthLost/monster.getFullHealth()).append(" Health. ");
 		
-		System.out.print(damageStatus);
-		Printing.printMonsterHealth(monster);
+		output.print(damageStatus);
+		Printing.printMonsterHealth(output, monster);
 	}
 	
 	/**
@@ -138,11 +145,22 @@ public class Player
 	 * @author Nikolai Kolbenev 15897074
 	 */
 	public String getHealthStatus()
+	{
+		return appendHealthStatus(new StringBuilder()).toString();
+	}
+	
+	/**
+	 * Appends the text returned by getHealthStatus
+	 * 
+	 * @param text The text to append to
+	 * @return The text
+	 */
+	public StringBuilder appendHealthStatus(StringBuilder text)
 	{
 		double healthPercentage = (health / PLAYER_MAX_HEALTH);
-		String healthStatus = Printing.HEALTH_FORMAT.format(health) + "/" + Printing.HEALTH_FORMAT.format(PLAYER_MAX_HEALTH) + 
-				" (" + Printing.PERCENT_FORMAT.format(healthPercentage) + ")";
-		return healthStatus;
+		Formatting.appendRounded(text, health).append('/');
+		Formatting.appendRounded(text, PLAYER_MAX_HEALTH).append(" (");
+		return Formatting.appendPercent(text, healthPercentage).append(')');
 	}
 	
 	/**
@@ -263,17 +281,17 @@ public class Player
 		{
 			if (this.hasPrimaryWeapon == true)
 			{
-				System.out.println("You already have this item!");
+				output.println("You already have this item!");
 			}
 			else
 			{
 				if (this.playerClass == Player.CLASS_PROGRAMMER)
 				{
-					System.out.println("You found a " + Player.KEYBOARD + "! You can use it as a weapon, increasing your damage by 240%");
+					output.println("You found a " + Player.KEYBOARD + "! You can use it as a weapon, increasing your damage by 240%");
 				}
 				else if (this.playerClass == Player.CLASS_WARRIOR)
 				{
-					System.out.println("You pick up a " + Player.SWORD + ", increasing your damage by 240%");
+					output.println("You pick up a " + Player.SWORD + ", increasing your damage by 240%");
 				}
 			}
 		}
@@ -297,17 +315,17 @@ public class Player
 		{
 			if (this.hasSecondaryWeapon == true)
 			{
-				System.out.println("You already have this item!");
+				output.println("You already have this item!");
 			}
 			else
 			{
 				if (this.playerClass == Player.CLASS_PROGRAMMER)
 				{
-					System.out.println("You acquire " + Player.GLASSES + "! Now you can see monsters very well. Your accuracy increases to 100%");
+					output.println("You acquire " + Player.GLASSES + "! Now you can see monsters very well. Your accuracy increases to 100%");
 				}
 				else if (this.playerClass == Player.CLASS_WARRIOR)
 				{
-					System.out.println("You acquire " + Player.SHIELD + "! Now you have a 40% chance of blocking attacks!");
+					output.println("You acquire " + Player.SHIELD + "! Now you have a 40% chance of blocking attacks!");
 				}
 			}
 		}
@@ -315,6 +333,14 @@ public class Player
 		this.hasSecondaryWeapon = hasSecondaryWeapon;
 	}
 
+	/**
+	 * @return The output that the actions of this instance are printed to
+	 */
+	public GameOutput getOutput()
+	{
+		return output;
+	}
+
 	/**
 	 * @return true if this instance has secondary weapon.
 	 * Otherwise, false
@@ -359,7 +385,7 @@ public class Player
 			keyboardSymbol = rand.nextInt(95) + 32;
 			randomSymbols += (char)keyboardSymbol;
 		}
-		System.out.println(randomSymbols);
+		output.println(randomSymbols);
 	}
 	
 	/**
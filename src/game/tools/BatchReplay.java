@@ -0,0 +1,161 @@
+package game.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import game.AdventureGame;
+import game.GameSession;
+import game.data.CompiledMapFile;
+import game.data.MapData;
+import game.logic.GameInput;
+import game.logic.GameOutput;
+import game.logic.NullOutput;
+import game.logic.StreamOutput;
+
+/**
+ * Plays command scripts through the game without a terminal, for regression and load tests.
+ *
+ * A script is either a plain file with one input line per line, or a recorded session such as
+ * output/15897074-sampleRun1.txt, in which case the input is whatever follows each prompt.
+ * The class choice is the first line of the script, like in an interactive game.
+ * The map is loaded once and every repetition plays a new GameSession on it.
+ * The game output goes to a NullOutput, or through a StreamOutput to an output file.
+ * Monsters still appear at random, so a replay may take a different course than the recording.
+ *
+ * Usage: BatchReplay scriptFile [repetitions] [outputFile] [mapFile]
+ */
+public class BatchReplay
+{
+	private static final String DEFAULT_MAP_FILE = "input/customMap.txt";
+	private static final int DEFAULT_REPETITIONS = 1;
+	private static final String[] PROMPTS = { "Your choice? ", "Command? ", "Your action? " };
+	private static final Charset SCRIPT_CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * Replays the script and prints how many commands were handled per second
+	 *
+	 * @param args The script file, followed by the optional number of repetitions,
+	 * output file ("-" to discard the output) and map file
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: BatchReplay scriptFile [repetitions] [outputFile] [mapFile]");
+			return;
+		}
+
+		int repetitions = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_REPETITIONS;
+		String outputFilePath = (args.length > 2 && args[2].equals("-") == false) ? args[2] : null;
+		String mapFilePath = (args.length > 3) ? args[3] : DEFAULT_MAP_FILE;
+
+		byte[] script = readScript(args[0]);
+		OutputStream outputFile = (outputFilePath != null) ? new FileOutputStream(outputFilePath) : null;
+		GameOutput output = (outputFile != null) ? new StreamOutput(outputFile) : NullOutput.INSTANCE;
+
+		//The map loaders report to System.out, which is silenced while replaying
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			@Override
+			public void write(int b)
+			{
+				//Discard loader output
+			}
+		}));
+		long numberOfCommands = 0;
+		long start = System.nanoTime();
+		try
+		{
+			MapData mapData = AdventureGame.loadMap(mapFilePath, CompiledMapFile.getDefaultPath(mapFilePath), output);
+			for (int r = 0; r < repetitions; r++)
+			{
+				numberOfCommands += replay(script, mapData, output);
+			}
+		}
+		finally
+		{
+			output.flush();
+			System.setOut(stdout);
+			if (outputFile != null)
+			{
+				outputFile.close();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("Replayed " + repetitions + " game(s) and " + numberOfCommands + " input line(s) in "
+				+ Math.round(seconds * 1000) + " ms: " + Math.round(numberOfCommands / seconds) + " commands per second");
+	}
+
+	/**
+	 * Plays one game with the script as input
+	 *
+	 * @param script The input lines of the game
+	 * @param mapData The map to play on, which is not changed by the game
+	 * @param output The output to print to
+	 * @return The number of input lines the game read
+	 */
+	public static long replay(byte[] script, MapData mapData, GameOutput output)
+	{
+		GameSession session = new GameSession(mapData, GameInput.fromBytes(script), output);
+		session.play();
+		return session.getInput().getNumberOfLinesRead();
+	}
+
+	/**
+	 * Reads the input lines of a script. If any line of the file starts with a prompt,
+	 * the file is taken to be a recorded session and only the text after the prompts is kept.
+	 *
+	 * @param scriptFilePath The path to the script
+	 * @return The input lines, each ending with a line feed
+	 * @throws IOException if the script cannot be read
+	 */
+	public static byte[] readScript(String scriptFilePath) throws IOException
+	{
+		List<String> lines = Files.readAllLines(Paths.get(scriptFilePath), SCRIPT_CHARSET);
+
+		boolean recorded = false;
+		for (int i = 0; i < lines.size() && recorded == false; i++)
+		{
+			recorded = getPromptLength(lines.get(i)) > 0;
+		}
+
+		StringBuilder script = new StringBuilder();
+		for (String line : lines)
+		{
+			int promptLength = getPromptLength(line);
+			if (recorded == false)
+			{
+				script.append(line).append('\n');
+			}
+			else if (promptLength > 0)
+			{
+				script.append(line, promptLength, line.length()).append('\n');
+			}
+		}
+		return script.toString().getBytes(SCRIPT_CHARSET);
+	}
+
+	/**
+	 * @return The length of the prompt the line starts with, or 0 if it starts with none
+	 */
+	private static int getPromptLength(String line)
+	{
+		for (String prompt : PROMPTS)
+		{
+			if (line.startsWith(prompt))
+			{
+				return prompt.length();
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,172 @@
+package game.tools;
+
+import java.lang.management.ManagementFactory;
+
+import game.GameSession;
+import game.logic.CommandHandler;
+import game.logic.CommandRegistry;
+import game.logic.CommandTokenizer;
+import game.models.Command;
+
+/**
+ * Measures the time and the heap allocation of parsing and looking up command lines,
+ * comparing the String based split with CommandTokenizer. Only parsing, lookup and
+ * argument reading are measured; the commands themselves are not performed.
+ * Allocation is read from the HotSpot ThreadMXBean, and is reported as unavailable on other JVMs.
+ *
+ * Usage: CommandBenchmark [iterations]
+ */
+public class CommandBenchmark
+{
+	private static final int DEFAULT_ITERATIONS = 2000000;
+	private static final String[] COMMAND_LINES = { "open 2", "PICKUP Keyboard", "attack", "help", "  roominfo ", "route exit",
+			"selfinfo", "open 12", "run", "pickup silver" };
+	private static final String[] KNOWN_ARGUMENTS = { "silver", "keyboard", "glasses", "sword", "shield", "exit", "weapon" };
+
+	private static final CommandHandler NO_ACTION = new CommandHandler()
+	{
+		@Override
+		public void handle(GameSession session, CommandTokenizer commandTokens)
+		{
+			//Only parsing is measured
+		}
+	};
+
+	/**
+	 * Runs both parsers and prints their time and allocation per command
+	 *
+	 * @param args The optional number of command lines to parse with each parser
+	 */
+	public static void main(String[] args)
+	{
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		CommandRegistry registry = new CommandRegistry();
+		String[] identifiers = { "open", "pickup", "search", "route", "attack", "run", "ignore", "roominfo", "selfinfo", "rest", "help" };
+		int[] numberOfArgs = { 1, 1, 0, 1, 0, 0, 0, 0, 0, 0, 0 };
+		for (int i = 0; i < identifiers.length; i++)
+		{
+			registry.register(new Command(numberOfArgs[i], identifiers[i], identifiers[i]), NO_ACTION);
+		}
+
+		StringBuilder[] lines = new StringBuilder[COMMAND_LINES.length];
+		for (int i = 0; i < lines.length; i++)
+		{
+			lines[i] = new StringBuilder(COMMAND_LINES[i]);
+		}
+
+		//Warm up both paths so that the measured runs use compiled code
+		parseWithSplit(registry, lines, iterations / 4);
+		parseWithTokenizer(registry, lines, new CommandTokenizer(), iterations / 4);
+
+		long bytes = getAllocatedBytes();
+		long start = System.nanoTime();
+		long checksum = parseWithSplit(registry, lines, iterations);
+		report("split:    ", start, bytes, iterations);
+
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		bytes = getAllocatedBytes();
+		start = System.nanoTime();
+		checksum -= parseWithTokenizer(registry, lines, tokenizer, iterations);
+		report("tokenizer:", start, bytes, iterations);
+
+		if (checksum != 0)
+		{
+			throw new IllegalStateException("The parsers disagree");
+		}
+	}
+
+	/**
+	 * Parses command lines the way the game did before CommandTokenizer
+	 *
+	 * @return A checksum of the commands and arguments found
+	 */
+	private static long parseWithSplit(CommandRegistry registry, StringBuilder[] lines, int iterations)
+	{
+		long checksum = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			String[] tokens = lines[i % lines.length].toString().trim().toLowerCase().split(" ");
+			CommandRegistry.Entry entry = registry.find(tokens[0]);
+			if (entry != null && entry.getCommand().numberOfArgsEquals(tokens, null) == true)
+			{
+				checksum += entry.getCommand().getCommandIdentifier().length();
+				if (tokens.length > 1)
+				{
+					checksum += (tokens[0].equals("open")) ? Integer.parseInt(tokens[1]) : indexOf(tokens[1]);
+				}
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Parses command lines with a CommandTokenizer and resolves them like CommandUtilities does
+	 *
+	 * @return A checksum of the commands and arguments found
+	 */
+	private static long parseWithTokenizer(CommandRegistry registry, StringBuilder[] lines, CommandTokenizer tokenizer, int iterations)
+	{
+		long checksum = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			int numberOfTokens = tokenizer.tokenize(lines[i % lines.length]);
+			CommandRegistry.Entry entry = registry.resolve(tokenizer, 0, 0);
+			if (entry != null && entry.getCommand().numberOfArgsEquals(numberOfTokens, null) == true)
+			{
+				checksum += entry.getCommand().getCommandIdentifier().length();
+				if (numberOfTokens > 1)
+				{
+					checksum += (tokenizer.tokenEquals(0, "open")) ? tokenizer.parseInt(1) : indexOf(tokenizer.getToken(1, KNOWN_ARGUMENTS));
+				}
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * @return The position of an argument in KNOWN_ARGUMENTS, or -1
+	 */
+	private static int indexOf(String argument)
+	{
+		for (int i = 0; i < KNOWN_ARGUMENTS.length; i++)
+		{
+			if (KNOWN_ARGUMENTS[i].equals(argument))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Prints the time and allocation per command since the specified start
+	 */
+	private static void report(String name, long start, long bytesAtStart, int iterations)
+	{
+		long nanos = System.nanoTime() - start;
+		long bytes = getAllocatedBytes();
+		String allocation = (bytes < 0 || bytesAtStart < 0) ? "unavailable" : String.valueOf(Math.round((bytes - bytesAtStart) * 100.0 / iterations) / 100.0);
+		System.out.println(name + " " + Math.round(nanos / (double)iterations) + " ns and " + allocation + " bytes allocated per command");
+	}
+
+	/**
+	 * @return The number of bytes the current thread has allocated so far, or -1 if it cannot be measured
+	 */
+	private static long getAllocatedBytes()
+	{
+		try
+		{
+			com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+			return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		catch (LinkageError ex)
+		{
+			return -1;
+		}
+		catch (ClassCastException ex)
+		{
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package game.tools;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import game.GameServer;
+
+/**
+ * Opens many connections to a GameServer or SelectorGameServer on this machine and plays on a few of them,
+ * to show how many mostly idle players a server can hold and how quickly it still answers.
+ *
+ * Every connection chooses a class and waits for its first command prompt. Then, for the given
+ * number of seconds, the active connections send "roominfo" again each time a prompt comes back,
+ * while the others stay idle. Finally every connection sends "selfinfo" and must answer with a prompt.
+ * The client runs on one thread with a Selector, so it needs no thread per connection.
+ * Beyond PORTS_PER_ADDRESS connections, further loopback source addresses are used,
+ * since one source address runs out of ephemeral ports.
+ *
+ * Usage: LoadClient [connections] [activeConnections] [seconds] [port]
+ */
+public class LoadClient
+{
+	private static final int DEFAULT_CONNECTIONS = 1000;
+	private static final int DEFAULT_ACTIVE_CONNECTIONS = 10;
+	private static final int DEFAULT_SECONDS = 10;
+	private static final int PORTS_PER_ADDRESS = 25000;
+	private static final long WAIT_TIMEOUT_MILLIS = 120000;
+	private static final Charset CLIENT_CHARSET = Charset.forName("UTF-8");
+	private static final byte[] PROMPT = "Command? ".getBytes(CLIENT_CHARSET);
+	private static final byte[] CLASS_CHOICE = "2\n".getBytes(CLIENT_CHARSET);
+	private static final byte[] ACTIVE_COMMAND = "roominfo\n".getBytes(CLIENT_CHARSET);
+	private static final byte[] CHECK_COMMAND = "selfinfo\n".getBytes(CLIENT_CHARSET);
+
+	private final SocketChannel[] channels;
+	private final int[] promptMatches;
+	private final long[] sentAt;
+	private final Selector selector;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+	private int numberOfWaiting;
+	private boolean repeatActiveCommand;
+	private int numberOfActive;
+	private long numberOfResponses;
+	private long totalLatency;
+	private long[] latencies = new long[1024];
+
+	/**
+	 * @param numberOfConnections The number of connections to open
+	 * @throws IOException if the selector cannot be opened
+	 */
+	private LoadClient(int numberOfConnections) throws IOException
+	{
+		channels = new SocketChannel[numberOfConnections];
+		promptMatches = new int[numberOfConnections];
+		sentAt = new long[numberOfConnections];
+		selector = Selector.open();
+	}
+
+	/**
+	 * Runs the load test and prints its results
+	 *
+	 * @param args The optional number of connections, number of active connections, seconds and port
+	 * @throws IOException if a connection cannot be opened or fails
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int numberOfConnections = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_CONNECTIONS;
+		int numberOfActive = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ACTIVE_CONNECTIONS;
+		int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+		int port = (args.length > 3) ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+
+		LoadClient client = new LoadClient(numberOfConnections);
+		try
+		{
+			client.run(port, Math.min(numberOfActive, numberOfConnections), seconds);
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	/**
+	 * Connects, plays and checks every connection
+	 */
+	private void run(int port, int active, int seconds) throws IOException
+	{
+		long start = System.nanoTime();
+		connectAll(port);
+		System.out.println("Connected " + channels.length + " client(s) in " + millisSince(start) + " ms");
+
+		start = System.nanoTime();
+		sendToAll(CLASS_CHOICE, channels.length);
+		waitForPrompts();
+		System.out.println("All " + channels.length + " game(s) started in " + millisSince(start) + " ms");
+
+		numberOfActive = active;
+		repeatActiveCommand = true;
+		numberOfResponses = 0;
+		totalLatency = 0;
+		sendToAll(ACTIVE_COMMAND, active);
+		long end = System.nanoTime() + seconds * 1000000000L;
+		while (System.nanoTime() < end)
+		{
+			poll(end);
+		}
+		repeatActiveCommand = false;
+		waitForPrompts();
+		printLatencies(active, seconds);
+
+		start = System.nanoTime();
+		sendToAll(CHECK_COMMAND, channels.length);
+		waitForPrompts();
+		System.out.println("All " + channels.length + " game(s) answered \'selfinfo\' in " + millisSince(start) + " ms");
+	}
+
+	/**
+	 * Opens every connection in blocking mode, then switches it to non-blocking reads
+	 */
+	private void connectAll(int port) throws IOException
+	{
+		InetAddress serverAddress = InetAddress.getLoopbackAddress();
+		byte[] localAddress = serverAddress.getAddress().clone();
+		for (int i = 0; i < channels.length; i++)
+		{
+			SocketChannel channel = SocketChannel.open();
+			if (channels.length > PORTS_PER_ADDRESS && localAddress.length == 4)
+			{
+				localAddress[3] = (byte)(1 + i / PORTS_PER_ADDRESS);
+				channel.bind(new InetSocketAddress(InetAddress.getByAddress(localAddress), 0));
+			}
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.connect(new InetSocketAddress(serverAddress, port));
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, Integer.valueOf(i));
+			channels[i] = channel;
+		}
+	}
+
+	/**
+	 * Sends a command to the first connections
+	 */
+	private void sendToAll(byte[] command, int count) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+		{
+			send(i, command);
+		}
+	}
+
+	/**
+	 * Sends a command on one connection, which is expected to answer with a prompt
+	 */
+	private void send(int connection, byte[] command) throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.wrap(command);
+		while (bytes.hasRemaining())
+		{
+			channels[connection].write(bytes);
+		}
+		sentAt[connection] = System.nanoTime();
+		numberOfWaiting++;
+	}
+
+	/**
+	 * Reads until every connection that was sent a command has answered with a prompt
+	 */
+	private void waitForPrompts() throws IOException
+	{
+		long deadline = System.nanoTime() + WAIT_TIMEOUT_MILLIS * 1000000L;
+		while (numberOfWaiting > 0)
+		{
+			if (System.nanoTime() > deadline)
+			{
+				throw new IOException(numberOfWaiting + " game(s) did not answer within " + WAIT_TIMEOUT_MILLIS + " ms");
+			}
+			poll(deadline);
+		}
+	}
+
+	/**
+	 * Reads whatever has arrived, waiting until the deadline at most
+	 */
+	private void poll(long deadline) throws IOException
+	{
+		long timeout = Math.max(1, (deadline - System.nanoTime()) / 1000000L);
+		if (selector.select(timeout) == 0)
+		{
+			return;
+		}
+		for (SelectionKey key : selector.selectedKeys())
+		{
+			int connection = ((Integer)key.attachment()).intValue();
+			readBuffer.clear();
+			int read = channels[connection].read(readBuffer);
+			if (read < 0)
+			{
+				throw new IOException("Game " + connection + " closed its connection");
+			}
+			readBuffer.flip();
+			while (readBuffer.hasRemaining())
+			{
+				if (matchPrompt(connection, readBuffer.get()) == true)
+				{
+					onPrompt(connection);
+				}
+			}
+		}
+		selector.selectedKeys().clear();
+	}
+
+	/**
+	 * Follows the text of a connection byte by byte, looking for the command prompt
+	 *
+	 * @return True if the byte completes a prompt
+	 */
+	private boolean matchPrompt(int connection, byte b)
+	{
+		int matched = promptMatches[connection];
+		matched = (b == PROMPT[matched]) ? matched + 1 : ((b == PROMPT[0]) ? 1 : 0);
+		if (matched == PROMPT.length)
+		{
+			promptMatches[connection] = 0;
+			return true;
+		}
+		promptMatches[connection] = matched;
+		return false;
+	}
+
+	/**
+	 * Records the answer to a command and, while the test runs, sends the next one on active connections
+	 */
+	private void onPrompt(int connection) throws IOException
+	{
+		if (sentAt[connection] == 0)
+		{
+			return;
+		}
+		numberOfWaiting--;
+		if (repeatActiveCommand == true && connection < numberOfActive)
+		{
+			long latency = System.nanoTime() - sentAt[connection];
+			if (numberOfResponses == latencies.length)
+			{
+				latencies = Arrays.copyOf(latencies, latencies.length * 2);
+			}
+			latencies[(int)numberOfResponses++] = latency;
+			totalLatency += latency;
+			send(connection, ACTIVE_COMMAND);
+		}
+		else
+		{
+			sentAt[connection] = 0;
+		}
+	}
+
+	/**
+	 * Prints the throughput and latency of the active connections
+	 */
+	private void printLatencies(int active, int seconds)
+	{
+		if (numberOfResponses == 0)
+		{
+			System.out.println("No command was answered in " + seconds + " s");
+			return;
+		}
+		long[] sorted = Arrays.copyOf(latencies, (int)numberOfResponses);
+		Arrays.sort(sorted);
+		System.out.println(active + " active game(s) with " + (channels.length - active) + " idle: "
+				+ (numberOfResponses / seconds) + " commands per second, latency mean "
+				+ (totalLatency / numberOfResponses / 1000) + " us, p99 "
+				+ (sorted[(int)(sorted.length * 0.99)] / 1000) + " us, max " + (sorted[sorted.length - 1] / 1000) + " us");
+	}
+
+	/**
+	 * Closes every connection and the selector
+	 */
+	private void close() throws IOException
+	{
+		for (SocketChannel channel : channels)
+		{
+			if (channel != null)
+			{
+				channel.close();
+			}
+		}
+		selector.close();
+	}
+
+	/**
+	 * @return The milliseconds elapsed since a System.nanoTime value
+	 */
+	private static long millisSince(long start)
+	{
+		return (System.nanoTime() - start) / 1000000L;
+	}
+}
@@ -0,0 +1,41 @@
+package game.tools;
+
+import java.io.IOException;
+
+import game.data.CompiledMapFile;
+import game.data.MapData;
+import game.data.MappedMapReader;
+
+/**
+ * Compiles a map from the text format into the binary format
+ * that the game loads on start-up.
+ *
+ * Usage: MapCompiler textMapFile [compiledMapFile]
+ * If compiledMapFile is omitted, the extension of textMapFile is replaced with CompiledMapFile.EXTENSION.
+ */
+public class MapCompiler
+{
+	/**
+	 * Reads the text map and writes its compiled form
+	 *
+	 * @param args The text map file and an optional compiled map file
+	 * @throws IOException if either file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: MapCompiler textMapFile [compiledMapFile]");
+			return;
+		}
+
+		String textFilePath = args[0];
+		String compiledFilePath = (args.length > 1) ? args[1] : CompiledMapFile.getDefaultPath(textFilePath);
+
+		MapData mapData = MappedMapReader.readMapData(textFilePath);
+		CompiledMapFile.write(mapData, compiledFilePath);
+
+		CompiledMapFile.readMapData(compiledFilePath);
+		System.out.println("Compiled \'" + textFilePath + "\' into \'" + compiledFilePath + "\'");
+	}
+}
@@ -0,0 +1,283 @@
+package game.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes synthetic maps of any size for load and scaling tests.
+ *
+ * Rooms are written one block at a time and nothing but the doors of the current room
+ * is kept in memory, so maps with millions of rooms can be generated. The blocks follow
+ * a pseudo-random permutation of the room numbers. Each room has a door to the room of the
+ * next block, so the exit (the last block) can always be reached from the entrance (the first block);
+ * the other doors lead to random rooms.
+ *
+ * Usage: MapGenerator mapFile [numberOfRooms] [degreeDistribution] [averageDoors] [itemDensity] [seed]
+ */
+public class MapGenerator
+{
+	public static final String DEGREE_FIXED = "fixed";
+	public static final String DEGREE_UNIFORM = "uniform";
+	public static final String DEGREE_POWER_LAW = "powerlaw";
+
+	public static final int MAXIMUM_NUMBER_OF_ROOMS = 10000000;
+	private static final int MAXIMUM_DOORS = 10000;
+	private static final double POWER_LAW_EXPONENT = 2.5;
+
+	private static final int DEFAULT_NUMBER_OF_ROOMS = 100000;
+	private static final double DEFAULT_AVERAGE_DOORS = 3;
+	private static final double DEFAULT_ITEM_DENSITY = 0.3;
+	private static final long DEFAULT_SEED = 42;
+
+	private static final String[] ROOM_SIZES = { "tiny", "small", "narrow", "long", "wide", "huge" };
+	private static final String[] ROOM_FEATURES = { "a low ceiling", "damp walls", "a broken window",
+			"a cold stone floor", "a strange smell", "scratches on the door", "a flickering torch" };
+
+	/**
+	 * Writes a map with the settings given on the command line
+	 *
+	 * @param args The path of the map file, followed by the optional number of rooms,
+	 * degree distribution, average number of doors per room, item density and seed
+	 * @throws IOException if the map file cannot be written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: MapGenerator mapFile [numberOfRooms] [" + DEGREE_FIXED + "|" + DEGREE_UNIFORM + "|" + DEGREE_POWER_LAW
+					+ "] [averageDoors] [itemDensity] [seed]");
+			return;
+		}
+
+		int numberOfRooms = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_NUMBER_OF_ROOMS;
+		String degreeDistribution = (args.length > 2) ? args[2] : DEGREE_UNIFORM;
+		double averageDoors = (args.length > 3) ? Double.parseDouble(args[3]) : DEFAULT_AVERAGE_DOORS;
+		double itemDensity = (args.length > 4) ? Double.parseDouble(args[4]) : DEFAULT_ITEM_DENSITY;
+		long seed = (args.length > 5) ? Long.parseLong(args[5]) : DEFAULT_SEED;
+
+		long start = System.nanoTime();
+		long numberOfDoors = writeMap(new File(args[0]), numberOfRooms, degreeDistribution, averageDoors, itemDensity, seed);
+		System.out.println("Wrote " + numberOfRooms + " rooms and " + numberOfDoors + " doors to " + args[0] + " in "
+				+ ((System.nanoTime() - start) / 1000000) + " ms");
+	}
+
+	/**
+	 * Writes a map with the default degree distribution and item density
+	 *
+	 * @param file The file to write
+	 * @param numberOfRooms The number of rooms
+	 * @param seed The seed of the random generator; the same seed always gives the same map
+	 * @return The total number of doors written
+	 * @throws IOException if the file cannot be written
+	 */
+	public static long writeMap(File file, int numberOfRooms, long seed) throws IOException
+	{
+		return writeMap(file, numberOfRooms, DEGREE_UNIFORM, DEFAULT_AVERAGE_DOORS, DEFAULT_ITEM_DENSITY, seed);
+	}
+
+	/**
+	 * Writes a map
+	 *
+	 * @param file The file to write
+	 * @param numberOfRooms The number of rooms, from 1 to MAXIMUM_NUMBER_OF_ROOMS
+	 * @param degreeDistribution How the number of doors varies between rooms: DEGREE_FIXED gives every room
+	 * the average, DEGREE_UNIFORM spreads it evenly around the average and DEGREE_POWER_LAW gives most rooms
+	 * few doors and a few hub rooms a great many
+	 * @param averageDoors The average number of doors per room, at least 1
+	 * @param itemDensity The chance of a room holding currency, from 0 to 1; each kind of weapon
+	 * is a quarter as likely
+	 * @param seed The seed of the random generator; the same seed always gives the same map
+	 * @return The total number of doors written
+	 * @throws IOException if the file cannot be written
+	 */
+	public static long writeMap(File file, int numberOfRooms, String degreeDistribution, double averageDoors, double itemDensity, long seed)
+			throws IOException
+	{
+		if (numberOfRooms < 1 || numberOfRooms > MAXIMUM_NUMBER_OF_ROOMS)
+		{
+			throw new IllegalArgumentException("The number of rooms must be between 1 and " + MAXIMUM_NUMBER_OF_ROOMS + ": " + numberOfRooms);
+		}
+		if (degreeDistribution.equals(DEGREE_FIXED) == false && degreeDistribution.equals(DEGREE_UNIFORM) == false
+				&& degreeDistribution.equals(DEGREE_POWER_LAW) == false)
+		{
+			throw new IllegalArgumentException("Unknown degree distribution: " + degreeDistribution);
+		}
+		if (averageDoors < 1 || itemDensity < 0 || itemDensity > 1)
+		{
+			throw new IllegalArgumentException("Invalid average number of doors or item density: " + averageDoors + ", " + itemDensity);
+		}
+
+		Random random = new Random(seed);
+		long multiplier = findPermutationMultiplier(numberOfRooms, random);
+		long offset = random.nextInt(numberOfRooms);
+
+		int[] doors = new int[16];
+		long numberOfDoors = 0;
+		StringBuilder block = new StringBuilder(256);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+		try
+		{
+			writer.write(numberOfRooms + "\n");
+			for (long position = 0; position < numberOfRooms; position++)
+			{
+				int room = (int)((multiplier * position + offset) % numberOfRooms) + 1;
+
+				//The door along the path from the entrance to the exit, or back from the exit
+				long pathPosition = (position < numberOfRooms - 1) ? position + 1 : Math.max(position - 1, 0);
+				int pathDoor = (int)((multiplier * pathPosition + offset) % numberOfRooms) + 1;
+
+				int degree = Math.min(chooseDegree(degreeDistribution, averageDoors, random), Math.min(MAXIMUM_DOORS, numberOfRooms));
+				if (doors.length < degree)
+				{
+					doors = new int[Math.max(degree, doors.length * 2)];
+				}
+				doors[0] = pathDoor;
+				for (int d = 1; d < degree; d++)
+				{
+					doors[d] = random.nextInt(numberOfRooms) + 1;
+				}
+				int doorsInRoom = removeDuplicates(doors, degree, room, pathDoor);
+				numberOfDoors += doorsInRoom;
+
+				block.setLength(0);
+				block.append(room).append("\n@description\n");
+				appendDescription(block, room, random);
+				block.append("\n@connect\n");
+				for (int d = 0; d < doorsInRoom; d++)
+				{
+					if (d > 0)
+					{
+						block.append(',');
+					}
+					block.append(doors[d]);
+				}
+				block.append("\n@items\n");
+				appendItems(block, itemDensity, random);
+				block.append('\n');
+				writer.append(block);
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		return numberOfDoors;
+	}
+
+	/**
+	 * Picks the number of doors of a room
+	 *
+	 * @return A number of doors, at least 1
+	 */
+	private static int chooseDegree(String degreeDistribution, double averageDoors, Random random)
+	{
+		double degree;
+		if (degreeDistribution.equals(DEGREE_FIXED))
+		{
+			degree = averageDoors;
+		}
+		else if (degreeDistribution.equals(DEGREE_UNIFORM))
+		{
+			degree = 1 + random.nextDouble() * 2 * (averageDoors - 1);
+		}
+		else
+		{
+			//A Pareto distribution whose mean is averageDoors
+			double minimum = averageDoors * (POWER_LAW_EXPONENT - 2) / (POWER_LAW_EXPONENT - 1);
+			degree = minimum / Math.pow(1 - random.nextDouble(), 1 / (POWER_LAW_EXPONENT - 1));
+		}
+		return (int)Math.max(1, Math.min(Math.round(degree), Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Sorts the random doors of a room and removes duplicates and doors to the room itself.
+	 * The first door, which lies on the path to the exit, stays first.
+	 *
+	 * @param doors The doors, with the path door first
+	 * @param degree The number of doors
+	 * @param room The number of the room
+	 * @param pathDoor The door on the path to the exit
+	 * @return The number of doors left
+	 */
+	private static int removeDuplicates(int[] doors, int degree, int room, int pathDoor)
+	{
+		Arrays.sort(doors, 1, degree);
+		int count = 1;
+		for (int d = 1; d < degree; d++)
+		{
+			if (doors[d] != room && doors[d] != pathDoor && doors[d] != doors[count - 1])
+			{
+				doors[count++] = doors[d];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Appends a short, varied description of a room
+	 */
+	private static void appendDescription(StringBuilder block, int room, Random random)
+	{
+		block.append("You are in a ").append(ROOM_SIZES[random.nextInt(ROOM_SIZES.length)]).append(" room with ")
+				.append(ROOM_FEATURES[random.nextInt(ROOM_FEATURES.length)]).append(". A sign reads ").append(room).append('.');
+	}
+
+	/**
+	 * Appends the item list of a room, which may be empty
+	 */
+	private static void appendItems(StringBuilder block, double itemDensity, Random random)
+	{
+		int length = block.length();
+		if (random.nextDouble() < itemDensity / 4)
+		{
+			block.append("primary weapon,");
+		}
+		if (random.nextDouble() < itemDensity / 4)
+		{
+			block.append("secondary weapon,");
+		}
+		if (random.nextDouble() < itemDensity)
+		{
+			block.append("currency,");
+		}
+		if (block.length() > length)
+		{
+			block.setLength(block.length() - 1);
+		}
+	}
+
+	/**
+	 * Finds a multiplier that is coprime with the number of rooms, so that
+	 * position * multiplier + offset (modulo the number of rooms) visits every room exactly once
+	 */
+	private static long findPermutationMultiplier(int numberOfRooms, Random random)
+	{
+		long multiplier = random.nextInt(numberOfRooms) + 1;
+		while (greatestCommonDivisor(multiplier, numberOfRooms) != 1)
+		{
+			multiplier++;
+		}
+		return multiplier;
+	}
+
+	/**
+	 * @return The greatest common divisor of two positive numbers
+	 */
+	private static long greatestCommonDivisor(long a, long b)
+	{
+		while (b != 0)
+		{
+			long remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+}
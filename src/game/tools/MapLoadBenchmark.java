@@ -0,0 +1,189 @@
+package game.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import game.data.DataTransfer;
+import game.data.MapData;
+import game.data.MappedMapReader;
+import game.data.ParallelMapReader;
+
+/**
+ * A simple benchmark that compares the Scanner based map loader
+ * with the memory-mapped and the parallel ones on a large generated map.
+ * The map backend is chosen with -Dgame.mapBackend=heap or -Dgame.mapBackend=offHeap.
+ *
+ * Usage: MapLoadBenchmark [numberOfRooms] [iterations] [mapFile]
+ * If mapFile is omitted, a temporary map with the specified number of rooms is generated.
+ */
+public class MapLoadBenchmark
+{
+	private static final int DEFAULT_NUMBER_OF_ROOMS = 300000;
+	private static final int DEFAULT_ITERATIONS = 5;
+	private static final int WARMUP_ITERATIONS = 2;
+
+	private static final int SCANNER_LOADER = 0;
+	private static final int MAPPED_LOADER = 1;
+	private static final int PARALLEL_LOADER = 2;
+
+	/**
+	 * Runs the benchmark and prints the average load time of each loader
+	 *
+	 * @param args The number of rooms, the number of iterations and an optional map file
+	 * @throws IOException if the map file cannot be written or read
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int numberOfRooms = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NUMBER_OF_ROOMS;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		File mapFile;
+		if (args.length > 2)
+		{
+			mapFile = new File(args[2]);
+		}
+		else
+		{
+			mapFile = File.createTempFile("benchmark-map", ".txt");
+			mapFile.deleteOnExit();
+			MapGenerator.writeMap(mapFile, numberOfRooms, 42);
+		}
+
+		System.out.println("Map file: " + mapFile + " (" + (mapFile.length() / 1024) + " KB)");
+
+		checkLoadersAgree(mapFile.getPath(), MAPPED_LOADER);
+		checkLoadersAgree(mapFile.getPath(), PARALLEL_LOADER);
+
+		double scannerMillis = timeLoader(SCANNER_LOADER, mapFile.getPath(), iterations);
+		double mappedMillis = timeLoader(MAPPED_LOADER, mapFile.getPath(), iterations);
+		double parallelMillis = timeLoader(PARALLEL_LOADER, mapFile.getPath(), iterations);
+
+		System.out.println("Scanner loader:  " + formatMillis(scannerMillis) + " ms per load");
+		System.out.println("Mapped loader:   " + formatMillis(mappedMillis) + " ms per load (" + formatMillis(scannerMillis / mappedMillis) + "x)");
+		System.out.println("Parallel loader: " + formatMillis(parallelMillis) + " ms per load (" + formatMillis(scannerMillis / parallelMillis)
+				+ "x, " + Runtime.getRuntime().availableProcessors() + " threads)");
+		System.out.println("Heap retained by the map: " + (measureRetainedHeap(mapFile.getPath()) >> 20) + " MB ("
+				+ System.getProperty(MapData.BACKEND_PROPERTY, MapData.BACKEND_HEAP) + " backend)");
+	}
+
+	/**
+	 * Measures how much of the Java heap a loaded map keeps in use
+	 *
+	 * @param filePath The path to the map file
+	 * @return The growth of the used heap in bytes while the map is held
+	 * @throws IOException if the map file cannot be read
+	 */
+	private static long measureRetainedHeap(String filePath) throws IOException
+	{
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long before = runtime.totalMemory() - runtime.freeMemory();
+
+		MapData mapData = load(MAPPED_LOADER, filePath);
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+
+		//Keep the map reachable until the heap has been measured
+		return (mapData.numberOfRooms >= 0) ? after - before : 0;
+	}
+
+	/**
+	 * Loads the map the specified number of times after a short warm-up
+	 *
+	 * @param loader The loader to use
+	 * @param filePath The path to the map file
+	 * @param iterations The number of measured loads
+	 * @return The average time of one load in milliseconds
+	 * @throws IOException if the map file cannot be read
+	 */
+	private static double timeLoader(int loader, String filePath, int iterations) throws IOException
+	{
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			@Override
+			public void write(int b)
+			{
+				//Discard loader output while measuring
+			}
+		}));
+
+		try
+		{
+			for (int i = 0; i < WARMUP_ITERATIONS; i++)
+			{
+				load(loader, filePath);
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+			{
+				load(loader, filePath);
+			}
+			return (System.nanoTime() - start) / 1e6 / iterations;
+		}
+		finally
+		{
+			System.setOut(stdout);
+		}
+	}
+
+	/**
+	 * Loads the map with one of the loaders
+	 */
+	private static MapData load(int loader, String filePath) throws IOException
+	{
+		switch (loader)
+		{
+			case MAPPED_LOADER:
+				return MappedMapReader.readMapData(filePath);
+			case PARALLEL_LOADER:
+				return ParallelMapReader.readMapData(filePath);
+			default:
+				return DataTransfer.readMapData(filePath);
+		}
+	}
+
+	/**
+	 * Makes sure that a loader produces the same map as the Scanner loader.
+	 * Currency amounts are random, so only their presence is compared.
+	 *
+	 * @param filePath The path to the map file
+	 * @param loader The loader to check
+	 * @throws IOException if the map file cannot be read
+	 */
+	private static void checkLoadersAgree(String filePath, int loader) throws IOException
+	{
+		MapData expected = DataTransfer.readMapData(filePath);
+		MapData actual = load(loader, filePath);
+
+		boolean same = expected.numberOfRooms == actual.numberOfRooms
+				&& expected.entranceRoomNumber == actual.entranceRoomNumber
+				&& expected.exitRoomNumber == actual.exitRoomNumber
+				&& expected.getRoomLayout().equals(actual.getRoomLayout());
+
+		for (int i = 0; same && i < expected.numberOfRooms; i++)
+		{
+			String description = expected.getRoomDescription(i);
+			same = ((description == null) ? actual.getRoomDescription(i) == null : description.equals(actual.getRoomDescription(i)))
+					&& expected.hasPrimaryWeapon(i) == actual.hasPrimaryWeapon(i)
+					&& expected.hasSecondaryWeapon(i) == actual.hasSecondaryWeapon(i)
+					&& (expected.getCurrency(i) > 0) == (actual.getCurrency(i) > 0);
+		}
+
+		if (same == false)
+		{
+			throw new IllegalStateException("The loaders disagree on the contents of " + filePath);
+		}
+	}
+
+	/**
+	 * @return The value rounded to two decimal places
+	 */
+	private static String formatMillis(double value)
+	{
+		return String.valueOf(Math.round(value * 100.0) / 100.0);
+	}
+}
@@ -0,0 +1,205 @@
+package game.tools;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import game.data.MapData;
+import game.data.RoomItems;
+
+/**
+ * Checks and times the items of a shared world (see MapData.copyForSharedWorld) under contention.
+ *
+ * First, every thread tries to take every weapon and all currency of the same rooms; each item
+ * must be taken exactly once. Then, for the given number of seconds, threads take the currency of
+ * a room and drop it back, like a player who picks up currency and a monster that drops it, either
+ * all in the same few rooms or each in rooms of its own. No currency may be lost or made up.
+ * Throughput is printed for one thread and for all threads, so that scaling across cores can be seen.
+ *
+ * Usage: SharedWorldBenchmark [threads] [rooms] [seconds]
+ */
+public class SharedWorldBenchmark
+{
+	private static final int DEFAULT_ROOMS = 100000;
+	private static final int DEFAULT_SECONDS = 2;
+	private static final int CURRENCY_PER_ROOM = 100;
+	private static final int CONTENDED_ROOMS = 4;
+
+	/**
+	 * Runs the checks and the timings
+	 *
+	 * @param args The optional number of threads, which is the number of processors by default, rooms and seconds per run
+	 * @throws InterruptedException if the benchmark is interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		int numberOfThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int numberOfRooms = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ROOMS;
+		int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+
+		checkItemsTakenOnce(numberOfThreads, numberOfRooms);
+
+		long single = timeTakeAndDrop(1, numberOfRooms, seconds, false);
+		long contended = timeTakeAndDrop(numberOfThreads, numberOfRooms, seconds, true);
+		long separate = timeTakeAndDrop(numberOfThreads, numberOfRooms, seconds, false);
+		System.out.println("1 thread:                  " + single + " take-and-drop operations per second");
+		System.out.println(numberOfThreads + " thread(s), same rooms:  " + contended + " per second (" + formatRatio(contended, single) + "x)");
+		System.out.println(numberOfThreads + " thread(s), own rooms:   " + separate + " per second (" + formatRatio(separate, single) + "x)");
+	}
+
+	/**
+	 * Lets every thread try to take every item of a new world and checks that each was taken once
+	 */
+	private static void checkItemsTakenOnce(int numberOfThreads, final int numberOfRooms) throws InterruptedException
+	{
+		final RoomItems items = createWorld(numberOfRooms).getRoomItems();
+		final AtomicLong weaponsTaken = new AtomicLong();
+		final AtomicLong currencyTaken = new AtomicLong();
+		runThreads(numberOfThreads, new Worker()
+		{
+			@Override
+			public void work(int thread, int numberOfThreads)
+			{
+				long weapons = 0;
+				long currency = 0;
+				for (int i = 0; i < numberOfRooms; i++)
+				{
+					//Threads start in different rooms and meet in every room
+					int room = (i + thread * (numberOfRooms / numberOfThreads)) % numberOfRooms;
+					weapons += (items.takePrimaryWeapon(room) == true) ? 1 : 0;
+					weapons += (items.takeSecondaryWeapon(room) == true) ? 1 : 0;
+					currency += items.takeCurrency(room);
+				}
+				weaponsTaken.addAndGet(weapons);
+				currencyTaken.addAndGet(currency);
+			}
+		});
+
+		if (weaponsTaken.get() != 2L * numberOfRooms || currencyTaken.get() != (long)CURRENCY_PER_ROOM * numberOfRooms)
+		{
+			throw new IllegalStateException("Items were taken more or less than once: " + weaponsTaken.get() + " weapons of "
+					+ (2L * numberOfRooms) + ", " + currencyTaken.get() + " currency of " + ((long)CURRENCY_PER_ROOM * numberOfRooms));
+		}
+		System.out.println(numberOfThreads + " thread(s) took each of " + (2L * numberOfRooms) + " weapons and "
+				+ numberOfRooms + " piles of currency exactly once");
+	}
+
+	/**
+	 * Lets threads take currency and drop it back for a while and checks that the total is unchanged
+	 *
+	 * @param contended True to let all threads use the same few rooms, false to give each thread rooms of its own
+	 * @return The number of times per second that currency was taken and dropped back; attempts that found another thread's room empty are not counted
+	 */
+	private static long timeTakeAndDrop(int numberOfThreads, int numberOfRooms, int seconds, final boolean contended) throws InterruptedException
+	{
+		final RoomItems items = createWorld(numberOfRooms).getRoomItems();
+		final int roomsPerThread = Math.max(1, numberOfRooms / numberOfThreads);
+		final long end = System.nanoTime() + seconds * 1000000000L;
+		final AtomicLong operations = new AtomicLong();
+		runThreads(numberOfThreads, new Worker()
+		{
+			@Override
+			public void work(int thread, int numberOfThreads)
+			{
+				int firstRoom = (contended == true) ? 0 : thread * roomsPerThread;
+				int rooms = (contended == true) ? CONTENDED_ROOMS : roomsPerThread;
+				long attempts = 0;
+				long count = 0;
+				while ((attempts & 1023) != 0 || System.nanoTime() < end)
+				{
+					int room = firstRoom + (int)(attempts % rooms);
+					int amount = items.takeCurrency(room);
+					if (amount > 0)
+					{
+						items.incrementVersion(room);
+						items.addCurrency(room, amount);
+						items.incrementVersion(room);
+						count++;
+					}
+					attempts++;
+				}
+				operations.addAndGet(count);
+			}
+		});
+
+		long total = 0;
+		for (int room = 0; room < numberOfRooms; room++)
+		{
+			total += items.getCurrency(room);
+		}
+		if (total != (long)CURRENCY_PER_ROOM * numberOfRooms)
+		{
+			throw new IllegalStateException("Currency was lost or made up: " + total + " instead of " + ((long)CURRENCY_PER_ROOM * numberOfRooms));
+		}
+		return operations.get() / seconds;
+	}
+
+	/**
+	 * @return A shared world in which every room holds both weapons and CURRENCY_PER_ROOM currency
+	 */
+	private static MapData createWorld(int numberOfRooms)
+	{
+		MapData mapData = new MapData(numberOfRooms);
+		for (int room = 0; room < numberOfRooms; room++)
+		{
+			mapData.setPrimaryWeapon(room, true);
+			mapData.setSecondaryWeapon(room, true);
+			mapData.setCurrency(room, CURRENCY_PER_ROOM);
+		}
+		return mapData.copyForSharedWorld().copyForGame();
+	}
+
+	/**
+	 * Runs work on several threads, which start at the same time, and waits for all of them
+	 */
+	private static void runThreads(final int numberOfThreads, final Worker worker) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[numberOfThreads];
+		for (int t = 0; t < numberOfThreads; t++)
+		{
+			final int thread = t;
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+					}
+					catch (InterruptedException ex)
+					{
+						return;
+					}
+					worker.work(thread, numberOfThreads);
+				}
+			}, "shared-world-" + t);
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+	}
+
+	/**
+	 * @return The ratio of two numbers with two decimals
+	 */
+	private static String formatRatio(long numerator, long denominator)
+	{
+		return String.valueOf(Math.round(numerator * 100.0 / Math.max(denominator, 1)) / 100.0);
+	}
+
+	/**
+	 * The work of one benchmark thread
+	 */
+	private interface Worker
+	{
+		/**
+		 * @param thread The index of this thread
+		 * @param numberOfThreads The number of threads that work at the same time
+		 */
+		void work(int thread, int numberOfThreads);
+	}
+}